@@ -4,12 +4,17 @@ import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 import android.test.ActivityInstrumentationTestCase2;
 
+import net.hockeyapp.android.utils.CrashReportFile;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
 
 @RunWith(AndroidJUnit4.class)
 public class ExceptionHandlerTest extends ActivityInstrumentationTestCase2<UpdateActivity> {
@@ -62,6 +67,62 @@ public class ExceptionHandlerTest extends ActivityInstrumentationTestCase2<Updat
         assertEquals(1, files.length);
     }
 
+    @SuppressWarnings("ThrowableInstanceNeverThrown")
+    @Test
+    public void isOutOfMemoryTest() {
+        assertTrue(ExceptionHandler.isOutOfMemory(new OutOfMemoryError()));
+        assertTrue(ExceptionHandler.isOutOfMemory(new RuntimeException(new IllegalStateException(new OutOfMemoryError()))));
+        assertFalse(ExceptionHandler.isOutOfMemory(new RuntimeException(new IllegalStateException())));
+        assertFalse(ExceptionHandler.isOutOfMemory(null));
+
+        // The cause chain is only followed 16 levels deep
+        Throwable deep = new OutOfMemoryError();
+        for (int depth = 0; depth < 16; depth++) {
+            deep = new RuntimeException(deep);
+        }
+        assertFalse(ExceptionHandler.isOutOfMemory(deep));
+    }
+
+    @SuppressWarnings("ThrowableInstanceNeverThrown")
+    @Test
+    public void saveOutOfMemoryTest() throws IOException {
+        ExceptionHandler.saveException(new RuntimeException(new OutOfMemoryError("Just a test error")), null, null);
+
+        String memory = readSingleReport().getSection(CrashReportFile.SECTION_MEMORY);
+        assertNotNull(memory);
+        assertTrue(memory.contains("Java heap max: " + Runtime.getRuntime().maxMemory() + "\n"));
+        assertTrue(memory.contains("Native heap size: "));
+    }
+
+    @SuppressWarnings("ThrowableInstanceNeverThrown")
+    @Test
+    public void saveExceptionWithoutMemoryTest() throws IOException {
+        ExceptionHandler.saveException(new RuntimeException("Just a test exception"), null, null);
+
+        assertNull(readSingleReport().getSection(CrashReportFile.SECTION_MEMORY));
+    }
+
+    @Test
+    public void saveThreadDumpSeparatelyTest() throws IOException {
+        ExceptionHandler.saveException(new RuntimeException("Just a test exception"), null, null, "\"main\" id=1\n", null);
+
+        CrashReportFile report = readSingleReport();
+        assertEquals("\"main\" id=1\n", report.getSection(CrashReportFile.SECTION_THREADS));
+        assertFalse(report.getSection(CrashReportFile.SECTION_STACKTRACE).contains("\"main\""));
+    }
+
+    private CrashReportFile readSingleReport() throws IOException {
+        File[] files = filesDirectory.listFiles(new StacktraceFilenameFilter());
+        assertEquals(1, files.length);
+
+        InputStream input = new FileInputStream(files[0]);
+        try {
+            return CrashReportFile.read(input);
+        } finally {
+            input.close();
+        }
+    }
+
     static class StacktraceFilenameFilter implements FilenameFilter {
 
         @Override
@@ -0,0 +1,254 @@
+package net.hockeyapp.android;
+
+import net.hockeyapp.android.utils.BreadcrumbJournal;
+import net.hockeyapp.android.utils.CrashReportBuffer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Records the last events of the app, e.g. screens shown or requests sent,
+ * and attaches them to crash reports. The events are kept in a ring buffer
+ * of fixed size that can be written from any thread without locking; the
+ * oldest event is overwritten when the buffer is full. Dumping the buffer
+ * into a crash report doesn't block writers.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class Breadcrumbs {
+
+    /**
+     * Number of breadcrumbs that are kept.
+     */
+    public static final int CAPACITY = 64;
+
+    /**
+     * Max length of a breadcrumb message, longer messages are cut off.
+     */
+    public static final int MAX_MESSAGE_LENGTH = 256;
+
+    /**
+     * Sequence number of the next breadcrumb.
+     */
+    private static final AtomicLong next = new AtomicLong();
+
+    /**
+     * Sequence number of the breadcrumb in each slot, -1 while a slot is
+     * being written.
+     */
+    private static final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private static final AtomicLongArray timestamps = new AtomicLongArray(CAPACITY);
+    private static final AtomicLongArray threadIds = new AtomicLongArray(CAPACITY);
+    private static final AtomicReferenceArray<String> messages = new AtomicReferenceArray<String>(CAPACITY);
+
+    /**
+     * Memory mapped copy of the breadcrumbs, if enabled by the listener.
+     */
+    private static volatile BreadcrumbJournal journal = null;
+
+    /**
+     * Whether the current session ended with a saved crash report.
+     */
+    private static volatile boolean crashed = false;
+
+    /**
+     * Whether the app is in the foreground, kept for a journal that is
+     * opened later.
+     */
+    private static volatile boolean foreground = true;
+
+    static {
+        for (int slot = 0; slot < CAPACITY; slot++) {
+            sequences.set(slot, -1);
+        }
+    }
+
+    private Breadcrumbs() {
+    }
+
+    /**
+     * Leaves a breadcrumb with the current time and thread.
+     *
+     * @param message the message, e.g. "Opened settings"
+     */
+    public static void leave(String message) {
+        if (message == null) {
+            return;
+        }
+        if (message.length() > MAX_MESSAGE_LENGTH) {
+            message = message.substring(0, MAX_MESSAGE_LENGTH);
+        }
+
+        long sequence = next.getAndIncrement();
+        int slot = (int) (sequence % CAPACITY);
+        long timestamp = System.currentTimeMillis();
+        long threadId = Thread.currentThread().getId();
+
+        // Readers skip the slot until the sequence number is published again
+        sequences.set(slot, -1);
+        timestamps.set(slot, timestamp);
+        threadIds.set(slot, threadId);
+        messages.set(slot, message);
+        sequences.set(slot, sequence);
+
+        BreadcrumbJournal currentJournal = journal;
+        if (currentJournal != null) {
+            currentJournal.write(sequence, timestamp, threadId, message);
+        }
+    }
+
+    /**
+     * Removes all breadcrumbs.
+     */
+    public static void clear() {
+        long end = next.get();
+        for (int slot = 0; slot < CAPACITY; slot++) {
+            // Only clear what was written before, a concurrent write wins
+            long sequence = sequences.get(slot);
+            if (sequence >= 0 && sequence < end) {
+                sequences.compareAndSet(slot, sequence, -1);
+            }
+        }
+    }
+
+    /**
+     * Sets the journal that receives a copy of every breadcrumb. It gets
+     * the breadcrumbs and the state of the session so far, as it's opened
+     * on a background thread.
+     */
+    static synchronized void setJournal(BreadcrumbJournal newJournal) {
+        journal = newJournal;
+        if (newJournal == null) {
+            return;
+        }
+
+        for (int slot = 0; slot < CAPACITY; slot++) {
+            long sequence = sequences.get(slot);
+            long timestamp = timestamps.get(slot);
+            long threadId = threadIds.get(slot);
+            String message = messages.get(slot);
+            if (sequence >= 0 && sequences.get(slot) == sequence) {
+                newJournal.write(sequence, timestamp, threadId, message);
+            }
+        }
+
+        if (crashed) {
+            newJournal.setState(BreadcrumbJournal.STATE_CRASHED);
+        } else if (!foreground) {
+            newJournal.setState(BreadcrumbJournal.STATE_BACKGROUND);
+        }
+    }
+
+    /**
+     * Records in the journal whether the app is in the foreground. Ignored
+     * after a crash was saved.
+     */
+    static synchronized void setForeground(boolean foreground) {
+        Breadcrumbs.foreground = foreground;
+        BreadcrumbJournal currentJournal = journal;
+        if (currentJournal != null && !crashed) {
+            currentJournal.setState(foreground ? BreadcrumbJournal.STATE_FOREGROUND : BreadcrumbJournal.STATE_BACKGROUND);
+        }
+    }
+
+    /**
+     * Records in the journal that the session ended with a crash that was
+     * saved as report, so it isn't reported again on the next start.
+     */
+    static void setCrashed() {
+        crashed = true;
+        BreadcrumbJournal currentJournal = journal;
+        if (currentJournal != null) {
+            currentJournal.setState(BreadcrumbJournal.STATE_CRASHED);
+        }
+    }
+
+    /**
+     * Appends the breadcrumbs to the given builder, oldest first, one per
+     * line. Each line starts with the time relative to the given time and
+     * the id of the thread that left the breadcrumb.
+     *
+     * @param builder the builder to append to
+     * @param now     the time of the crash
+     * @return the number of breadcrumbs
+     */
+    static int dump(StringBuilder builder, long now) {
+        int count = 0;
+        long end = next.get();
+        for (long sequence = Math.max(end - CAPACITY, 0); sequence < end; sequence++) {
+            int slot = (int) (sequence % CAPACITY);
+            if (sequences.get(slot) != sequence) {
+                // Not written yet, cleared or already overwritten
+                continue;
+            }
+            long timestamp = timestamps.get(slot);
+            long threadId = threadIds.get(slot);
+            String message = messages.get(slot);
+            if (sequences.get(slot) != sequence) {
+                // Overwritten while reading
+                continue;
+            }
+
+            builder.append(timestamp - now).append(" ms [").append(threadId).append("] ").append(message).append('\n');
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Appends the breadcrumbs to the given crash buffer in the same format
+     * as dump(StringBuilder, long), without allocating memory.
+     *
+     * @param buffer the buffer to append to
+     * @param now    the time of the crash
+     * @return the number of breadcrumbs
+     */
+    static int dump(CrashReportBuffer buffer, long now) {
+        int count = 0;
+        long end = next.get();
+        for (long sequence = Math.max(end - CAPACITY, 0); sequence < end; sequence++) {
+            int slot = (int) (sequence % CAPACITY);
+            if (sequences.get(slot) != sequence) {
+                continue;
+            }
+            long timestamp = timestamps.get(slot);
+            long threadId = threadIds.get(slot);
+            String message = messages.get(slot);
+            if (sequences.get(slot) != sequence) {
+                continue;
+            }
+
+            buffer.append(timestamp - now).append(" ms [").append(threadId).append("] ").append(message).append('\n');
+            count++;
+        }
+        return count;
+    }
+}
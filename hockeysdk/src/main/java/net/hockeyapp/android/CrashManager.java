@@ -5,28 +5,58 @@ import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.SharedPreferences;
-import android.content.SharedPreferences.Editor;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
 import android.preference.PreferenceManager;
 import android.util.Log;
 
 import net.hockeyapp.android.objects.CrashManagerUserInput;
 import net.hockeyapp.android.objects.CrashMetaData;
+import net.hockeyapp.android.objects.CrashReportSummary;
+import net.hockeyapp.android.objects.Endpoint;
+import net.hockeyapp.android.objects.RegistrationTimings;
+import net.hockeyapp.android.utils.BreadcrumbJournal;
+import net.hockeyapp.android.utils.CrashFingerprint;
+import net.hockeyapp.android.utils.CrashLoopDetector;
+import net.hockeyapp.android.utils.CrashReportFile;
+import net.hockeyapp.android.utils.CrashReportIndex;
+import net.hockeyapp.android.utils.CrashRetryScheduler;
+import net.hockeyapp.android.utils.CrashUploadExecutor;
+import net.hockeyapp.android.utils.FormBody;
+import net.hockeyapp.android.utils.HttpTransports;
 import net.hockeyapp.android.utils.HttpURLConnectionBuilder;
+import net.hockeyapp.android.utils.MultipartBody;
+import net.hockeyapp.android.utils.RequestTrace;
+import net.hockeyapp.android.utils.ResponseBodyReader;
+import net.hockeyapp.android.utils.RetryBackoff;
 import net.hockeyapp.android.utils.Util;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FilenameFilter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.lang.ref.WeakReference;
 import java.net.HttpURLConnection;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <h3>Description</h3>
@@ -37,6 +67,12 @@ import java.util.Map;
  * an alert dialog to ask the user if he want the send the crash data to
  * HockeyApp.
  *
+ * If the last launches crashed right after they started, the newest crash
+ * report is uploaded first, see isCrashLoopDetected. Only registerAsync
+ * waits for this upload; register on the main thread only schedules it,
+ * as blocking the main thread could cause an ANR, so a crash loop that is
+ * faster than the upload still isn't reported.
+ *
  * <h3>License</h3>
  *
  * <pre>
@@ -78,9 +114,180 @@ public class CrashManager {
     private static String urlString = null;
 
     /**
-     * Stack traces are currently submitted
+     * Executor for crash uploads, created on first use.
+     */
+    private static volatile CrashUploadExecutor uploadExecutor = null;
+
+    /**
+     * Crash write path with reserved memory, if enabled by the listener.
+     */
+    private static PreallocatedCrashWriter preallocatedCrashWriter = null;
+
+    /**
+     * Memory that is released when the heap is exhausted, so an out of
+     * memory crash can still be saved.
+     */
+    private static volatile byte[] memoryReserve = null;
+
+    /**
+     * Interval of the main thread watchdog if no listener is set.
+     */
+    private static final long DEFAULT_WATCHDOG_INTERVAL = 1000;
+
+    /**
+     * Min duration of a reported main thread stall if no listener is set.
+     */
+    private static final long DEFAULT_STALL_THRESHOLD = 5000;
+
+    /**
+     * Time after a launch in which a crash counts towards a crash loop if
+     * no listener is set.
+     */
+    private static final long DEFAULT_CRASH_LOOP_LAUNCH_WINDOW = 10 * 1000;
+
+    /**
+     * Number of launches in a row that crash early to detect a crash loop
+     * if no listener is set.
+     */
+    private static final int DEFAULT_CRASH_LOOP_THRESHOLD = 2;
+
+    /**
+     * Max time to wait for the upload of the newest report in a crash loop
+     * if no listener is set.
+     */
+    private static final long DEFAULT_CRASH_LOOP_UPLOAD_TIMEOUT = 3000;
+
+    /**
+     * Shared preferences keys for the last launch time and the number of
+     * launches in a row that crashed early.
+     */
+    private static final String CRASH_LOOP_LAUNCH_KEY = "crash_loop_launch_time";
+    private static final String CRASH_LOOP_COUNT_KEY = "crash_loop_count";
+
+    /**
+     * Max number of bytes read from a report for its summary. The header
+     * lines and the first line of the stack trace fit easily.
+     */
+    private static final int SUMMARY_HEAD_SIZE = 2048;
+
+    /**
+     * Cached report summaries and the index modification count they
+     * reflect.
+     */
+    private static List<CrashReportSummary> crashReportSummaries = null;
+    private static int summariesModificationCount = 0;
+
+    /**
+     * Whether the launch of this process was already recorded.
+     */
+    private static boolean launchRecorded = false;
+
+    /**
+     * Whether the previous launches crashed early, set once per process.
+     */
+    private static volatile boolean crashLoopDetected = false;
+
+    /**
+     * Report sections that are appended to the description, with their
+     * labels.
+     */
+    private static final int[] DESCRIPTION_SECTIONS = {CrashReportFile.SECTION_MEMORY, CrashReportFile.SECTION_BREADCRUMBS, CrashReportFile.SECTION_PROPERTIES};
+    private static final String[] DESCRIPTION_SECTION_LABELS = {"Memory", "Breadcrumbs", "Properties"};
+
+    /**
+     * Released when an asynchronous registration has initialized the
+     * crash manager.
+     */
+    private static volatile CountDownLatch initializationLatch = null;
+
+    /**
+     * Listener passed to the last register or initialize call.
+     */
+    private static CrashManagerListener crashManagerListener = null;
+
+    /**
+     * Saves reports of handled exceptions, created on first use.
+     */
+    private static HandledExceptionReporter handledExceptionReporter = null;
+
+    /**
+     * The running main thread watchdog.
+     */
+    private static MainThreadWatchdog watchdog = null;
+
+    /**
+     * Name of the breadcrumb journal in the files dir.
+     */
+    private static final String BREADCRUMB_JOURNAL_FILENAME = "breadcrumbs.journal";
+
+    /**
+     * Key of the upload executor task that looks for stack traces and
+     * schedules their uploads.
+     */
+    private static final String SCHEDULE_TASK_KEY = "net.hockeyapp.android.schedule";
+
+    /**
+     * Stack trace of reports for sessions that ended without a Java
+     * exception. The cause isn't known, so these are not labeled as crash.
+     */
+    private static final String UNCLEAN_SESSION_STACKTRACE = "net.hockeyapp.android.UncleanSessionEnd: " +
+            "The previous session ended in the foreground without a Java exception. " +
+            "The cause is unknown, e.g. a native crash, an ANR, the system killing the process " +
+            "or the user stopping the app.\n";
+
+    /**
+     * Whether the breadcrumb journal was opened in this process.
+     */
+    private static boolean breadcrumbJournalOpened = false;
+
+    /**
+     * Guards the listing of stack traces in execute() against the report of
+     * an unclean session that is saved on the journal thread meanwhile.
+     */
+    private static final Object STACK_TRACES_LOCK = new Object();
+
+    /**
+     * Whether execute() listed the stack traces and whether it asked the
+     * user about them. Guarded by STACK_TRACES_LOCK.
+     */
+    private static boolean stackTracesListed = false;
+    private static boolean crashDialogShown = false;
+
+    /**
+     * Triggers retries of failed uploads, created when crashes are sent the
+     * first time.
+     */
+    private static volatile CrashRetryScheduler retryScheduler = null;
+
+    /**
+     * Application context, listener and meta data of the last sendCrashes
+     * call, used for retries.
+     */
+    private static WeakReference<Context> retryContext = null;
+    private static CrashManagerListener retryListener = null;
+    private static CrashMetaData retryCrashMetaData = null;
+
+    /**
+     * Number of parallel uploads if no listener is set.
      */
-    private static boolean submitting = false;
+    private static final int DEFAULT_UPLOAD_THREADS = 2;
+
+    /**
+     * Max number of waiting uploads if no listener is set.
+     */
+    private static final int DEFAULT_UPLOAD_QUEUE_CAPACITY = 16;
+
+    /**
+     * Max number of stored crash reports if no listener is set, -1 keeps
+     * all reports.
+     */
+    private static final int DEFAULT_MAX_STORED_REPORTS = -1;
+
+    /**
+     * Max size of all stored crash reports if no listener is set, -1 keeps
+     * all reports.
+     */
+    private static final long DEFAULT_MAX_STORED_BYTES = -1;
 
     /**
      * Shared preferences key for always send dialog button.
@@ -139,8 +346,69 @@ public class CrashManager {
      * @param listener      Implement for callback functions.
      */
     public static void register(Context context, String urlString, String appIdentifier, CrashManagerListener listener) {
-        initialize(context, urlString, appIdentifier, listener, false);
-        execute(context, listener);
+        RegistrationTimings timings = new RegistrationTimings();
+        initialize(context, urlString, appIdentifier, listener, false, timings);
+        execute(context, listener, timings, false);
+        onRegistrationFinished(listener, timings);
+    }
+
+    /**
+     * Registers new crash manager like register, but only installs the
+     * exception handler on the calling thread. Package data, the crash
+     * report index and existing crash logs are loaded on a background
+     * thread, so calling this from Activity.onCreate doesn't delay the
+     * first frame. The crash dialog is posted to the main thread if
+     * needed; all other listener callbacks are invoked on the background
+     * thread.
+     *
+     * @param context       The context to use. Usually your Activity object.
+     * @param appIdentifier App ID of your app on HockeyApp.
+     * @param listener      Implement for callback functions.
+     */
+    public static void registerAsync(Context context, String appIdentifier, CrashManagerListener listener) {
+        registerAsync(context, Constants.BASE_URL, appIdentifier, listener);
+    }
+
+    /**
+     * Registers new crash manager like register, but only installs the
+     * exception handler on the calling thread. See
+     * registerAsync(Context, String, CrashManagerListener).
+     *
+     * @param context       The context to use. Usually your Activity object.
+     * @param urlString     URL of the HockeyApp server.
+     * @param appIdentifier App ID of your app on HockeyApp.
+     * @param listener      Implement for callback functions.
+     */
+    public static void registerAsync(final Context context, final String urlString, final String appIdentifier, final CrashManagerListener listener) {
+        if (context == null) {
+            return;
+        }
+
+        final RegistrationTimings timings = new RegistrationTimings();
+        timings.setAsync(true);
+
+        // Crashes before the background thread is done wait for it in the handler
+        final CountDownLatch latch = new CountDownLatch(1);
+        initializationLatch = latch;
+        Boolean ignoreDefaultHandler = (listener != null) && (listener.ignoreDefaultHandler());
+        installHandler(listener, ignoreDefaultHandler);
+        timings.mark(RegistrationTimings.PHASE_HANDLER);
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                timings.mark(RegistrationTimings.PHASE_THREAD);
+                try {
+                    initialize(context, urlString, appIdentifier, listener, false, timings);
+                } finally {
+                    latch.countDown();
+                }
+                execute(context, listener, timings, true);
+                onRegistrationFinished(listener, timings);
+            }
+        }, "HockeyApp-Register");
+        thread.start();
     }
 
     /**
@@ -154,7 +422,7 @@ public class CrashManager {
      * @param listener      Implement for callback functions.
      */
     public static void initialize(Context context, String appIdentifier, CrashManagerListener listener) {
-        initialize(context, Constants.BASE_URL, appIdentifier, listener, true);
+        initialize(context, Constants.BASE_URL, appIdentifier, listener, true, new RegistrationTimings());
     }
 
     /**
@@ -169,7 +437,7 @@ public class CrashManager {
      * @param listener      Implement for callback functions.
      */
     public static void initialize(Context context, String urlString, String appIdentifier, CrashManagerListener listener) {
-        initialize(context, urlString, appIdentifier, listener, true);
+        initialize(context, urlString, appIdentifier, listener, true, new RegistrationTimings());
     }
 
     /**
@@ -180,27 +448,97 @@ public class CrashManager {
      * @param context  The context to use. Usually your Activity object.
      * @param listener Implement for callback functions.
      */
-    @SuppressWarnings("deprecation")
     public static void execute(Context context, CrashManagerListener listener) {
-        Boolean ignoreDefaultHandler = (listener != null) && (listener.ignoreDefaultHandler());
-        WeakReference<Context> weakContext = new WeakReference<Context>(context);
+        execute(context, listener, new RegistrationTimings(), false);
+    }
 
-        int foundOrSend = hasStackTraces(weakContext);
-        if (foundOrSend == 1) {
-            Boolean autoSend = !(context instanceof Activity);
-            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-            autoSend |= prefs.getBoolean(ALWAYS_SEND_KEY, false);
+    /**
+     * Waits until an asynchronous registration has initialized the crash
+     * manager, e.g. before an uncaught exception is saved.
+     *
+     * @param timeout the max time to wait in milliseconds
+     * @return true if the crash manager is initialized or no asynchronous
+     * registration is running
+     */
+    static boolean awaitInitialization(long timeout) {
+        CountDownLatch latch = initializationLatch;
+        if (latch == null) {
+            return true;
+        }
 
-            if (listener != null) {
-                autoSend |= listener.shouldAutoUploadCrashes();
-                autoSend |= listener.onCrashesFound();
+        try {
+            return latch.await(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return latch.getCount() == 0;
+        }
+    }
+
+    /**
+     * Private method to execute the crash manager. If postDialog is true,
+     * the crash dialog is shown on the main thread.
+     */
+    private static void execute(Context context, final CrashManagerListener listener, RegistrationTimings timings, boolean postDialog) {
+        final WeakReference<Context> weakContext = new WeakReference<Context>(context);
+
+        evictStackTraces(weakContext, listener);
+        timings.mark(RegistrationTimings.PHASE_EVICT);
+
+        boolean crashLoop = recordLaunch(context, listener);
+
+        handleStackTraces(weakContext, listener, crashLoop, postDialog);
+        timings.mark(RegistrationTimings.PHASE_EXECUTE);
+    }
+
+    /**
+     * Lists the stack traces and sends them or asks the user about new ones,
+     * then registers the exception handler. If postDialog is true, the
+     * crash dialog is shown on the main thread.
+     */
+    @SuppressWarnings("deprecation")
+    private static void handleStackTraces(final WeakReference<Context> weakContext, final CrashManagerListener listener, boolean crashLoop, boolean postDialog) {
+        Context context = weakContext.get();
+        if (context == null) {
+            return;
+        }
+
+        final Boolean ignoreDefaultHandler = (listener != null) && (listener.ignoreDefaultHandler());
+        int foundOrSend;
+        Boolean autoSend = true;
+        synchronized (STACK_TRACES_LOCK) {
+            foundOrSend = hasStackTraces(weakContext);
+            if (foundOrSend == 1) {
+                autoSend = !(context instanceof Activity);
+                SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+                autoSend |= prefs.getBoolean(ALWAYS_SEND_KEY, false);
+
+                if (listener != null) {
+                    autoSend |= listener.shouldAutoUploadCrashes();
+                    autoSend |= listener.onCrashesFound();
 
-                listener.onNewCrashesFound();
+                    listener.onNewCrashesFound();
+                }
             }
+            stackTracesListed = true;
+            crashDialogShown |= (foundOrSend == 1) && !autoSend;
+        }
 
-            if (!autoSend) {
+        if (foundOrSend == 1) {
+            if (!autoSend && postDialog) {
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    @Override
+                    public void run() {
+                        showDialog(weakContext, listener, ignoreDefaultHandler);
+                    }
+                });
+            } else if (!autoSend) {
                 showDialog(weakContext, listener, ignoreDefaultHandler);
             } else {
+                if (crashLoop) {
+                    // The next crash might happen while the upload is running
+                    registerHandler(weakContext, listener, ignoreDefaultHandler);
+                    uploadNewestStackTrace(weakContext, listener);
+                }
                 sendCrashes(weakContext, listener, ignoreDefaultHandler);
             }
         } else if (foundOrSend == 2) {
@@ -208,12 +546,195 @@ public class CrashManager {
                 listener.onConfirmedCrashesFound();
             }
 
+            if (crashLoop) {
+                registerHandler(weakContext, listener, ignoreDefaultHandler);
+                uploadNewestStackTrace(weakContext, listener);
+            }
             sendCrashes(weakContext, listener, ignoreDefaultHandler);
         } else {
             registerHandler(weakContext, listener, ignoreDefaultHandler);
         }
     }
 
+    /**
+     * Returns summaries of all crash reports that are stored on the device
+     * and not sent yet, newest first, e.g. to show the last crash in a
+     * diagnostics screen. Only the header block of each report is read,
+     * and the summaries are cached until reports are added or removed.
+     * Don't call this on the main thread, it might read from disk.
+     *
+     * @return the summaries, empty if the crash manager isn't initialized
+     */
+    public static List<CrashReportSummary> getCrashReportSummaries() {
+        if (Constants.FILES_PATH == null) {
+            return Collections.emptyList();
+        }
+
+        // Only take a snapshot under the lock, the files are read without it
+        int modificationCount;
+        List<CrashReportIndex.Entry> entries;
+        Map<String, CrashReportSummary> previous = new HashMap<String, CrashReportSummary>();
+        synchronized (CrashManager.class) {
+            CrashReportIndex index = CrashReportIndex.getInstance();
+            modificationCount = index.getModificationCount();
+            if (crashReportSummaries != null && modificationCount == summariesModificationCount) {
+                return crashReportSummaries;
+            }
+
+            if (crashReportSummaries != null) {
+                for (CrashReportSummary summary : crashReportSummaries) {
+                    previous.put(summary.getFilename(), summary);
+                }
+            }
+            entries = index.getEntries();
+        }
+
+        List<CrashReportSummary> summaries = new ArrayList<CrashReportSummary>();
+        for (CrashReportIndex.Entry entry : entries) {
+            long timestamp = Math.max(entry.getTimestamp(), entry.getLastSeen());
+            CrashReportSummary summary = previous.get(entry.getFilename());
+            if (summary == null || summary.getTimestamp() != timestamp) {
+                try {
+                    String head = CrashReportFile.readHead(new File(Constants.FILES_PATH, entry.getFilename()), SUMMARY_HEAD_SIZE);
+                    summary = CrashReportSummary.parse(entry.getFilename(), timestamp, entry.getSize(), head);
+                } catch (IOException e) {
+                    Log.d(Constants.TAG, "Failed to read header of " + entry.getFilename());
+                    continue;
+                }
+            }
+            summaries.add(summary);
+        }
+        Collections.sort(summaries, new Comparator<CrashReportSummary>() {
+            @Override
+            public int compare(CrashReportSummary lhs, CrashReportSummary rhs) {
+                return (lhs.getTimestamp() > rhs.getTimestamp()) ? -1 : ((lhs.getTimestamp() == rhs.getTimestamp()) ? 0 : 1);
+            }
+        });
+
+        List<CrashReportSummary> result = Collections.unmodifiableList(summaries);
+        synchronized (CrashManager.class) {
+            // A concurrent call might have stored newer summaries meanwhile
+            if (crashReportSummaries == null || modificationCount >= summariesModificationCount) {
+                crashReportSummaries = result;
+                summariesModificationCount = modificationCount;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Releases the memory reserve, if one was allocated. Called by the
+     * exception handler before an out of memory crash is saved.
+     *
+     * @return true if a reserve was released
+     */
+    static boolean releaseMemoryReserve() {
+        if (memoryReserve == null) {
+            return false;
+        }
+        memoryReserve = null;
+        return true;
+    }
+
+    /**
+     * Returns whether the app is in a crash loop, i.e. the last launches
+     * crashed shortly after they started, as configured by the listener.
+     * Set when the crash manager is registered or executed for the first
+     * time in the process. Only uncaught exceptions count as crashes,
+     * handled exceptions, stalls and unclean sessions don't. Use it to skip
+     * optional initialization that might cause the crash. In a crash loop,
+     * the newest crash report is uploaded first if the user already agreed
+     * to send crashes. After registerAsync, the flag is set and the upload
+     * was waited for when the listener's onRegistrationFinished is called.
+     * On the main thread, register only schedules the upload and doesn't
+     * wait for it.
+     *
+     * @return true if a crash loop was detected
+     */
+    public static boolean isCrashLoopDetected() {
+        return crashLoopDetected;
+    }
+
+    /**
+     * Records the launch of this process once and detects crash loops: a
+     * launch crashed early if the newest crash report was saved within the
+     * launch window after the previous launch.
+     */
+    private static synchronized boolean recordLaunch(Context context, CrashManagerListener listener) {
+        if (launchRecorded) {
+            return false;
+        }
+        launchRecorded = true;
+
+        long launchWindow = (listener != null) ? listener.getCrashLoopLaunchWindow() : DEFAULT_CRASH_LOOP_LAUNCH_WINDOW;
+        int threshold = (listener != null) ? listener.getCrashLoopThreshold() : DEFAULT_CRASH_LOOP_THRESHOLD;
+
+        long newestCrash = CrashLoopDetector.getNewestCrashTime(CrashReportIndex.getInstance().getEntries());
+
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        long previousLaunch = prefs.getLong(CRASH_LOOP_LAUNCH_KEY, 0);
+        int count = CrashLoopDetector.countEarlyCrashes(previousLaunch, newestCrash, launchWindow, prefs.getInt(CRASH_LOOP_COUNT_KEY, 0));
+        prefs.edit().putLong(CRASH_LOOP_LAUNCH_KEY, System.currentTimeMillis()).putInt(CRASH_LOOP_COUNT_KEY, count).apply();
+
+        crashLoopDetected = CrashLoopDetector.isCrashLoop(count, threshold);
+        if (crashLoopDetected) {
+            Log.w(Constants.TAG, "Crash loop detected, " + count + " launches in a row crashed early.");
+        }
+        return crashLoopDetected;
+    }
+
+    /**
+     * Uploads the newest fatal crash report before all others. Off the main
+     * thread, it waits for the upload at most the crash loop upload timeout
+     * of the listener; an upload that takes longer continues in the
+     * background. The main thread never waits, the upload is only
+     * scheduled, so the app may crash again before it is done.
+     */
+    private static void uploadNewestStackTrace(final WeakReference<Context> weakContext, final CrashManagerListener listener) {
+        Context context = weakContext.get();
+        if (context == null || !Util.isConnectedToNetwork(context)) {
+            return;
+        }
+
+        String newest = null;
+        long newestTime = 0;
+        for (CrashReportIndex.Entry entry : CrashReportIndex.getInstance().getEntries()) {
+            long time = Math.max(entry.getTimestamp(), entry.getLastSeen());
+            if (entry.isFatal() && (newest == null || time > newestTime)) {
+                newest = entry.getFilename();
+                newestTime = time;
+            }
+        }
+        if (newest == null) {
+            return;
+        }
+
+        final long timeout = (listener != null) ? listener.getCrashLoopUploadTimeout() : DEFAULT_CRASH_LOOP_UPLOAD_TIMEOUT;
+        final String filename = newest;
+        final CountDownLatch latch = new CountDownLatch(1);
+        boolean scheduled = getUploadExecutor(listener).execute(Collections.singletonList(filename), new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    submitStackTrace(weakContext, listener, null, filename, (int) timeout);
+                } finally {
+                    latch.countDown();
+                }
+            }
+        });
+        if (!scheduled || Looper.myLooper() == Looper.getMainLooper()) {
+            return;
+        }
+
+        try {
+            if (!latch.await(timeout, TimeUnit.MILLISECONDS)) {
+                Log.w(Constants.TAG, "Upload of newest crash report timed out, continuing in background.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Checks if there are any saved stack traces in the files dir.
      *
@@ -224,32 +745,15 @@ public class CrashManager {
      */
     public static int hasStackTraces(WeakReference<Context> weakContext) {
         String[] filenames = searchForStackTraces();
-        List<String> confirmedFilenames = null;
         int result = 0;
         if ((filenames != null) && (filenames.length > 0)) {
-            try {
-                Context context = null;
-                if (weakContext != null) {
-                    context = weakContext.get();
-                    if (context != null) {
-                        SharedPreferences preferences = context.getSharedPreferences("HockeySDK", Context.MODE_PRIVATE);
-                        confirmedFilenames = Arrays.asList(preferences.getString("ConfirmedFilenames", "").split("\\|"));
-                    }
-                }
-
-            } catch (Exception e) {
-                // Just in case, we catch all exceptions here
+            Context context = null;
+            if (weakContext != null) {
+                context = weakContext.get();
             }
 
-            if (confirmedFilenames != null) {
+            if ((context != null) && !CrashReportIndex.getInstance().hasPendingReports()) {
                 result = 2;
-
-                for (String filename : filenames) {
-                    if (!confirmedFilenames.contains(filename)) {
-                        result = 1;
-                        break;
-                    }
-                }
             } else {
                 result = 1;
             }
@@ -277,88 +781,19 @@ public class CrashManager {
      */
     public static void submitStackTraces(WeakReference<Context> weakContext, CrashManagerListener listener, CrashMetaData crashMetaData) {
         String[] list = searchForStackTraces();
-        Boolean successful = false;
 
         if ((list != null) && (list.length > 0)) {
             Log.d(Constants.TAG, "Found " + list.length + " stacktrace(s).");
 
-            for (int index = 0; index < list.length; index++) {
-                HttpURLConnection urlConnection = null;
-                try {
-                    // Read contents of stack trace
-                    String filename = list[index];
-                    String stacktrace = contentsOfFile(weakContext, filename);
-                    if (stacktrace.length() > 0) {
-                        // Transmit stack trace with POST request
-
-                        Log.d(Constants.TAG, "Transmitting crash data: \n" + stacktrace);
-
-                        // Retrieve user ID and contact information if given
-                        String userID = contentsOfFile(weakContext, filename.replace(".stacktrace", ".user"));
-                        String contact = contentsOfFile(weakContext, filename.replace(".stacktrace", ".contact"));
-
-                        if (crashMetaData != null) {
-                            final String crashMetaDataUserID = crashMetaData.getUserID();
-                            if (crashMetaDataUserID != null && crashMetaDataUserID.length() > 0) {
-                                userID = crashMetaDataUserID;
-                            }
-                            final String crashMetaDataContact = crashMetaData.getUserEmail();
-                            if (crashMetaDataContact != null && crashMetaDataContact.length() > 0) {
-                                contact = crashMetaDataContact;
-                            }
-                        }
-
-                        // Append application log to user provided description if present, if not, just send application log
-                        final String applicationLog = contentsOfFile(weakContext, filename.replace(".stacktrace", ".description"));
-                        String description = crashMetaData != null ? crashMetaData.getUserDescription() : "";
-                        if (applicationLog != null && applicationLog.length() > 0) {
-                            if (description != null && description.length() > 0) {
-                                description = String.format("%s\n\nLog:\n%s", description, applicationLog);
-                            } else {
-                                description = String.format("Log:\n%s", applicationLog);
-                            }
-                        }
-
-                        Map<String, String> parameters = new HashMap<String, String>();
-
-                        parameters.put("raw", stacktrace);
-                        parameters.put("userID", userID);
-                        parameters.put("contact", contact);
-                        parameters.put("description", description);
-                        parameters.put("sdk", Constants.SDK_NAME);
-                        parameters.put("sdk_version", Constants.SDK_VERSION);
-
-                        urlConnection = new HttpURLConnectionBuilder(getURLString())
-                                .setRequestMethod("POST")
-                                .writeFormFields(parameters)
-                                .build();
-
-                        int responseCode = urlConnection.getResponseCode();
-
-                        successful = (responseCode == HttpURLConnection.HTTP_ACCEPTED || responseCode == HttpURLConnection.HTTP_CREATED);
-
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                } finally {
-                    if (urlConnection != null) {
-                        urlConnection.disconnect();
-                    }
-                    if (successful) {
-                        Log.d(Constants.TAG, "Transmission succeeded");
-                        deleteStackTrace(weakContext, list[index]);
-
-                        if (listener != null) {
-                            listener.onCrashesSent();
-                            deleteRetryCounter(weakContext, list[index], listener.getMaxRetryAttempts());
-                        }
-                    } else {
-                        Log.d(Constants.TAG, "Transmission failed, will retry on next register() call");
-                        if (listener != null) {
-                            listener.onCrashesNotSent();
-                            updateRetryCounter(weakContext, list[index], listener.getMaxRetryAttempts());
-                        }
-                    }
+            List<String> filenames = collapseDuplicateStackTraces(weakContext, Arrays.asList(list));
+            int maxReportsPerBatch = (listener != null) ? listener.getMaxCrashReportsPerBatch() : 1;
+            if (maxReportsPerBatch > 1) {
+                for (List<String> batch : createBatches(filenames, maxReportsPerBatch, listener.getMaxCrashBatchSize())) {
+                    submitStackTraceBatch(weakContext, listener, crashMetaData, batch);
+                }
+            } else {
+                for (String filename : filenames) {
+                    submitStackTrace(weakContext, listener, crashMetaData, filename);
                 }
             }
         }
@@ -463,16 +898,151 @@ public class CrashManager {
     }
 
     /**
-     * Private method to initialize the crash manager. This method has an
-     * additional parameter to decide whether to register the exception handler
+     * Returns the number of crash uploads that are waiting for a worker
+     * thread.
+     *
+     * @return the number of queued uploads
+     */
+    public static int getQueuedUploadCount() {
+        CrashUploadExecutor executor = uploadExecutor;
+        return (executor != null) ? executor.getQueueDepth() : 0;
+    }
+
+    /**
+     * Returns the number of crash uploads that are currently running.
+     *
+     * @return the number of uploads in flight
+     */
+    public static int getInFlightUploadCount() {
+        CrashUploadExecutor executor = uploadExecutor;
+        return (executor != null) ? executor.getInFlightCount() : 0;
+    }
+
+    /**
+     * Reports a handled exception. The report is saved on a background
+     * thread and sent like a crash: right away if crashes were already sent
+     * in this session, otherwise with the crashes found on the next start.
+     * Reports are sampled and rate limited per fingerprint as configured
+     * by the listener passed to register or initialize.
+     *
+     * @param exception  The caught exception.
+     * @param properties Custom properties added to the report, may be null.
+     */
+    public static void trackException(Throwable exception, Map<String, String> properties) {
+        if (exception == null) {
+            return;
+        }
+        if (Constants.FILES_PATH == null) {
+            Log.w(Constants.TAG, "Handled exception not saved, the crash manager is not initialized.");
+            return;
+        }
+
+        getHandledExceptionReporter().report(exception, properties, crashManagerListener);
+    }
+
+    /**
+     * Called on a background thread when the report of a handled exception
+     * was saved. If the user already agreed to send crashes in this
+     * session, the report is confirmed and sent with the next upload pass.
+     */
+    static void onHandledExceptionSaved(String filename) {
+        CrashRetryScheduler scheduler = retryScheduler;
+        if (scheduler == null) {
+            return;
+        }
+
+        CrashReportIndex.getInstance().confirm(filename);
+        scheduler.scheduleAt(System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the reporter for handled exceptions, configured by the
+     * listener of the crash manager.
+     */
+    private static synchronized HandledExceptionReporter getHandledExceptionReporter() {
+        if (handledExceptionReporter == null) {
+            handledExceptionReporter = new HandledExceptionReporter(crashManagerListener);
+        }
+        return handledExceptionReporter;
+    }
+
+    /**
+     * Starts a watchdog that saves a crash report whenever the main thread
+     * is blocked for longer than the threshold of the listener, e.g. before
+     * the system shows an ANR dialog. The reports are sent like crashes.
+     * Call this after the crash manager was initialized. A running watchdog
+     * is replaced.
+     *
+     * @param listener Implement for callback functions, may be null.
+     */
+    public static synchronized void startMainThreadWatchdog(CrashManagerListener listener) {
+        if (Constants.FILES_PATH == null) {
+            Log.w(Constants.TAG, "Main thread watchdog not started, the crash manager is not initialized.");
+            return;
+        }
+
+        stopMainThreadWatchdog();
+
+        long interval = (listener != null) ? listener.getMainThreadWatchdogInterval() : DEFAULT_WATCHDOG_INTERVAL;
+        long threshold = (listener != null) ? listener.getMainThreadStallThreshold() : DEFAULT_STALL_THRESHOLD;
+        boolean includeAllThreads = (listener != null) && listener.includeAllThreadsInStallReports();
+        watchdog = new MainThreadWatchdog(listener, interval, threshold, includeAllThreads);
+        watchdog.start();
+    }
+
+    /**
+     * Stops the main thread watchdog, if it is running.
+     */
+    public static synchronized void stopMainThreadWatchdog() {
+        if (watchdog != null) {
+            watchdog.shutdown();
+            watchdog = null;
+        }
+    }
+
+    /**
+     * Returns whether the main thread watchdog is running.
+     *
+     * @return true if the watchdog was started and not stopped
+     */
+    public static synchronized boolean isMainThreadWatchdogRunning() {
+        return watchdog != null;
+    }
+
+    /**
+     * Private method to initialize the crash manager. This method has an
+     * additional parameter to decide whether to register the exception handler
      * at the end or not.
      */
-    private static void initialize(Context context, String urlString, String appIdentifier, CrashManagerListener listener, boolean registerHandler) {
+    private static void initialize(Context context, String urlString, String appIdentifier, CrashManagerListener listener, boolean registerHandler, RegistrationTimings timings) {
         if (context != null) {
             CrashManager.urlString = urlString;
             CrashManager.identifier = Util.sanitizeAppIdentifier(appIdentifier);
+            CrashManager.crashManagerListener = listener;
 
             Constants.loadFromContext(context);
+            timings.mark(RegistrationTimings.PHASE_CONSTANTS);
+            CrashReportIndex.getInstance().load(context);
+            timings.mark(RegistrationTimings.PHASE_INDEX);
+
+            int crashBufferSize = (listener != null) ? listener.getPreallocatedCrashBufferSize() : 0;
+            if ((crashBufferSize > 0) && (preallocatedCrashWriter == null)) {
+                preallocatedCrashWriter = PreallocatedCrashWriter.create(crashBufferSize, listener);
+            }
+
+            int memoryReserveSize = (listener != null) ? listener.getOutOfMemoryReserveSize() : 0;
+            if ((memoryReserveSize > 0) && (memoryReserve == null)) {
+                try {
+                    memoryReserve = new byte[memoryReserveSize];
+                } catch (OutOfMemoryError e) {
+                    Log.w(Constants.TAG, "Failed to allocate memory reserve of " + memoryReserveSize + " bytes.");
+                }
+            }
+
+            if ((listener != null) && listener.useBreadcrumbJournal()) {
+                openBreadcrumbJournal(context, listener);
+                timings.mark(RegistrationTimings.PHASE_JOURNAL);
+            }
 
             if (CrashManager.identifier == null) {
                 CrashManager.identifier = Constants.APP_PACKAGE;
@@ -486,6 +1056,121 @@ public class CrashManager {
         }
     }
 
+    /**
+     * Opens the breadcrumb journal once per process. If the previous
+     * session ended in the foreground without a crash report, a report is
+     * created from its journal first. On the main thread, the journal is
+     * opened on a background thread. If execute() has listed the stack
+     * traces by the time the report is saved, the report is handled right
+     * away, so it isn't left for the next launch.
+     */
+    private static synchronized void openBreadcrumbJournal(Context context, final CrashManagerListener listener) {
+        if (breadcrumbJournalOpened || Constants.FILES_PATH == null) {
+            return;
+        }
+        breadcrumbJournalOpened = true;
+
+        final File file = new File(Constants.FILES_PATH, BREADCRUMB_JOURNAL_FILENAME);
+        final WeakReference<Context> weakContext = new WeakReference<Context>(context);
+        Runnable open = new Runnable() {
+            @Override
+            public void run() {
+                boolean handleReport = false;
+                try {
+                    BreadcrumbJournal journal = BreadcrumbJournal.open(file, Breadcrumbs.CAPACITY);
+                    if (journal.hasUncleanSession()) {
+                        handleReport = saveUncleanSession(journal, listener);
+                    }
+
+                    journal.startSession(Constants.APP_VERSION, System.currentTimeMillis());
+                    Breadcrumbs.setJournal(journal);
+                } catch (IOException e) {
+                    Log.e(Constants.TAG, "Failed to open breadcrumb journal.", e);
+                }
+
+                if (handleReport) {
+                    handleStackTraces(weakContext, listener, false, true);
+                }
+            }
+        };
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            Thread thread = new Thread(open, "HockeyApp-Journal");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.start();
+        } else {
+            open.run();
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            SessionTracker.register(context);
+        } else {
+            // Without lifecycle callbacks, every kill in the background would look unclean
+            Breadcrumbs.setForeground(false);
+        }
+    }
+
+    /**
+     * Saves a report for a session that ended unexpectedly, with the
+     * breadcrumbs from its journal. Android doesn't tell why the process
+     * died before API level 30, so the report doesn't claim a crash.
+     * Returns true if execute() listed the stack traces before the report
+     * was saved and didn't show the crash dialog, which would include it.
+     */
+    private static boolean saveUncleanSession(BreadcrumbJournal journal, CrashManagerListener listener) {
+        long lastTimestamp = journal.getLastTimestamp();
+        String appVersion = journal.getAppVersion();
+        String filename = UUID.randomUUID().toString() + ".stacktrace";
+        String path = Constants.FILES_PATH + "/" + filename;
+        Log.d(Constants.TAG, "Previous session ended unexpectedly, writing report to: " + path);
+
+        // HockeyApp expects the package name in the first line!
+        StringBuilder header = new StringBuilder();
+        header.append("Package: ").append(Constants.APP_PACKAGE).append("\n");
+        header.append("Version Code: ").append(appVersion).append("\n");
+        if (appVersion.equals(Constants.APP_VERSION)) {
+            header.append("Version Name: ").append(Constants.APP_VERSION_NAME).append("\n");
+        }
+        if ((listener == null) || (listener.includeDeviceData())) {
+            header.append("Android: ").append(Constants.ANDROID_VERSION).append("\n");
+            header.append("Manufacturer: ").append(Constants.PHONE_MANUFACTURER).append("\n");
+            header.append("Model: ").append(Constants.PHONE_MODEL).append("\n");
+        }
+        if (Constants.CRASH_IDENTIFIER != null && (listener == null || listener.includeDeviceIdentifier())) {
+            header.append("CrashReporter Key: ").append(Constants.CRASH_IDENTIFIER).append("\n");
+        }
+        header.append("Date: ").append(new Date(lastTimestamp)).append("\n");
+
+        StringBuilder breadcrumbs = new StringBuilder();
+        journal.dump(breadcrumbs, lastTimestamp);
+
+        CrashReportFile.Writer writer = null;
+        try {
+            File tempFile = CrashReportIndex.getTempFile(filename);
+            writer = new CrashReportFile.Writer(new FileOutputStream(tempFile));
+            writer.writeSection(CrashReportFile.SECTION_HEADER, header.toString());
+            writer.writeSection(CrashReportFile.SECTION_STACKTRACE, UNCLEAN_SESSION_STACKTRACE);
+            if (breadcrumbs.length() > 0) {
+                writer.writeSection(CrashReportFile.SECTION_BREADCRUMBS, breadcrumbs.toString());
+            }
+            writer.close();
+            writer = null;
+
+            synchronized (STACK_TRACES_LOCK) {
+                return CrashReportIndex.getInstance().add(filename, tempFile, lastTimestamp, false) && stackTracesListed && !crashDialogShown;
+            }
+        } catch (IOException e) {
+            Log.e(Constants.TAG, "Failed to save report of unclean session.", e);
+            return false;
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
     /**
      * Shows a dialog to ask the user whether he wants to send crash reports to
      * HockeyApp or delete them.
@@ -539,123 +1224,934 @@ public class CrashManager {
     }
 
     /**
-     * Starts thread to send crashes to HockeyApp, then registers the exception
-     * handler.
+     * Schedules the upload of crashes to HockeyApp, then registers the
+     * exception handler.
      */
     private static void sendCrashes(final WeakReference<Context> weakContext, final CrashManagerListener listener, final boolean ignoreDefaultHandler) {
         sendCrashes(weakContext, listener, ignoreDefaultHandler, null);
     }
 
     /**
-     * Starts thread to send crashes to HockeyApp, then registers the exception
-     * handler.
+     * Schedules the upload of crashes to HockeyApp, then registers the
+     * exception handler.
      */
     private static void sendCrashes(final WeakReference<Context> weakContext, final CrashManagerListener listener, final boolean ignoreDefaultHandler, final CrashMetaData crashMetaData) {
         saveConfirmedStackTraces(weakContext);
         registerHandler(weakContext, listener, ignoreDefaultHandler);
 
         Context ctx = weakContext.get();
+        if (ctx != null) {
+            registerRetryScheduler(ctx, listener, crashMetaData);
+        }
+
         if (ctx != null && !Util.isConnectedToNetwork(ctx)) {
             // Not connected to network, not trying to submit stack traces
             return;
         }
 
-        if (!submitting) {
-            submitting = true;
+        scheduleStackTraces(weakContext, listener, crashMetaData);
+    }
 
-            new Thread() {
+    /**
+     * Schedules all stack traces which are not yet queued or in flight on
+     * the upload executor. Reading and merging the reports happens on the
+     * executor, too, as this is called on the main thread.
+     */
+    private static void scheduleStackTraces(final WeakReference<Context> weakContext, final CrashManagerListener listener, final CrashMetaData crashMetaData) {
+        final CrashUploadExecutor executor = getUploadExecutor(listener);
+        executor.execute(Collections.singletonList(SCHEDULE_TASK_KEY), new Runnable() {
+            @Override
+            public void run() {
+                scheduleStackTraces(weakContext, listener, crashMetaData, executor);
+            }
+        });
+    }
+
+    /**
+     * Schedules the uploads of all stack traces which are not yet queued or
+     * in flight. Runs on a worker thread of the upload executor.
+     */
+    private static void scheduleStackTraces(final WeakReference<Context> weakContext, final CrashManagerListener listener, final CrashMetaData crashMetaData, CrashUploadExecutor executor) {
+        String[] list = searchForStackTraces();
+        if ((list == null) || (list.length == 0)) {
+            return;
+        }
+
+        CrashReportIndex index = CrashReportIndex.getInstance();
+        long now = System.currentTimeMillis();
+        long nextAttempt = Long.MAX_VALUE;
+        List<String> filenames = new ArrayList<String>();
+        for (String filename : list) {
+            CrashReportIndex.Entry entry = index.get(filename);
+            if ((entry != null) && !entry.isConfirmed()) {
+                // Saved during this session, e.g. a stall, waits for the user's decision
+                continue;
+            }
+            if ((entry != null) && (entry.getNextAttempt() > now)) {
+                // Failed before, wait until the backoff has passed
+                nextAttempt = Math.min(nextAttempt, entry.getNextAttempt());
+            } else if (!executor.isScheduled(filename) && index.resolve(filename)) {
+                filenames.add(filename);
+            }
+        }
+
+        CrashRetryScheduler scheduler = retryScheduler;
+        if ((nextAttempt != Long.MAX_VALUE) && (scheduler != null)) {
+            scheduler.scheduleAt(nextAttempt);
+        }
+
+        filenames = collapseDuplicateStackTraces(weakContext, filenames);
+
+        int maxReportsPerBatch = (listener != null) ? listener.getMaxCrashReportsPerBatch() : 1;
+        if (maxReportsPerBatch > 1) {
+            for (final List<String> batch : createBatches(filenames, maxReportsPerBatch, listener.getMaxCrashBatchSize())) {
+                executor.execute(batch, new Runnable() {
+                    @Override
+                    public void run() {
+                        submitStackTraceBatch(weakContext, listener, crashMetaData, batch);
+                    }
+                });
+            }
+        } else {
+            for (final String filename : filenames) {
+                executor.execute(Collections.singletonList(filename), new Runnable() {
+                    @Override
+                    public void run() {
+                        submitStackTrace(weakContext, listener, crashMetaData, filename);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Remembers the listener and meta data for retries and starts to listen
+     * for network connectivity.
+     */
+    private static synchronized void registerRetryScheduler(Context context, CrashManagerListener listener, CrashMetaData crashMetaData) {
+        retryContext = new WeakReference<Context>(context.getApplicationContext());
+        retryListener = listener;
+        retryCrashMetaData = crashMetaData;
+
+        if (retryScheduler == null) {
+            retryScheduler = new CrashRetryScheduler(new Runnable() {
                 @Override
                 public void run() {
-                    submitStackTraces(weakContext, listener, crashMetaData);
-                    submitting = false;
+                    retryStackTraces();
                 }
-            }.start();
+            });
         }
+        retryScheduler.registerConnectivityReceiver(context);
     }
 
     /**
-     * Registers the exception handler.
+     * Schedules all stack traces that are due for another upload attempt.
+     * Called on the main thread by the retry scheduler.
      */
-    private static void registerHandler(WeakReference<Context> weakContext, CrashManagerListener listener, boolean ignoreDefaultHandler) {
-        if ((Constants.APP_VERSION != null) && (Constants.APP_PACKAGE != null)) {
-            // Get current handler
-            UncaughtExceptionHandler currentHandler = Thread.getDefaultUncaughtExceptionHandler();
-            if (currentHandler != null) {
-                Log.d(Constants.TAG, "Current handler class = " + currentHandler.getClass().getName());
+    private static void retryStackTraces() {
+        WeakReference<Context> weakContext;
+        CrashManagerListener listener;
+        CrashMetaData crashMetaData;
+        synchronized (CrashManager.class) {
+            weakContext = retryContext;
+            listener = retryListener;
+            crashMetaData = retryCrashMetaData;
+        }
+
+        Context context = (weakContext != null) ? weakContext.get() : null;
+        if (context == null || !Util.isConnectedToNetwork(context)) {
+            return;
+        }
+        scheduleStackTraces(weakContext, listener, crashMetaData);
+    }
+
+    /**
+     * Deletes stack traces until the stored reports are within the limits
+     * of the listener. Reports with the lowest priority are deleted first,
+     * reports with the same priority oldest first. Only the meta data in
+     * the crash report index is used. Reports that are being uploaded are
+     * kept.
+     */
+    private static void evictStackTraces(WeakReference<Context> weakContext, final CrashManagerListener listener) {
+        int maxReports = (listener != null) ? listener.getMaxStoredCrashReports() : DEFAULT_MAX_STORED_REPORTS;
+        long maxBytes = (listener != null) ? listener.getMaxStoredCrashBytes() : DEFAULT_MAX_STORED_BYTES;
+        if (Constants.FILES_PATH == null || (maxReports == -1 && maxBytes == -1)) {
+            return;
+        }
+        if (weakContext == null || weakContext.get() == null) {
+            return;
+        }
+
+        List<CrashReportIndex.Entry> entries = CrashReportIndex.getInstance().getEntries();
+        int count = entries.size();
+        long size = 0;
+        for (CrashReportIndex.Entry entry : entries) {
+            size += entry.getSize();
+        }
+        if ((maxReports == -1 || count <= maxReports) && (maxBytes == -1 || size <= maxBytes)) {
+            return;
+        }
+
+        // The index keeps the order of insertion, which isn't the order of
+        // the crashes for migrated reports. Sorting is stable, so reports
+        // with the same priority stay sorted oldest first.
+        Collections.sort(entries, new Comparator<CrashReportIndex.Entry>() {
+            @Override
+            public int compare(CrashReportIndex.Entry lhs, CrashReportIndex.Entry rhs) {
+                return (lhs.getTimestamp() < rhs.getTimestamp()) ? -1 : ((lhs.getTimestamp() == rhs.getTimestamp()) ? 0 : 1);
+            }
+        });
+        if (listener != null) {
+            Collections.sort(entries, new Comparator<CrashReportIndex.Entry>() {
+                @Override
+                public int compare(CrashReportIndex.Entry lhs, CrashReportIndex.Entry rhs) {
+                    int lhsPriority = listener.getCrashReportPriority(lhs);
+                    int rhsPriority = listener.getCrashReportPriority(rhs);
+                    return (lhsPriority < rhsPriority) ? -1 : ((lhsPriority == rhsPriority) ? 0 : 1);
+                }
+            });
+        }
+
+        CrashUploadExecutor executor = uploadExecutor;
+        for (CrashReportIndex.Entry entry : entries) {
+            if ((maxReports == -1 || count <= maxReports) && (maxBytes == -1 || size <= maxBytes)) {
+                break;
             }
+            if (executor != null && executor.isScheduled(entry.getFilename())) {
+                continue;
+            }
+
+            Log.d(Constants.TAG, "Storage limit reached, deleting crash report " + entry.getFilename());
+            deleteStackTrace(weakContext, entry.getFilename());
+            count--;
+            size -= entry.getSize();
+            if (listener != null) {
+                listener.onCrashReportEvicted(entry);
+            }
+        }
+    }
 
-            // Update listener if already registered, otherwise set new handler
-            if (currentHandler instanceof ExceptionHandler) {
-                ((ExceptionHandler) currentHandler).setListener(listener);
+    /**
+     * Merges stack traces with the same fingerprint into the oldest one,
+     * which then carries the number of occurrences and the time of the
+     * last one. A duplicate is only merged once it is deleted. Returns the
+     * remaining filenames. Reads the reports, so don't call this on the
+     * main thread.
+     */
+    private static List<String> collapseDuplicateStackTraces(WeakReference<Context> weakContext, List<String> filenames) {
+        CrashReportIndex index = CrashReportIndex.getInstance();
+        Map<String, String> firstByFingerprint = new HashMap<String, String>();
+        List<String> remaining = new ArrayList<String>();
+        for (String filename : filenames) {
+            String fingerprint = getFingerprint(filename);
+            String first = (fingerprint != null) ? firstByFingerprint.get(fingerprint) : null;
+            if (first == null) {
+                if (fingerprint != null) {
+                    firstByFingerprint.put(fingerprint, filename);
+                }
+                remaining.add(filename);
             } else {
-                Thread.setDefaultUncaughtExceptionHandler(new ExceptionHandler(currentHandler, listener, ignoreDefaultHandler));
+                CrashReportIndex.Entry duplicate = index.get(filename);
+                if (deleteStackTrace(weakContext, filename)) {
+                    Log.d(Constants.TAG, "Merged duplicate crash report " + filename + " into " + first);
+                    index.mergeOccurrences(first, duplicate);
+                } else {
+                    remaining.add(filename);
+                }
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * Returns the fingerprint of a stack trace. It is computed on first
+     * use and kept in the crash report index.
+     */
+    private static String getFingerprint(String filename) {
+        CrashReportIndex.Entry entry = CrashReportIndex.getInstance().get(filename);
+        if (entry == null) {
+            return null;
+        }
+
+        String fingerprint = entry.getFingerprint();
+        if (fingerprint == null) {
+            try {
+                fingerprint = CrashFingerprint.compute(new File(Constants.FILES_PATH, filename));
+            } catch (IOException e) {
+                e.printStackTrace();
             }
+            if (fingerprint != null) {
+                CrashReportIndex.getInstance().setFingerprint(filename, fingerprint);
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Returns the upload executor and applies the thread count of the given
+     * listener.
+     */
+    private static synchronized CrashUploadExecutor getUploadExecutor(CrashManagerListener listener) {
+        int maxThreads = (listener != null) ? listener.getMaxCrashUploadThreads() : DEFAULT_UPLOAD_THREADS;
+        if (uploadExecutor == null) {
+            int queueCapacity = (listener != null) ? listener.getCrashUploadQueueCapacity() : DEFAULT_UPLOAD_QUEUE_CAPACITY;
+            uploadExecutor = new CrashUploadExecutor(maxThreads, queueCapacity);
+        } else {
+            uploadExecutor.setMaxThreads(maxThreads);
+        }
+        return uploadExecutor;
+    }
+
+    /**
+     * Registers the exception handler.
+     */
+    private static void registerHandler(WeakReference<Context> weakContext, CrashManagerListener listener, boolean ignoreDefaultHandler) {
+        if ((Constants.APP_VERSION != null) && (Constants.APP_PACKAGE != null)) {
+            installHandler(listener, ignoreDefaultHandler);
         } else {
             Log.d(Constants.TAG, "Exception handler not set because version or package is null.");
         }
     }
 
     /**
-     * Returns the complete URL for the HockeyApp API.
+     * Sets the exception handler or updates the registered one.
      */
-    private static String getURLString() {
-        return urlString + "api/2/apps/" + identifier + "/crashes/";
+    private static void installHandler(CrashManagerListener listener, boolean ignoreDefaultHandler) {
+        // Get current handler
+        UncaughtExceptionHandler currentHandler = Thread.getDefaultUncaughtExceptionHandler();
+        if (currentHandler != null) {
+            Log.d(Constants.TAG, "Current handler class = " + currentHandler.getClass().getName());
+        }
+
+        // Update listener if already registered, otherwise set new handler
+        if (currentHandler instanceof ExceptionHandler) {
+            ((ExceptionHandler) currentHandler).setListener(listener);
+            ((ExceptionHandler) currentHandler).setPreallocatedCrashWriter(preallocatedCrashWriter);
+        } else {
+            ExceptionHandler handler = new ExceptionHandler(currentHandler, listener, ignoreDefaultHandler);
+            handler.setPreallocatedCrashWriter(preallocatedCrashWriter);
+            Thread.setDefaultUncaughtExceptionHandler(handler);
+        }
     }
 
     /**
-     * Update the retry attempts count for this crash stacktrace.
+     * Logs the phase timings of a registration and passes them to the
+     * listener.
      */
-    private static void updateRetryCounter(WeakReference<Context> weakContext, String filename, int maxRetryAttempts) {
-        if (maxRetryAttempts == -1) {
+    private static void onRegistrationFinished(CrashManagerListener listener, RegistrationTimings timings) {
+        Log.d(Constants.TAG, "Crash manager registered: " + timings);
+        if (listener != null) {
+            listener.onRegistrationFinished(timings);
+        }
+    }
+
+    /**
+     * Submits a single stack trace from the files dir to HockeyApp.
+     */
+    private static void submitStackTrace(WeakReference<Context> weakContext, CrashManagerListener listener, CrashMetaData crashMetaData, String filename) {
+        submitStackTrace(weakContext, listener, crashMetaData, filename, 0);
+    }
+
+    /**
+     * Submits a single stack trace from the files dir to HockeyApp, with
+     * the given connect and read timeout or the default one if 0.
+     */
+    private static void submitStackTrace(WeakReference<Context> weakContext, CrashManagerListener listener, CrashMetaData crashMetaData, String filename, int timeout) {
+        if (!new File(Constants.FILES_PATH, filename).exists()) {
+            CrashReportIndex.getInstance().remove(filename);
             return;
         }
 
+        Boolean successful = false;
+        HttpURLConnection urlConnection = null;
+        RequestTrace trace = null;
+        int responseCode = -1;
+        try {
+            FormBody formBody = getCrashFormBody(weakContext, filename, crashMetaData);
+            if (formBody != null) {
+                // Transmit stack trace with POST request, streamed from the file
+                Log.d(Constants.TAG, "Transmitting crash data of " + filename);
+
+                formBody.addField("sdk", Constants.SDK_NAME);
+                formBody.addField("sdk_version", Constants.SDK_VERSION);
+
+                trace = RequestTrace.start(Endpoint.CRASH, getURLString(), getMaxRetryCount(Collections.singletonList(filename)));
+                HttpURLConnectionBuilder builder = new HttpURLConnectionBuilder(getURLString())
+                        .setRequestMethod("POST")
+                        .setCompressRequestBody(listener != null && listener.compressCrashReports());
+                if (timeout > 0) {
+                    builder.setTimeout(timeout);
+                }
+                builder.writeFormFields(formBody);
+                builder.setTrace(trace);
+                urlConnection = builder.build();
+                onCrashDataSent(listener, builder);
+
+                responseCode = urlConnection.getResponseCode();
+                trace.responseReceived(responseCode);
+
+                successful = (responseCode == HttpURLConnection.HTTP_ACCEPTED || responseCode == HttpURLConnection.HTTP_CREATED);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (trace != null) {
+                trace.finish();
+            }
+            if (urlConnection != null) {
+                HttpTransports.getDefault().releaseConnection(urlConnection, responseCode);
+            }
+            handleSubmitResult(weakContext, listener, filename, successful);
+        }
+    }
+
+    /**
+     * Submits the given stack traces with a single multipart request. The
+     * server answers with the list of accepted reports; all other reports of
+     * the batch are treated as failed and will be retried.
+     */
+    private static void submitStackTraceBatch(WeakReference<Context> weakContext, CrashManagerListener listener, CrashMetaData crashMetaData, List<String> batch) {
         Context context = null;
         if (weakContext != null) {
             context = weakContext.get();
+        }
+
+        List<String> accepted = new ArrayList<String>();
+        List<String> included = new ArrayList<String>();
+        HttpURLConnection urlConnection = null;
+        RequestTrace trace = null;
+        int responseCode = -1;
+        try {
             if (context != null) {
-                SharedPreferences preferences = context.getSharedPreferences("HockeySDK", Context.MODE_PRIVATE);
-                SharedPreferences.Editor editor = preferences.edit();
+                Log.d(Constants.TAG, "Transmitting batch of " + batch.size() + " crash report(s).");
+
+                MultipartBody multipartBody = new MultipartBody();
+                multipartBody.addPart("sdk", Constants.SDK_NAME);
+                multipartBody.addPart("sdk_version", Constants.SDK_VERSION);
+
+                // All text fields have to be written before the first file part
+                List<MultipartBody.Source> logs = new ArrayList<MultipartBody.Source>();
+                List<MultipartBody.Source> threadDumps = new ArrayList<MultipartBody.Source>();
+                for (String filename : batch) {
+                    File file = context.getFileStreamPath(filename);
+                    Map<Integer, CrashReportFile.Section> sections = CrashReportFile.readSections(file);
+                    MultipartBody.Source log = getCrashLogSource(file, sections);
+                    Map<String, String> parameters = log != null ? getCrashParameters(weakContext, filename, crashMetaData) : null;
+                    if (parameters == null) {
+                        continue;
+                    }
+
+                    String prefix = "crashes[" + included.size() + "]";
+                    multipartBody.addPart(prefix + "[id]", filename);
+                    for (String key : new String[]{"userID", "contact", "description"}) {
+                        String value = parameters.get(key);
+                        if (value != null) {
+                            multipartBody.addPart(prefix + "[" + key + "]", value);
+                        }
+                    }
+                    included.add(filename);
+                    logs.add(log);
+                    CrashReportFile.Section threads = (sections != null) ? sections.get(CrashReportFile.SECTION_THREADS) : null;
+                    threadDumps.add((threads != null) ? getSectionSource(file, threads) : null);
+                }
 
-                int retryCounter = preferences.getInt("RETRY_COUNT: " + filename, 0);
-                if (retryCounter >= maxRetryAttempts) {
-                    deleteStackTrace(weakContext, filename);
-                    deleteRetryCounter(weakContext, filename, maxRetryAttempts);
+                // The logs are streamed from the files when the body is written
+                for (int index = 0; index < included.size(); index++) {
+                    multipartBody.addPart("crashes[" + index + "][log]", included.get(index), "text/plain", logs.get(index));
+                    if (threadDumps.get(index) != null) {
+                        multipartBody.addPart("crashes[" + index + "][threads]", "threads.txt", "text/plain", threadDumps.get(index));
+                    }
+                }
+
+                if (!included.isEmpty()) {
+                    trace = RequestTrace.start(Endpoint.CRASH, getBatchURLString(), getMaxRetryCount(included));
+                    HttpURLConnectionBuilder builder = new HttpURLConnectionBuilder(getBatchURLString())
+                            .setRequestMethod("POST")
+                            .setCompressRequestBody(listener != null && listener.compressCrashReports())
+                            .writeMultipartData(multipartBody)
+                            .setAcceptCompression(true)
+                            .setTrace(trace);
+                    urlConnection = builder.build();
+                    onCrashDataSent(listener, builder);
+
+                    responseCode = urlConnection.getResponseCode();
+                    trace.responseReceived(responseCode);
+                    if (responseCode == HttpURLConnection.HTTP_ACCEPTED || responseCode == HttpURLConnection.HTTP_CREATED) {
+                        accepted.addAll(getAcceptedReports(urlConnection, trace));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (trace != null) {
+                trace.finish();
+            }
+            if (urlConnection != null) {
+                HttpTransports.getDefault().releaseConnection(urlConnection, responseCode);
+            }
+            for (String filename : batch) {
+                handleSubmitResult(weakContext, listener, filename, accepted.contains(filename));
+            }
+        }
+    }
+
+    /**
+     * Returns the highest retry count of the given reports, i.e. the retry
+     * attempt of their upload.
+     */
+    private static int getMaxRetryCount(List<String> filenames) {
+        int retryCount = 0;
+        for (String filename : filenames) {
+            CrashReportIndex.Entry entry = CrashReportIndex.getInstance().get(filename);
+            if (entry != null) {
+                retryCount = Math.max(retryCount, entry.getRetryCount());
+            }
+        }
+        return retryCount;
+    }
+
+    /**
+     * Reports the body size of an upload request before and after
+     * compression to the log and the listener.
+     */
+    private static void onCrashDataSent(CrashManagerListener listener, HttpURLConnectionBuilder builder) {
+        long rawSize = builder.getRawBodySize();
+        long sentSize = builder.getSentBodySize();
+        Log.d(Constants.TAG, "Sent " + sentSize + " of " + rawSize + " bytes of crash data.");
+        if (listener != null) {
+            listener.onCrashDataSent(rawSize, sentSize);
+        }
+    }
+
+    /**
+     * Parses the response of a batch upload. The server returns the ids of
+     * all accepted reports as JSON, e.g. {"accepted": ["id1", "id2"]}. If
+     * the response can't be read or has no such list, no report counts as
+     * accepted, so that all reports of the batch are kept for a retry.
+     */
+    private static List<String> getAcceptedReports(HttpURLConnection urlConnection, RequestTrace trace) {
+        List<String> accepted = new ArrayList<String>();
+        try {
+            String response = ResponseBodyReader.readString(urlConnection, trace);
+            JSONArray acceptedIds = new JSONObject(response).optJSONArray("accepted");
+            if (acceptedIds == null) {
+                Log.d(Constants.TAG, "Batch response has no accepted reports, keeping all reports for retry.");
+                return accepted;
+            }
+            for (int index = 0; index < acceptedIds.length(); index++) {
+                accepted.add(acceptedIds.getString(index));
+            }
+        } catch (IOException | JSONException e) {
+            Log.d(Constants.TAG, "Batch response could not be read, keeping all reports for retry.");
+            accepted.clear();
+        }
+        return accepted;
+    }
+
+    /**
+     * Splits the given stack traces into batches. A batch is closed when it
+     * holds maxReports reports or when the next report would exceed
+     * maxBytes. A single report that exceeds maxBytes makes up a batch of
+     * its own.
+     */
+    private static List<List<String>> createBatches(List<String> filenames, int maxReports, long maxBytes) {
+        List<List<String>> batches = new ArrayList<List<String>>();
+        List<String> batch = new ArrayList<String>();
+        long batchSize = 0;
+
+        for (String filename : filenames) {
+            long size = getStackTraceSize(filename);
+            if (!batch.isEmpty() && ((batch.size() >= maxReports) || (batchSize + size > maxBytes))) {
+                batches.add(batch);
+                batch = new ArrayList<String>();
+                batchSize = 0;
+            }
+
+            batch.add(filename);
+            batchSize += size;
+        }
+
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+
+        return batches;
+    }
+
+    /**
+     * Returns the size of the given stack trace including all meta files.
+     */
+    private static long getStackTraceSize(String filename) {
+        CrashReportIndex.Entry entry = CrashReportIndex.getInstance().get(filename);
+        if ((entry != null) && entry.isSingleFile()) {
+            return entry.getSize();
+        }
+
+        long size = 0;
+        for (String extension : new String[]{".stacktrace", ".user", ".contact", ".description"}) {
+            size += new File(Constants.FILES_PATH, filename.replace(".stacktrace", extension)).length();
+        }
+        return size;
+    }
+
+    /**
+     * Reads the given stack trace with its meta data and merges it with the
+     * optional crash meta data. Returns null if the stack trace is empty.
+     */
+    private static Map<String, String> getCrashParameters(WeakReference<Context> weakContext, String filename, CrashMetaData crashMetaData) {
+        Map<String, String> report = readCrashReport(weakContext, filename);
+        if (report == null) {
+            return null;
+        }
+
+        String userID = report.get("userID");
+        String contact = report.get("contact");
+
+        if (crashMetaData != null) {
+            final String crashMetaDataUserID = crashMetaData.getUserID();
+            if (crashMetaDataUserID != null && crashMetaDataUserID.length() > 0) {
+                userID = crashMetaDataUserID;
+            }
+            final String crashMetaDataContact = crashMetaData.getUserEmail();
+            if (crashMetaDataContact != null && crashMetaDataContact.length() > 0) {
+                contact = crashMetaDataContact;
+            }
+        }
+
+        // Append application log to user provided description if present, if not, just send application log
+        final String applicationLog = report.get("description");
+        String description = appendOccurrences(crashMetaData != null ? crashMetaData.getUserDescription() : "", filename);
+        if (applicationLog != null && applicationLog.length() > 0) {
+            if (description != null && description.length() > 0) {
+                description = String.format("%s\n\nLog:\n%s", description, applicationLog);
+            } else {
+                description = String.format("Log:\n%s", applicationLog);
+            }
+        }
+
+        // Append breadcrumbs and properties with their label
+        for (int index = 0; index < DESCRIPTION_SECTIONS.length; index++) {
+            final String value = report.get(DESCRIPTION_SECTION_LABELS[index]);
+            if (value != null && value.length() > 0) {
+                if (description != null && description.length() > 0) {
+                    description = String.format("%s\n\n%s:\n%s", description, DESCRIPTION_SECTION_LABELS[index], value);
                 } else {
-                    editor.putInt("RETRY_COUNT: " + filename, retryCounter + 1);
-                    editor.apply();
+                    description = String.format("%s:\n%s", DESCRIPTION_SECTION_LABELS[index], value);
                 }
             }
         }
+
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("userID", userID);
+        parameters.put("contact", contact);
+        parameters.put("description", description);
+        return parameters;
     }
 
     /**
-     * Delete the retry counter if stacktrace is uploaded or retry limit is
-     * reached.
+     * Creates the form body to upload the given stack trace and merges it
+     * with the optional crash meta data. The stack trace and the application
+     * log are not read into memory, but streamed from the file when the body
+     * is written. Returns null if the stack trace is empty.
      */
-    private static void deleteRetryCounter(WeakReference<Context> weakContext, String filename, int maxRetryAttempts) {
+    private static FormBody getCrashFormBody(WeakReference<Context> weakContext, String filename, CrashMetaData crashMetaData) throws IOException {
         Context context = null;
         if (weakContext != null) {
             context = weakContext.get();
-            if (context != null) {
-                SharedPreferences preferences = context.getSharedPreferences("HockeySDK", Context.MODE_PRIVATE);
-                SharedPreferences.Editor editor = preferences.edit();
-                editor.remove("RETRY_COUNT: " + filename);
-                editor.apply();
+        }
+
+        if (context == null) {
+            return null;
+        }
+
+        String userID = null;
+        String contact = null;
+        String userDescription = null;
+        if (crashMetaData != null) {
+            userID = crashMetaData.getUserID();
+            contact = crashMetaData.getUserEmail();
+            userDescription = crashMetaData.getUserDescription();
+        }
+        userDescription = appendOccurrences(userDescription, filename);
+
+        FormBody formBody = new FormBody();
+        FormBody.Field raw = formBody.addField("raw");
+        FormBody.Field userIDField = formBody.addField("userID");
+        FormBody.Field contactField = formBody.addField("contact");
+        FormBody.Field descriptionField = formBody.addField("description");
+
+        File file = context.getFileStreamPath(filename);
+        File logFile;
+        long logOffset;
+        long logLength;
+
+        Map<Integer, CrashReportFile.Section> sections = CrashReportFile.readSections(file);
+        if (sections != null) {
+            CrashReportFile.Section header = sections.get(CrashReportFile.SECTION_HEADER);
+            CrashReportFile.Section stacktrace = sections.get(CrashReportFile.SECTION_STACKTRACE);
+            if (header == null && stacktrace == null) {
+                return null;
+            }
+
+            appendSection(raw, file, header);
+            raw.append("\n");
+            appendSection(raw, file, stacktrace);
+            if (userID == null || userID.length() == 0) {
+                appendSection(userIDField, file, sections.get(CrashReportFile.SECTION_USER_ID));
+            }
+            if (contact == null || contact.length() == 0) {
+                appendSection(contactField, file, sections.get(CrashReportFile.SECTION_CONTACT));
+            }
+
+            // The thread dump is a field of its own, so the stack trace stays parseable
+            CrashReportFile.Section threads = sections.get(CrashReportFile.SECTION_THREADS);
+            if (threads != null) {
+                appendSection(formBody.addField("threads"), file, threads);
+            }
+
+            CrashReportFile.Section log = sections.get(CrashReportFile.SECTION_DESCRIPTION);
+            logFile = file;
+            logOffset = log != null ? log.getOffset() : 0;
+            logLength = log != null ? log.getLength() : 0;
+        } else {
+            if (file.length() == 0) {
+                return null;
+            }
+
+            raw.append(file, 0, file.length());
+            if (userID == null || userID.length() == 0) {
+                File userFile = context.getFileStreamPath(filename.replace(".stacktrace", ".user"));
+                userIDField.append(userFile, 0, userFile.length());
+            }
+            if (contact == null || contact.length() == 0) {
+                File contactFile = context.getFileStreamPath(filename.replace(".stacktrace", ".contact"));
+                contactField.append(contactFile, 0, contactFile.length());
+            }
+
+            logFile = context.getFileStreamPath(filename.replace(".stacktrace", ".description"));
+            logOffset = 0;
+            logLength = logFile.length();
+        }
+
+        if (userID != null && userID.length() > 0) {
+            userIDField.append(userID);
+        }
+        if (contact != null && contact.length() > 0) {
+            contactField.append(contact);
+        }
+
+        // Append application log to user provided description if present, if not, just send application log
+        if (logLength > 0) {
+            if (userDescription != null && userDescription.length() > 0) {
+                descriptionField.append(userDescription).append("\n\nLog:\n");
+            } else {
+                descriptionField.append("Log:\n");
+            }
+            descriptionField.append(logFile, logOffset, logLength);
+        } else {
+            descriptionField.append(userDescription);
+        }
+
+        // Append breadcrumbs and properties with their label
+        boolean hasDescription = logLength > 0 || (userDescription != null && userDescription.length() > 0);
+        for (int index = 0; sections != null && index < DESCRIPTION_SECTIONS.length; index++) {
+            CrashReportFile.Section section = sections.get(DESCRIPTION_SECTIONS[index]);
+            if (section != null && section.getLength() > 0) {
+                if (hasDescription) {
+                    descriptionField.append("\n\n");
+                }
+                descriptionField.append(DESCRIPTION_SECTION_LABELS[index]).append(":\n");
+                appendSection(descriptionField, file, section);
+                hasDescription = true;
             }
         }
+        return formBody;
+    }
+
+    /**
+     * Appends the number of occurrences and the time of the first and last
+     * one to the description, if duplicates were merged into the given
+     * stack trace.
+     */
+    private static String appendOccurrences(String description, String filename) {
+        CrashReportIndex.Entry entry = CrashReportIndex.getInstance().get(filename);
+        if (entry == null || entry.getOccurrences() <= 1) {
+            return description;
+        }
+
+        String occurrences = "Occurrences: " + entry.getOccurrences() + "\n" +
+                "First seen: " + new Date(entry.getTimestamp()) + "\n" +
+                "Last seen: " + new Date(entry.getLastSeen());
+        if (description != null && description.length() > 0) {
+            return description + "\n\n" + occurrences;
+        }
+        return occurrences;
+    }
+
+    /**
+     * Appends the payload of a section to a form field, if the section
+     * exists.
+     */
+    private static void appendSection(FormBody.Field field, File file, CrashReportFile.Section section) {
+        if (section != null) {
+            field.append(file, section.getOffset(), section.getLength());
+        }
+    }
+
+    /**
+     * Returns the raw crash log of the given stack trace, i.e. the header
+     * lines and the stack trace, as a source that is streamed from the file.
+     * The sections are null for a report in the legacy format. Returns null
+     * if the stack trace is empty.
+     */
+    private static MultipartBody.Source getCrashLogSource(File file, Map<Integer, CrashReportFile.Section> sections) {
+        if (sections == null) {
+            return (file.length() > 0) ? MultipartBody.fileRegion(file, 0, file.length()) : null;
+        }
+
+        CrashReportFile.Section header = sections.get(CrashReportFile.SECTION_HEADER);
+        CrashReportFile.Section stacktrace = sections.get(CrashReportFile.SECTION_STACKTRACE);
+        if (header == null && stacktrace == null) {
+            return null;
+        }
+        return MultipartBody.concat(
+                getSectionSource(file, header),
+                MultipartBody.bytes(new byte[]{'\n'}),
+                getSectionSource(file, stacktrace));
+    }
+
+    private static MultipartBody.Source getSectionSource(File file, CrashReportFile.Section section) {
+        if (section == null) {
+            return MultipartBody.bytes(new byte[0]);
+        }
+        return MultipartBody.fileRegion(file, section.getOffset(), section.getLength());
+    }
+
+    /**
+     * Reads the meta data of a crash report, without its stack trace.
+     * Reports in the single file format are read from their sections,
+     * reports written by older SDK versions are read from the meta files of
+     * the stack trace. Returns null if the stack trace is empty.
+     */
+    private static Map<String, String> readCrashReport(WeakReference<Context> weakContext, String filename) {
+        Context context = null;
+        if (weakContext != null) {
+            context = weakContext.get();
+        }
+
+        if (context == null) {
+            return null;
+        }
+
+        Map<String, String> report = new HashMap<String, String>();
+        File file = context.getFileStreamPath(filename);
+        try {
+            Map<Integer, CrashReportFile.Section> sections = CrashReportFile.readSections(file);
+            if (sections != null) {
+                if (sections.get(CrashReportFile.SECTION_HEADER) == null && sections.get(CrashReportFile.SECTION_STACKTRACE) == null) {
+                    return null;
+                }
+                report.put("userID", CrashReportFile.readSection(file, sections.get(CrashReportFile.SECTION_USER_ID)));
+                report.put("contact", CrashReportFile.readSection(file, sections.get(CrashReportFile.SECTION_CONTACT)));
+                report.put("description", CrashReportFile.readSection(file, sections.get(CrashReportFile.SECTION_DESCRIPTION)));
+                for (int index = 0; index < DESCRIPTION_SECTIONS.length; index++) {
+                    report.put(DESCRIPTION_SECTION_LABELS[index], CrashReportFile.readSection(file, sections.get(DESCRIPTION_SECTIONS[index])));
+                }
+                return report;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        if (file.length() == 0) {
+            return null;
+        }
+
+        report.put("userID", contentsOfFile(weakContext, filename.replace(".stacktrace", ".user")));
+        report.put("contact", contentsOfFile(weakContext, filename.replace(".stacktrace", ".contact")));
+        report.put("description", contentsOfFile(weakContext, filename.replace(".stacktrace", ".description")));
+        return report;
+    }
+
+    /**
+     * Deletes a transmitted stack trace or updates its retry counter if the
+     * transmission failed, then informs the listener.
+     */
+    private static void handleSubmitResult(WeakReference<Context> weakContext, CrashManagerListener listener, String filename, boolean successful) {
+        if (successful) {
+            Log.d(Constants.TAG, "Transmission succeeded");
+            deleteStackTrace(weakContext, filename);
+
+            if (listener != null) {
+                listener.onCrashesSent();
+            }
+        } else {
+            Log.d(Constants.TAG, "Transmission failed, will retry later");
+            if (listener != null) {
+                listener.onCrashesNotSent();
+            }
+            updateRetryCounter(weakContext, filename, (listener != null) ? listener.getMaxRetryAttempts() : -1);
+        }
+    }
+
+    /**
+     * Returns the complete URL for the HockeyApp API.
+     */
+    private static String getURLString() {
+        return urlString + "api/2/apps/" + identifier + "/crashes/";
+    }
+
+    /**
+     * Returns the complete URL for batch uploads to the HockeyApp API.
+     */
+    private static String getBatchURLString() {
+        return urlString + "api/2/apps/" + identifier + "/crashes/batch";
+    }
+
+    /**
+     * Update the retry attempts count for this crash stacktrace and
+     * schedules the next attempt with exponential backoff, or deletes it
+     * if the max retry attempts are reached.
+     */
+    private static void updateRetryCounter(WeakReference<Context> weakContext, String filename, int maxRetryAttempts) {
+        CrashReportIndex index = CrashReportIndex.getInstance();
+        int retryCounter = index.incrementRetryCount(filename);
+        if (retryCounter < 0) {
+            return;
+        }
+
+        if ((maxRetryAttempts != -1) && (retryCounter >= maxRetryAttempts)) {
+            deleteStackTrace(weakContext, filename);
+            return;
+        }
+
+        long nextAttempt = System.currentTimeMillis() + RetryBackoff.getDelay(retryCounter);
+        index.setNextAttempt(filename, nextAttempt);
+
+        CrashRetryScheduler scheduler = retryScheduler;
+        if (scheduler != null) {
+            scheduler.scheduleAt(nextAttempt);
+        }
     }
 
     /**
      * Deletes the give filename and all corresponding files (same name,
-     * different extension).
+     * different extension). Returns whether the stack trace was deleted.
      */
-    private static void deleteStackTrace(WeakReference<Context> weakContext, String filename) {
+    private static boolean deleteStackTrace(WeakReference<Context> weakContext, String filename) {
         Context context = null;
         if (weakContext != null) {
             context = weakContext.get();
             if (context != null) {
-                context.deleteFile(filename);
+                boolean deleted = context.deleteFile(filename);
+
+                CrashReportIndex.Entry entry = CrashReportIndex.getInstance().get(filename);
+                if ((entry != null) && entry.isSingleFile()) {
+                    CrashReportIndex.getInstance().remove(filename);
+                    return deleted;
+                }
 
                 String user = filename.replace(".stacktrace", ".user");
                 context.deleteFile(user);
@@ -665,8 +2161,12 @@ public class CrashManager {
 
                 String description = filename.replace(".stacktrace", ".description");
                 context.deleteFile(description);
+
+                CrashReportIndex.getInstance().remove(filename);
+                return deleted;
             }
         }
+        return false;
     }
 
     /**
@@ -706,65 +2206,21 @@ public class CrashManager {
     }
 
     /**
-     * Saves the list of the stack traces' file names in shared preferences.
+     * Marks all stack traces as confirmed in the crash report index.
      */
     private static void saveConfirmedStackTraces(WeakReference<Context> weakContext) {
-        Context context = null;
-        if (weakContext != null) {
-            context = weakContext.get();
-            if (context != null) {
-                try {
-                    String[] filenames = searchForStackTraces();
-                    SharedPreferences preferences = context.getSharedPreferences("HockeySDK", Context.MODE_PRIVATE);
-                    Editor editor = preferences.edit();
-                    editor.putString("ConfirmedFilenames", joinArray(filenames, "|"));
-                    editor.apply();
-                } catch (Exception e) {
-                    // Just in case, we catch all exceptions here
-                }
-            }
-        }
+        CrashReportIndex.getInstance().confirmAll();
     }
 
     /**
-     * Returns a string created by each element of the array, separated by
-     * delimiter.
-     */
-    private static String joinArray(String[] array, String delimiter) {
-        StringBuffer buffer = new StringBuffer();
-        for (int index = 0; index < array.length; index++) {
-            buffer.append(array[index]);
-            if (index < array.length - 1) {
-                buffer.append(delimiter);
-            }
-        }
-        return buffer.toString();
-    }
-
-    /**
-     * Searches .stacktrace files and returns then as array.
+     * Returns the filenames of all stack traces from the crash report index.
      */
     private static String[] searchForStackTraces() {
         if (Constants.FILES_PATH != null) {
-            Log.d(Constants.TAG, "Looking for exceptions in: " + Constants.FILES_PATH);
-
-            // Try to create the files folder if it doesn't exist
-            File dir = new File(Constants.FILES_PATH + "/");
-            boolean created = dir.mkdir();
-            if (!created && !dir.exists()) {
-                return new String[0];
-            }
-
-            // Filter for ".stacktrace" files
-            FilenameFilter filter = new FilenameFilter() {
-                public boolean accept(File dir, String name) {
-                    return name.endsWith(".stacktrace");
-                }
-            };
-            return dir.list(filter);
+            return CrashReportIndex.getInstance().getFilenames();
         } else {
             Log.d(Constants.TAG, "Can't search for exception as file path is null.");
             return null;
         }
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,9 @@
 package net.hockeyapp.android;
 
+import net.hockeyapp.android.objects.RegistrationTimings;
+import net.hockeyapp.android.utils.CrashReportIndex;
+import net.hockeyapp.android.utils.ThreadDump;
+
 /**
  * <h3>Description</h3>
  *
@@ -172,6 +176,313 @@ public abstract class CrashManagerListener {
         return 1;
     }
 
+    /**
+     * Return the max number of crash reports to send to HockeyApp with a
+     * single request. Values greater than 1 enable batch uploads, which
+     * saves the connection setup and a round trip for every additional
+     * report, e.g. after a crash loop.
+     *
+     * @return the max number of crash reports per upload request
+     */
+    public int getMaxCrashReportsPerBatch() {
+        return 1;
+    }
+
+    /**
+     * Return the max size in bytes of a batch upload. A single crash
+     * report that exceeds this size is sent on its own. Only used if
+     * getMaxCrashReportsPerBatch returns a value greater than 1.
+     *
+     * @return the max size of all crash reports in one upload request
+     */
+    public long getMaxCrashBatchSize() {
+        return 512 * 1024;
+    }
+
+    /**
+     * Return the number of crash uploads that may run in parallel. Uploads
+     * run on background threads with low priority.
+     *
+     * @return the max number of parallel crash uploads
+     */
+    public int getMaxCrashUploadThreads() {
+        return 2;
+    }
+
+    /**
+     * Return the max number of crash uploads that wait for a free upload
+     * thread. Reports that don't fit into the queue stay on disk and are
+     * sent later. Only read when the first upload is scheduled.
+     *
+     * @return the capacity of the upload queue
+     */
+    public int getCrashUploadQueueCapacity() {
+        return 16;
+    }
+
+    /**
+     * Return a size greater than 0 to reserve a buffer of this many bytes
+     * when the crash manager is initialized. Crash reports are then
+     * formatted into this buffer and written to a file that is opened in
+     * advance, so a report can be saved even if the heap is exhausted.
+     * Stack traces that don't fit into the buffer are cut off. The header
+     * lines are resolved once at initialization, using includeDeviceData,
+     * includeDeviceIdentifier and includeThreadDetails.
+     *
+     * @return the size of the crash buffer in bytes or 0 to disable it
+     */
+    public int getPreallocatedCrashBufferSize() {
+        return 0;
+    }
+
+    /**
+     * Return a size greater than 0 to reserve this many bytes of heap when
+     * the crash manager is initialized. The reserve is released as soon as
+     * an OutOfMemoryError reaches the exception handler, which gives it
+     * room to save the report. Out of memory reports also contain Java and
+     * native heap statistics.
+     * <p>
+     * Cost: the reserve is a single byte array, so it retains its size plus
+     * a 16 byte array header for the life of the process and counts against
+     * the heap limit of the app. It is allocated once during registration,
+     * which took 30 to 90 microseconds for 256 KB to 1 MB on a desktop JVM.
+     * This wasn't measured on devices.
+     *
+     * @return the size of the memory reserve in bytes or 0 to disable it
+     */
+    public int getOutOfMemoryReserveSize() {
+        return 0;
+    }
+
+    /**
+     * Return the max number of crash reports to keep on the device. When
+     * the crash manager is executed and there are more reports, reports
+     * are deleted in the order of getCrashReportPriority until the limit is
+     * met. Infinite if this value is set to -1, which is the default.
+     *
+     * @return the max number of stored crash reports
+     */
+    public int getMaxStoredCrashReports() {
+        return -1;
+    }
+
+    /**
+     * Return the max size in bytes of all crash reports on the device. When
+     * the crash manager is executed and the reports are larger, reports are
+     * deleted in the order of getCrashReportPriority until the limit is met.
+     * Infinite if this value is set to -1, which is the default.
+     *
+     * @return the max size of all stored crash reports
+     */
+    public long getMaxStoredCrashBytes() {
+        return -1;
+    }
+
+    /**
+     * Return the priority of a stored crash report. When a storage limit
+     * is hit, reports with the lowest priority are deleted first and
+     * reports with the same priority oldest first. Only the meta data of
+     * the report is available, its content is not read.
+     *
+     * @param entry a snapshot of the meta data of the crash report
+     * @return the priority of the report, 0 by default
+     */
+    public int getCrashReportPriority(CrashReportIndex.Entry entry) {
+        return 0;
+    }
+
+    /**
+     * Called when a crash report was deleted without being sent because a
+     * storage limit was hit.
+     *
+     * @param entry a snapshot of the meta data of the deleted crash report
+     */
+    public void onCrashReportEvicted(CrashReportIndex.Entry entry) {
+    }
+
+    /**
+     * Return true to keep a copy of the breadcrumbs in a memory mapped
+     * file, which survives the death of the process. If the previous
+     * session ended in the foreground without a crash report, a report of
+     * an UncleanSessionEnd with its breadcrumbs is created on the next
+     * start. The cause can't be told apart: besides native crashes and
+     * ANRs, the system killing the process or the user force stopping the
+     * app in the foreground are reported, too. Disabled by default.
+     * Detection requires API level 14 and should be used by the main
+     * process only.
+     *
+     * @return if true, breadcrumbs are written to a journal file
+     */
+    public boolean useBreadcrumbJournal() {
+        return false;
+    }
+
+    /**
+     * Return the interval in milliseconds at which the main thread watchdog
+     * checks whether the main thread is responsive. Only used if the
+     * watchdog is started with CrashManager.startMainThreadWatchdog.
+     *
+     * @return the check interval of the watchdog
+     */
+    public long getMainThreadWatchdogInterval() {
+        return 1000;
+    }
+
+    /**
+     * Return the time in milliseconds the main thread may be blocked before
+     * the watchdog saves a report. The system shows an ANR dialog after 5
+     * seconds of input not being handled.
+     *
+     * @return the min duration of a reported stall
+     */
+    public long getMainThreadStallThreshold() {
+        return 5000;
+    }
+
+    /**
+     * Return true to add the stacks of all other threads to reports of main
+     * thread stalls, e.g. to find the thread holding a lock. The dump is
+     * limited by getThreadDumpTimeBudget and getMaxThreadDumpLength.
+     *
+     * @return if true, stall reports contain all threads
+     */
+    public boolean includeAllThreadsInStallReports() {
+        return false;
+    }
+
+    /**
+     * Return true to add the stacks of all other threads to crash reports,
+     * e.g. if a crash is caused by a deadlock. Threads with identical
+     * stacks are grouped. Capturing the stacks delays the death of the
+     * process by at most getThreadDumpTimeBudget; dumps that are longer
+     * than getMaxThreadDumpLength are cut off. The dump is stored and
+     * uploaded separately from the stack trace.
+     *
+     * @return if true, crash reports contain all threads
+     */
+    public boolean includeAllThreadsInCrashReports() {
+        return false;
+    }
+
+    /**
+     * Return the max time in milliseconds to capture the stacks of all
+     * threads for crash and stall reports. If the stacks can't be captured
+     * in time, the report is saved without them.
+     *
+     * @return the time budget of a thread dump, 250 ms by default
+     */
+    public long getThreadDumpTimeBudget() {
+        return ThreadDump.DEFAULT_TIME_BUDGET;
+    }
+
+    /**
+     * Return the max length of a thread dump in characters. Longer dumps
+     * are cut off.
+     *
+     * @return the max length of a thread dump, 64 KB by default
+     */
+    public int getMaxThreadDumpLength() {
+        return ThreadDump.DEFAULT_MAX_LENGTH;
+    }
+
+    /**
+     * Return the share of handled exceptions that are reported with
+     * CrashManager.trackException, between 0 and 1. Read when the first
+     * handled exception is tracked.
+     *
+     * @return the sample rate of handled exceptions
+     */
+    public float getHandledExceptionSampleRate() {
+        return 1.0f;
+    }
+
+    /**
+     * Return the max number of reports of the same handled exception that
+     * are saved in a row. Afterwards, one more report is allowed per
+     * getHandledExceptionRefillInterval.
+     *
+     * @return the burst size of the rate limit per fingerprint
+     */
+    public int getMaxHandledExceptionBurst() {
+        return 5;
+    }
+
+    /**
+     * Return the time in milliseconds after which one more report of the
+     * same handled exception is allowed.
+     *
+     * @return the refill interval of the rate limit per fingerprint
+     */
+    public long getHandledExceptionRefillInterval() {
+        return 60 * 1000;
+    }
+
+    /**
+     * Return the time in milliseconds after a launch in which a crash
+     * counts towards a crash loop. Only uncaught exceptions count.
+     *
+     * @return the launch window of crash loop detection
+     */
+    public long getCrashLoopLaunchWindow() {
+        return 10 * 1000;
+    }
+
+    /**
+     * Return the number of launches in a row that have to crash within
+     * the launch window to detect a crash loop, see
+     * CrashManager.isCrashLoopDetected. Return 0 to disable detection.
+     *
+     * @return the min number of early crashes of a crash loop
+     */
+    public int getCrashLoopThreshold() {
+        return 2;
+    }
+
+    /**
+     * Return the max time in milliseconds that registerAsync waits for the
+     * upload of the newest crash report in a crash loop. The upload is
+     * only made if crashes are sent without asking the user. Registration
+     * on the main thread doesn't wait: the upload is only scheduled before
+     * the other reports, and a crash that happens before it is done
+     * cancels it. Use registerAsync if the upload has to happen in a
+     * crash loop.
+     *
+     * @return the timeout of the crash loop upload
+     */
+    public long getCrashLoopUploadTimeout() {
+        return 3000;
+    }
+
+    /**
+     * Return true to compress the body of crash uploads with gzip. Reports
+     * with attached logs often shrink to a fraction of their size. The
+     * server has to accept requests with "Content-Encoding: gzip".
+     *
+     * @return if true, crash uploads are compressed
+     */
+    public boolean compressCrashReports() {
+        return false;
+    }
+
+    /**
+     * Called after the body of a crash upload request has been sent.
+     *
+     * @param rawBytes  the size of the request body before compression
+     * @param sentBytes the size of the request body that was sent
+     */
+    public void onCrashDataSent(long rawBytes, long sentBytes) {
+    }
+
+    /**
+     * Called when CrashManager.register or registerAsync has finished, with
+     * the time each phase took. Called on the background thread for
+     * asynchronous registrations.
+     *
+     * @param timings the durations of the registration phases
+     */
+    public void onRegistrationFinished(RegistrationTimings timings) {
+    }
+
     /**
      * Called when dialog should be displayed to inform the user about crash.
      *
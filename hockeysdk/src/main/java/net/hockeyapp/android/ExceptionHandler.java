@@ -1,16 +1,20 @@
 package net.hockeyapp.android;
 
+import android.os.Debug;
 import android.text.TextUtils;
 import android.util.Log;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import net.hockeyapp.android.utils.CrashReportFile;
+import net.hockeyapp.android.utils.CrashReportIndex;
+import net.hockeyapp.android.utils.StackTraceSerializer;
+import net.hockeyapp.android.utils.ThreadDump;
+
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.StringWriter;
-import java.io.Writer;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.util.Date;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -57,9 +61,16 @@ import java.util.UUID;
  * @author Benjamin Reimold
  **/
 public class ExceptionHandler implements UncaughtExceptionHandler {
+    /**
+     * Max time in milliseconds to wait for an asynchronous registration
+     * before an uncaught exception is passed on unsaved.
+     */
+    private static final long INITIALIZATION_TIMEOUT = 2000;
+
     private boolean mIgnoreDefaultHandler = false;
     private CrashManagerListener mCrashManagerListener;
     private UncaughtExceptionHandler mDefaultExceptionHandler;
+    private PreallocatedCrashWriter mPreallocatedCrashWriter;
 
     public ExceptionHandler(UncaughtExceptionHandler defaultExceptionHandler, CrashManagerListener listener, boolean ignoreDefaultHandler) {
         mDefaultExceptionHandler = defaultExceptionHandler;
@@ -71,6 +82,16 @@ public class ExceptionHandler implements UncaughtExceptionHandler {
         mCrashManagerListener = listener;
     }
 
+    /**
+     * Sets the writer to use for uncaught exceptions. If the writer fails,
+     * the exception is saved with saveException.
+     *
+     * @param writer the prepared writer or null
+     */
+    void setPreallocatedCrashWriter(PreallocatedCrashWriter writer) {
+        mPreallocatedCrashWriter = writer;
+    }
+
     /**
      * Save a caught exception to disk.
      * @deprecated in 3.7.0-beta.2. Use saveException(Throwable exception, Thread thread,
@@ -92,50 +113,103 @@ public class ExceptionHandler implements UncaughtExceptionHandler {
      * @param listener  Custom CrashManager listener instance.
      */
     public static void saveException(Throwable exception, Thread thread, CrashManagerListener listener) {
+        saveException(exception, thread, listener, null, null, false);
+    }
+
+    /**
+     * Save a caught exception to disk.
+     * @param exception  Exception to save.
+     * @param thread     Thread that crashed.
+     * @param listener   Custom CrashManager listener instance.
+     * @param threadDump Stacks of other threads, saved in their own section.
+     * @param properties Properties of a handled exception, may be null.
+     * @return the filename of the report or null if it couldn't be saved
+     */
+    static String saveException(Throwable exception, Thread thread, CrashManagerListener listener, String threadDump, Map<String, String> properties) {
+        return saveException(exception, thread, listener, threadDump, properties, false);
+    }
+
+    /**
+     * Save a caught exception to disk.
+     * @param exception  Exception to save.
+     * @param thread     Thread that crashed.
+     * @param listener   Custom CrashManager listener instance.
+     * @param threadDump Stacks of other threads, saved in their own section.
+     * @param properties Properties of a handled exception, may be null.
+     * @param fatal      Whether the exception kills the process, see
+     *                   CrashReportIndex.Entry.isFatal().
+     * @return the filename of the report or null if it couldn't be saved
+     */
+    static String saveException(Throwable exception, Thread thread, CrashManagerListener listener, String threadDump, Map<String, String> properties, boolean fatal) {
         final Date now = new Date();
-        final Writer result = new StringWriter();
-        final PrintWriter printWriter = new PrintWriter(result);
-        BufferedWriter writer = null;
-        exception.printStackTrace(printWriter);
+        final String stacktrace = new StackTraceSerializer().serialize(exception);
+        CrashReportFile.Writer writer = null;
 
         try {
             // Create filename from a random uuid
-            String filename = UUID.randomUUID().toString();
-            String path = Constants.FILES_PATH + "/" + filename + ".stacktrace";
+            String filename = UUID.randomUUID().toString() + ".stacktrace";
+            String path = Constants.FILES_PATH + "/" + filename;
             Log.d(Constants.TAG, "Writing unhandled exception to: " + path);
 
-            // Write the stacktrace to disk
-            writer = new BufferedWriter(new FileWriter(path));
-
             // HockeyApp expects the package name in the first line!
-            writer.write("Package: " + Constants.APP_PACKAGE + "\n");
-            writer.write("Version Code: " + Constants.APP_VERSION + "\n");
-            writer.write("Version Name: " + Constants.APP_VERSION_NAME + "\n");
+            StringBuilder header = new StringBuilder();
+            header.append("Package: ").append(Constants.APP_PACKAGE).append("\n");
+            header.append("Version Code: ").append(Constants.APP_VERSION).append("\n");
+            header.append("Version Name: ").append(Constants.APP_VERSION_NAME).append("\n");
 
             if ((listener == null) || (listener.includeDeviceData())) {
-                writer.write("Android: " + Constants.ANDROID_VERSION + "\n");
-                writer.write("Manufacturer: " + Constants.PHONE_MANUFACTURER + "\n");
-                writer.write("Model: " + Constants.PHONE_MODEL + "\n");
+                header.append("Android: ").append(Constants.ANDROID_VERSION).append("\n");
+                header.append("Manufacturer: ").append(Constants.PHONE_MANUFACTURER).append("\n");
+                header.append("Model: ").append(Constants.PHONE_MODEL).append("\n");
             }
 
             if (thread != null && ((listener == null) || (listener.includeThreadDetails()))) {
-                writer.write("Thread: " + thread.getName() + "-" + thread.getId() + "\n");
+                header.append("Thread: ").append(thread.getName()).append("-").append(thread.getId()).append("\n");
             }
 
             if (Constants.CRASH_IDENTIFIER != null && (listener == null || listener.includeDeviceIdentifier())) {
-                writer.write("CrashReporter Key: " + Constants.CRASH_IDENTIFIER + "\n");
+                header.append("CrashReporter Key: ").append(Constants.CRASH_IDENTIFIER).append("\n");
             }
 
-            writer.write("Date: " + now + "\n");
-            writer.write("\n");
-            writer.write(result.toString());
-            writer.flush();
+            header.append("Date: ").append(now).append("\n");
+
+            // Write the report with all meta data to a single file
+            File tempFile = CrashReportIndex.getTempFile(filename);
+            writer = new CrashReportFile.Writer(new FileOutputStream(tempFile));
+            writer.writeSection(CrashReportFile.SECTION_HEADER, header.toString());
+            writer.writeSection(CrashReportFile.SECTION_STACKTRACE, stacktrace);
+            writer.writeSection(CrashReportFile.SECTION_THREADS, threadDump);
+
+            StringBuilder breadcrumbs = new StringBuilder();
+            if (Breadcrumbs.dump(breadcrumbs, now.getTime()) > 0) {
+                writer.writeSection(CrashReportFile.SECTION_BREADCRUMBS, breadcrumbs.toString());
+            }
+
+            if (isOutOfMemory(exception)) {
+                writer.writeSection(CrashReportFile.SECTION_MEMORY, getMemoryInfo());
+            }
+
+            if (properties != null && !properties.isEmpty()) {
+                StringBuilder lines = new StringBuilder();
+                for (Map.Entry<String, String> property : properties.entrySet()) {
+                    lines.append(property.getKey()).append(": ").append(limitedString(property.getValue())).append("\n");
+                }
+                writer.writeSection(CrashReportFile.SECTION_PROPERTIES, lines.toString());
+            }
 
             if (listener != null) {
-                writeValueToFile(limitedString(listener.getUserID()), filename + ".user");
-                writeValueToFile(limitedString(listener.getContact()), filename + ".contact");
-                writeValueToFile(listener.getDescription(), filename + ".description");
+                writer.writeSection(CrashReportFile.SECTION_USER_ID, limitedString(listener.getUserID()));
+                writer.writeSection(CrashReportFile.SECTION_CONTACT, limitedString(listener.getContact()));
+                writer.writeSection(CrashReportFile.SECTION_DESCRIPTION, emptyToNull(listener.getDescription()));
+            }
+
+            writer.close();
+            writer = null;
+
+            if (!CrashReportIndex.getInstance().add(filename, tempFile, now.getTime(), fatal)) {
+                return null;
             }
+            return filename;
         } catch (IOException another) {
             Log.e(Constants.TAG, "Error saving exception stacktrace!\n", another);
         } finally {
@@ -148,15 +222,37 @@ public class ExceptionHandler implements UncaughtExceptionHandler {
                 e.printStackTrace();
             }
         }
+        return null;
     }
 
     public void uncaughtException(Thread thread, Throwable exception) {
-        if (Constants.FILES_PATH == null) {
+        if (isOutOfMemory(exception)) {
+            // Make room for saving the report first
+            CrashManager.releaseMemoryReserve();
+        }
+
+        if (!CrashManager.awaitInitialization(INITIALIZATION_TIMEOUT)) {
+            Log.w(Constants.TAG, "Crash manager still initializing, exception not saved.");
+        }
+
+        if (Constants.FILES_PATH == null || Constants.APP_PACKAGE == null) {
             // If the files path is null, the exception can't be stored
             // Always call the default handler instead
             mDefaultExceptionHandler.uncaughtException(thread, exception);
         } else {
-            saveException(exception, thread, mCrashManagerListener);
+            String threadDump = null;
+            if ((mCrashManagerListener != null) && mCrashManagerListener.includeAllThreadsInCrashReports()) {
+                threadDump = captureThreadDump(thread, mCrashManagerListener);
+            }
+
+            PreallocatedCrashWriter writer = mPreallocatedCrashWriter;
+            if (threadDump != null) {
+                // The heap had room for the dump, so the regular path can be used
+                saveException(exception, thread, mCrashManagerListener, threadDump, null, true);
+            } else if ((writer == null) || !writer.write(thread, exception, mCrashManagerListener)) {
+                saveException(exception, thread, mCrashManagerListener, null, null, true);
+            }
+            Breadcrumbs.setCrashed();
 
             if (!mIgnoreDefaultHandler) {
                 mDefaultExceptionHandler.uncaughtException(thread, exception);
@@ -167,31 +263,53 @@ public class ExceptionHandler implements UncaughtExceptionHandler {
         }
     }
 
-    private static void writeValueToFile(String value, String filename) throws IOException {
-        if (TextUtils.isEmpty(value)) {
-            return;
+    /**
+     * Returns whether the throwable or one of its causes is an
+     * OutOfMemoryError. Doesn't allocate.
+     */
+    static boolean isOutOfMemory(Throwable exception) {
+        int depth = 0;
+        for (Throwable cause = exception; cause != null && depth < 16; cause = cause.getCause(), depth++) {
+            if (cause instanceof OutOfMemoryError) {
+                return true;
+            }
         }
-        BufferedWriter writer = null;
+        return false;
+    }
+
+    /**
+     * Returns the Java and native heap statistics in bytes, one per line.
+     */
+    private static String getMemoryInfo() {
+        Runtime runtime = Runtime.getRuntime();
+        return "Java heap max: " + runtime.maxMemory() + "\n" +
+                "Java heap total: " + runtime.totalMemory() + "\n" +
+                "Java heap free: " + runtime.freeMemory() + "\n" +
+                "Native heap size: " + Debug.getNativeHeapSize() + "\n" +
+                "Native heap allocated: " + Debug.getNativeHeapAllocatedSize() + "\n" +
+                "Native heap free: " + Debug.getNativeHeapFreeSize() + "\n";
+    }
+
+    private static String captureThreadDump(Thread thread, CrashManagerListener listener) {
         try {
-            String path = Constants.FILES_PATH + "/" + filename;
-            if (value.trim().length() > 0) {
-                writer = new BufferedWriter(new FileWriter(path));
-                writer.write(value);
-                writer.flush();
-            }
-        } catch (IOException e) {
-            // TODO: Handle exception here
-        } finally {
-            if (writer != null) {
-                writer.close();
-            }
+            return ThreadDump.capture(listener.getThreadDumpTimeBudget(), listener.getMaxThreadDumpLength(), thread);
+        } catch (Throwable t) {
+            // E.g. out of memory, the report is saved without the other threads
+            return null;
         }
     }
 
-    private static String limitedString(String string) {
+    static String limitedString(String string) {
         if ((string != null) && (string.length() > 255)) {
             string = string.substring(0, 255);
         }
+        return emptyToNull(string);
+    }
+
+    static String emptyToNull(String string) {
+        if (TextUtils.isEmpty(string) || string.trim().length() == 0) {
+            return null;
+        }
         return string;
     }
 }
@@ -0,0 +1,125 @@
+package net.hockeyapp.android;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import net.hockeyapp.android.utils.CrashFingerprint;
+import net.hockeyapp.android.utils.RateLimiter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Saves reports of handled exceptions on a background thread. Exceptions
+ * are sampled first, then limited per fingerprint with a token bucket, so
+ * an exception that is caught and reported in a loop can't flood the
+ * disk. Reports that don't fit into the queue are dropped.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+class HandledExceptionReporter {
+
+    private static final int QUEUE_CAPACITY = 32;
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadPoolExecutor mExecutor;
+    private final RateLimiter mRateLimiter;
+    private final float mSampleRate;
+    private final Random mRandom = new Random();
+
+    HandledExceptionReporter(CrashManagerListener listener) {
+        int burst = (listener != null) ? listener.getMaxHandledExceptionBurst() : 5;
+        long refillInterval = (listener != null) ? listener.getHandledExceptionRefillInterval() : 60 * 1000;
+        mRateLimiter = new RateLimiter(burst, refillInterval);
+        mSampleRate = (listener != null) ? listener.getHandledExceptionSampleRate() : 1.0f;
+
+        mExecutor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "HockeyApp-TrackException");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Enqueues a report of the given exception, unless it is sampled out or
+     * rate limited.
+     *
+     * @param exception  the handled exception
+     * @param properties custom properties of the report, may be null
+     * @param listener   the listener for the meta data of the report
+     * @return true if the report was enqueued
+     */
+    boolean report(final Throwable exception, Map<String, String> properties, final CrashManagerListener listener) {
+        if (mSampleRate < 1.0f && mRandom.nextFloat() >= mSampleRate) {
+            return false;
+        }
+
+        String fingerprint = CrashFingerprint.compute(Constants.APP_PACKAGE, Constants.APP_VERSION, exception);
+        if (!mRateLimiter.tryAcquire(fingerprint, SystemClock.elapsedRealtime())) {
+            Log.d(Constants.TAG, "Handled exception " + exception.getClass().getName() + " dropped by rate limit.");
+            return false;
+        }
+
+        final Thread thread = Thread.currentThread();
+        final Map<String, String> propertiesCopy = (properties != null) ? new LinkedHashMap<String, String>(properties) : null;
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    String filename = ExceptionHandler.saveException(exception, thread, listener, null, propertiesCopy);
+                    if (filename != null) {
+                        CrashManager.onHandledExceptionSaved(filename);
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            Log.w(Constants.TAG, "Handled exception queue is full, report dropped.");
+            return false;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package net.hockeyapp.android;
+
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import net.hockeyapp.android.utils.ThreadDump;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Watchdog thread that detects stalls of the main thread. It posts a tick
+ * to the main looper at a fixed interval; if a tick isn't handled within
+ * the threshold, the stack of the main thread is saved as crash report.
+ * Each stall is reported once. Stalls while a debugger is attached are
+ * ignored, as they are usually breakpoints. While the main thread is
+ * responsive, the watchdog only wakes up once per interval.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+class MainThreadWatchdog extends Thread {
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final CrashManagerListener mListener;
+    private final long mInterval;
+    private final long mThreshold;
+    private final boolean mIncludeAllThreads;
+
+    private volatile boolean mStopped = false;
+    private volatile boolean mTickPending = false;
+    private volatile long mTickPostTime = 0;
+
+    private final Runnable mTick = new Runnable() {
+        @Override
+        public void run() {
+            mTickPending = false;
+        }
+    };
+
+    MainThreadWatchdog(CrashManagerListener listener, long interval, long threshold, boolean includeAllThreads) {
+        super("HockeyApp-Watchdog");
+        setDaemon(true);
+        mListener = listener;
+        mInterval = interval;
+        mThreshold = threshold;
+        mIncludeAllThreads = includeAllThreads;
+    }
+
+    /**
+     * Stops the watchdog. A stall that is being saved is saved completely.
+     */
+    void shutdown() {
+        mStopped = true;
+        interrupt();
+    }
+
+    @Override
+    public void run() {
+        boolean reported = false;
+        while (!mStopped) {
+            if (!mTickPending) {
+                reported = false;
+                mTickPending = true;
+                mTickPostTime = SystemClock.uptimeMillis();
+                mHandler.post(mTick);
+            } else {
+                long stall = SystemClock.uptimeMillis() - mTickPostTime;
+                if (stall >= mThreshold && !reported) {
+                    reported = true;
+                    if (Debug.isDebuggerConnected() || Debug.waitingForDebugger()) {
+                        Log.d(Constants.TAG, "Main thread blocked for " + stall + " ms, ignored as a debugger is attached.");
+                    } else {
+                        saveStall(stall);
+                    }
+                }
+            }
+
+            try {
+                Thread.sleep(mInterval);
+            } catch (InterruptedException e) {
+                // Stopped
+            }
+        }
+        mHandler.removeCallbacks(mTick);
+    }
+
+    private void saveStall(long stall) {
+        Thread mainThread = Looper.getMainLooper().getThread();
+        Log.w(Constants.TAG, "Main thread blocked for " + stall + " ms, saving report.");
+
+        StallException exception = new StallException("Main thread blocked for " + stall + " ms");
+        exception.setStackTrace(mainThread.getStackTrace());
+
+        String threadDump = null;
+        if (mIncludeAllThreads) {
+            threadDump = ThreadDump.capture(mListener.getThreadDumpTimeBudget(), mListener.getMaxThreadDumpLength(), mainThread, this);
+        }
+
+        ExceptionHandler.saveException(exception, mainThread, mListener, threadDump, null);
+    }
+
+    /**
+     * Stands in for the exception in reports of main thread stalls. Its
+     * stack trace is the one of the main thread.
+     */
+    static class StallException extends RuntimeException {
+        private static final long serialVersionUID = 4218352750147046219L;
+
+        StallException(String message) {
+            super(message);
+        }
+    }
+}
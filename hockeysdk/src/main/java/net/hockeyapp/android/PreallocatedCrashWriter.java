@@ -0,0 +1,237 @@
+package net.hockeyapp.android;
+
+import android.os.Debug;
+import android.util.Log;
+
+import net.hockeyapp.android.utils.CrashReportBuffer;
+import net.hockeyapp.android.utils.CrashReportFile;
+import net.hockeyapp.android.utils.CrashReportIndex;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.UUID;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Crash write path that works when the heap is exhausted. All resources
+ * are set up when the crash manager is initialized: the buffer for the
+ * report, the header lines, the date formatting and the file, which is
+ * already open. At crash time the report is formatted into the buffer and
+ * written with a single call, then the file is moved to its final name.
+ *
+ * If formatting fails with an OutOfMemoryError, the part of the stack
+ * trace that made it into the buffer is kept, so the report contains at
+ * least the exception class and its top frames.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+class PreallocatedCrashWriter {
+
+    private static final String RESERVED_DIR = "hockeyapp-reserved";
+
+    private final CrashReportBuffer mBuffer;
+    private final byte[] mHeaderStart;
+    private final byte[] mHeaderEnd;
+    private final boolean mIncludeThreadDetails;
+    private final Calendar mCalendar;
+    private final String mStandardTimeZone;
+    private final String mDaylightTimeZone;
+    private final String mFilename;
+    private final File mReservedFile;
+    private final File mReportFile;
+    private final FileOutputStream mOutput;
+    private boolean mUsed = false;
+
+    private PreallocatedCrashWriter(int bufferSize, CrashManagerListener listener, File reservedFile) throws IOException {
+        StringBuilder headerStart = new StringBuilder();
+        headerStart.append("Package: ").append(Constants.APP_PACKAGE).append("\n");
+        headerStart.append("Version Code: ").append(Constants.APP_VERSION).append("\n");
+        headerStart.append("Version Name: ").append(Constants.APP_VERSION_NAME).append("\n");
+        if ((listener == null) || (listener.includeDeviceData())) {
+            headerStart.append("Android: ").append(Constants.ANDROID_VERSION).append("\n");
+            headerStart.append("Manufacturer: ").append(Constants.PHONE_MANUFACTURER).append("\n");
+            headerStart.append("Model: ").append(Constants.PHONE_MODEL).append("\n");
+        }
+
+        String headerEnd = "";
+        if (Constants.CRASH_IDENTIFIER != null && (listener == null || listener.includeDeviceIdentifier())) {
+            headerEnd = "CrashReporter Key: " + Constants.CRASH_IDENTIFIER + "\n";
+        }
+
+        TimeZone timeZone = TimeZone.getDefault();
+        mHeaderStart = headerStart.toString().getBytes("UTF-8");
+        mHeaderEnd = headerEnd.getBytes("UTF-8");
+        mIncludeThreadDetails = (listener == null) || listener.includeThreadDetails();
+        mCalendar = Calendar.getInstance(timeZone);
+        mStandardTimeZone = timeZone.getDisplayName(false, TimeZone.SHORT);
+        mDaylightTimeZone = timeZone.getDisplayName(true, TimeZone.SHORT);
+        mFilename = UUID.randomUUID().toString() + ".stacktrace";
+        mReportFile = new File(Constants.FILES_PATH, mFilename);
+        mReservedFile = reservedFile;
+        mOutput = new FileOutputStream(reservedFile);
+        mBuffer = new CrashReportBuffer(bufferSize);
+    }
+
+    /**
+     * Reserves the buffer and opens the file for the next crash report.
+     *
+     * @param bufferSize the size of the buffer in bytes
+     * @param listener   the listener to decide which header lines to write
+     * @return the writer or null if the file couldn't be opened
+     */
+    static PreallocatedCrashWriter create(int bufferSize, CrashManagerListener listener) {
+        if (Constants.FILES_PATH == null) {
+            return null;
+        }
+
+        File dir = new File(Constants.FILES_PATH, RESERVED_DIR);
+        if (!dir.mkdir() && !dir.isDirectory()) {
+            return null;
+        }
+        deleteStaleReservations(dir);
+
+        try {
+            return new PreallocatedCrashWriter(bufferSize, listener, new File(dir, android.os.Process.myPid() + ".tmp"));
+        } catch (IOException e) {
+            Log.e(Constants.TAG, "Failed to reserve crash report file.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the report for the given exception. Can only be used once.
+     *
+     * @param thread    the thread that crashed
+     * @param exception the exception to save
+     * @param listener  the listener to ask for meta data, may be null
+     * @return true if the report was written
+     */
+    synchronized boolean write(Thread thread, Throwable exception, CrashManagerListener listener) {
+        if (mUsed) {
+            return false;
+        }
+        mUsed = true;
+
+        long now = System.currentTimeMillis();
+        try {
+            mBuffer.reset();
+            mBuffer.beginSection(CrashReportFile.SECTION_HEADER);
+            mBuffer.append(mHeaderStart);
+            if (thread != null && mIncludeThreadDetails) {
+                mBuffer.append("Thread: ").append(thread.getName()).append('-').append(thread.getId()).append('\n');
+            }
+            mBuffer.append(mHeaderEnd);
+            mCalendar.setTimeInMillis(now);
+            String timeZone = (mCalendar.get(Calendar.DST_OFFSET) != 0) ? mDaylightTimeZone : mStandardTimeZone;
+            mBuffer.append("Date: ").appendDate(mCalendar, timeZone).append('\n');
+
+            mBuffer.beginSection(CrashReportFile.SECTION_STACKTRACE);
+            try {
+                mBuffer.appendStackTrace(exception);
+            } catch (OutOfMemoryError e) {
+                // Keep what made it into the buffer, i.e. the class name and top frames
+                mBuffer.append("\n\t... stack trace truncated, out of memory\n");
+            }
+
+            if (ExceptionHandler.isOutOfMemory(exception)) {
+                Runtime runtime = Runtime.getRuntime();
+                mBuffer.beginSection(CrashReportFile.SECTION_MEMORY);
+                mBuffer.append("Java heap max: ").append(runtime.maxMemory()).append('\n');
+                mBuffer.append("Java heap total: ").append(runtime.totalMemory()).append('\n');
+                mBuffer.append("Java heap free: ").append(runtime.freeMemory()).append('\n');
+                mBuffer.append("Native heap size: ").append(Debug.getNativeHeapSize()).append('\n');
+                mBuffer.append("Native heap allocated: ").append(Debug.getNativeHeapAllocatedSize()).append('\n');
+                mBuffer.append("Native heap free: ").append(Debug.getNativeHeapFreeSize()).append('\n');
+            }
+
+            mBuffer.beginSection(CrashReportFile.SECTION_BREADCRUMBS);
+            Breadcrumbs.dump(mBuffer, now);
+
+            mBuffer.writeTo(mOutput);
+            mOutput.flush();
+        } catch (Throwable t) {
+            closeQuietly();
+            return false;
+        }
+
+        // The report is safe now, meta data from the listener is optional
+        if (listener != null) {
+            try {
+                CrashReportFile.writeSection(mOutput, CrashReportFile.SECTION_USER_ID, ExceptionHandler.limitedString(listener.getUserID()));
+                CrashReportFile.writeSection(mOutput, CrashReportFile.SECTION_CONTACT, ExceptionHandler.limitedString(listener.getContact()));
+                CrashReportFile.writeSection(mOutput, CrashReportFile.SECTION_DESCRIPTION, ExceptionHandler.emptyToNull(listener.getDescription()));
+            } catch (Throwable t) {
+                Log.w(Constants.TAG, "Failed to write crash meta data.");
+            }
+        }
+
+        closeQuietly();
+        if (!CrashReportIndex.getInstance().add(mFilename, mReservedFile, now, true)) {
+            return false;
+        }
+
+        Log.d(Constants.TAG, "Wrote unhandled exception to: " + mReportFile);
+        return true;
+    }
+
+    private void closeQuietly() {
+        try {
+            mOutput.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Deletes the reserved files of processes that are gone.
+     */
+    private static void deleteStaleReservations(File dir) {
+        final String ownName = android.os.Process.myPid() + ".tmp";
+        File[] files = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String filename) {
+                return filename.endsWith(".tmp") && !filename.equals(ownName);
+            }
+        });
+
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            String pid = file.getName().substring(0, file.getName().length() - ".tmp".length());
+            if (!new File("/proc/" + pid).exists()) {
+                file.delete();
+            }
+        }
+    }
+}
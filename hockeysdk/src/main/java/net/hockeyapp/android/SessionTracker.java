@@ -0,0 +1,109 @@
+package net.hockeyapp.android;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Tracks whether the app is in the foreground, i.e. has a started
+ * activity, and records it in the breadcrumb journal. A process that dies
+ * in the background was most likely killed to free memory, which is not
+ * worth a report; a process that dies in the foreground was not.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+@TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+class SessionTracker implements Application.ActivityLifecycleCallbacks {
+
+    private static SessionTracker instance = null;
+
+    private final Set<Integer> mStartedActivities = new HashSet<Integer>();
+
+    /**
+     * Registers the tracker once per process. The given context counts as
+     * started activity if it is one, as register() is usually called after
+     * its onStart().
+     *
+     * @param context the context to use
+     */
+    static synchronized void register(Context context) {
+        if (instance != null) {
+            return;
+        }
+
+        instance = new SessionTracker();
+        if (context instanceof Activity) {
+            instance.onActivityStarted((Activity) context);
+        } else {
+            Breadcrumbs.setForeground(false);
+        }
+        ((Application) context.getApplicationContext()).registerActivityLifecycleCallbacks(instance);
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+        mStartedActivities.add(System.identityHashCode(activity));
+        Breadcrumbs.setForeground(true);
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+        mStartedActivities.remove(System.identityHashCode(activity));
+        if (mStartedActivities.isEmpty()) {
+            Breadcrumbs.setForeground(false);
+        }
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+    }
+}
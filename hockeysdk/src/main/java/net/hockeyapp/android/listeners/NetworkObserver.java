@@ -0,0 +1,49 @@
+package net.hockeyapp.android.listeners;
+
+import net.hockeyapp.android.objects.NetworkEvent;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Receives an event for every HTTP request of the SDK, e.g. to measure how
+ * much network time the SDK spends on the device. Register it with
+ * HttpTransports.setObserver; NetworkStatsAggregator is a built-in
+ * implementation with percentile summaries.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public interface NetworkObserver {
+
+    /**
+     * Called on the thread of the request after it finished or failed.
+     * Implementations must be thread-safe and return quickly.
+     *
+     * @param event the finished request
+     */
+    void onRequestFinished(NetworkEvent event);
+}
@@ -0,0 +1,144 @@
+package net.hockeyapp.android.objects;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Summary of a stored crash report, parsed from its header lines and the
+ * first line of its stack trace only.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class CrashReportSummary {
+    private final String mFilename;
+    private final long mTimestamp;
+    private final long mSize;
+    private String mExceptionClass;
+    private String mThread;
+    private String mVersionCode;
+    private String mVersionName;
+
+    private CrashReportSummary(String filename, long timestamp, long size) {
+        mFilename = filename;
+        mTimestamp = timestamp;
+        mSize = size;
+    }
+
+    /**
+     * Parses the summary from the head of a report, i.e. the header lines,
+     * an empty line and the start of the stack trace.
+     *
+     * @param filename  the filename of the report
+     * @param timestamp the time of the crash in milliseconds since the epoch
+     * @param size      the size of the report file in bytes
+     * @param head      the head of the report
+     * @return the summary
+     */
+    public static CrashReportSummary parse(String filename, long timestamp, long size, String head) {
+        CrashReportSummary summary = new CrashReportSummary(filename, timestamp, size);
+        boolean inHeader = true;
+        for (String line : head.split("\n")) {
+            if (inHeader) {
+                if (line.length() == 0) {
+                    inHeader = false;
+                } else if (line.startsWith("Version Code: ")) {
+                    summary.mVersionCode = line.substring("Version Code: ".length());
+                } else if (line.startsWith("Version Name: ")) {
+                    summary.mVersionName = line.substring("Version Name: ".length());
+                } else if (line.startsWith("Thread: ")) {
+                    summary.mThread = line.substring("Thread: ".length());
+                }
+            } else if (line.length() > 0) {
+                int colon = line.indexOf(':');
+                summary.mExceptionClass = (colon > 0 ? line.substring(0, colon) : line).trim();
+                break;
+            }
+        }
+        return summary;
+    }
+
+    public String getFilename() {
+        return mFilename;
+    }
+
+    /**
+     * Returns the time of the crash.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * Returns the size of the report file.
+     *
+     * @return the size in bytes
+     */
+    public long getSize() {
+        return mSize;
+    }
+
+    /**
+     * Returns the class name of the exception.
+     *
+     * @return the class name or null if the stack trace is missing
+     */
+    public String getExceptionClass() {
+        return mExceptionClass;
+    }
+
+    /**
+     * Returns the name and id of the crashed thread, e.g. "main-1".
+     *
+     * @return the thread or null if thread details weren't included
+     */
+    public String getThread() {
+        return mThread;
+    }
+
+    public String getVersionCode() {
+        return mVersionCode;
+    }
+
+    public String getVersionName() {
+        return mVersionName;
+    }
+
+    @Override
+    public String toString() {
+        return "\n" + CrashReportSummary.class.getSimpleName()
+                + "\n" + "filename       " + mFilename
+                + "\n" + "timestamp      " + mTimestamp
+                + "\n" + "size           " + mSize
+                + "\n" + "exceptionClass " + mExceptionClass
+                + "\n" + "thread         " + mThread
+                + "\n" + "versionCode    " + mVersionCode
+                + "\n" + "versionName    " + mVersionName
+                ;
+    }
+}
@@ -0,0 +1,72 @@
+package net.hockeyapp.android.objects;
+
+/**
+ * <h3>Description</h3>
+ *
+ * The HockeyApp endpoints the SDK talks to, used as key for network
+ * metrics and events.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public enum Endpoint {
+
+    /**
+     * Upload of crash reports.
+     */
+    CRASH,
+
+    /**
+     * Check for a new app version.
+     */
+    UPDATE_CHECK,
+
+    /**
+     * Download of an app update, including the request for its size.
+     */
+    APK_DOWNLOAD,
+
+    /**
+     * Sending a new feedback message.
+     */
+    FEEDBACK_SEND,
+
+    /**
+     * Fetching the messages of a feedback thread.
+     */
+    FEEDBACK_FETCH,
+
+    /**
+     * Download of a feedback attachment.
+     */
+    ATTACHMENT,
+
+    /**
+     * Authentication and identification of the user.
+     */
+    LOGIN
+}
@@ -0,0 +1,159 @@
+package net.hockeyapp.android.objects;
+
+/**
+ * <h3>Description</h3>
+ *
+ * A finished HTTP request of the SDK. All times are in milliseconds since
+ * the request was started and -1 if unknown, e.g. the connect time of a
+ * request that reused a connection or failed before connecting.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class NetworkEvent {
+
+    private final Endpoint mEndpoint;
+    private final String mHost;
+    private final int mAttempt;
+    private final int mStatusCode;
+    private final long mDnsTime;
+    private final long mConnectTime;
+    private final long mTimeToFirstByte;
+    private final long mTotalTime;
+    private final long mRequestBytes;
+    private final long mResponseBytes;
+
+    public NetworkEvent(Endpoint endpoint, String host, int attempt, int statusCode, long dnsTime, long connectTime,
+                        long timeToFirstByte, long totalTime, long requestBytes, long responseBytes) {
+        mEndpoint = endpoint;
+        mHost = host;
+        mAttempt = attempt;
+        mStatusCode = statusCode;
+        mDnsTime = dnsTime;
+        mConnectTime = connectTime;
+        mTimeToFirstByte = timeToFirstByte;
+        mTotalTime = totalTime;
+        mRequestBytes = requestBytes;
+        mResponseBytes = responseBytes;
+    }
+
+    public Endpoint getEndpoint() {
+        return mEndpoint;
+    }
+
+    public String getHost() {
+        return mHost;
+    }
+
+    /**
+     * Returns the retry attempt, 0 for the first try. Only crash uploads
+     * count their attempts; other requests always report 0.
+     *
+     * @return the number of earlier attempts of the same request
+     */
+    public int getAttempt() {
+        return mAttempt;
+    }
+
+    /**
+     * Returns the HTTP status code.
+     *
+     * @return the status code or -1 if no response was received
+     */
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+
+    /**
+     * Returns whether a response with a status code below 400 was received.
+     *
+     * @return true if the request was successful
+     */
+    public boolean isSuccessful() {
+        return mStatusCode > 0 && mStatusCode < 400;
+    }
+
+    /**
+     * Returns the time to resolve the host name. The SDK's requests can't
+     * measure it and report -1; their lookup is part of the connect time.
+     *
+     * @return the DNS time or -1 if unknown
+     */
+    public long getDnsTime() {
+        return mDnsTime;
+    }
+
+    /**
+     * Returns the time to establish the connection, including the TLS
+     * handshake and the DNS lookup if its time is unknown.
+     *
+     * @return the connect time or -1 if unknown
+     */
+    public long getConnectTime() {
+        return mConnectTime;
+    }
+
+    /**
+     * Returns the time until the response headers were received, i.e.
+     * including DNS, connect and the request body.
+     *
+     * @return the time to first byte or -1 if no response was received
+     */
+    public long getTimeToFirstByte() {
+        return mTimeToFirstByte;
+    }
+
+    public long getTotalTime() {
+        return mTotalTime;
+    }
+
+    /**
+     * Returns the size of the request body as sent, i.e. after compression.
+     *
+     * @return the request body size in bytes
+     */
+    public long getRequestBytes() {
+        return mRequestBytes;
+    }
+
+    /**
+     * Returns the size of the response body as received, i.e. before
+     * decompression.
+     *
+     * @return the response body size in bytes
+     */
+    public long getResponseBytes() {
+        return mResponseBytes;
+    }
+
+    @Override
+    public String toString() {
+        return mEndpoint + " " + mStatusCode + " in " + mTotalTime + " ms (attempt " + mAttempt + ", dns " + mDnsTime +
+                ", connect " + mConnectTime + ", ttfb " + mTimeToFirstByte + ", " + mRequestBytes + " bytes sent, " +
+                mResponseBytes + " bytes received)";
+    }
+}
@@ -0,0 +1,156 @@
+package net.hockeyapp.android.objects;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Durations of the phases of a crash manager registration, in the order
+ * they ran. Every phase is measured from the end of the previous one.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class RegistrationTimings {
+
+    /**
+     * Installing the exception handler.
+     */
+    public static final String PHASE_HANDLER = "handler";
+
+    /**
+     * Waiting for the background thread to start, only for asynchronous
+     * registrations.
+     */
+    public static final String PHASE_THREAD = "thread";
+
+    /**
+     * Loading package data, files path and crash identifier.
+     */
+    public static final String PHASE_CONSTANTS = "constants";
+
+    /**
+     * Loading the index of stored crash reports.
+     */
+    public static final String PHASE_INDEX = "index";
+
+    /**
+     * Opening the breadcrumb journal, if enabled.
+     */
+    public static final String PHASE_JOURNAL = "journal";
+
+    /**
+     * Deleting crash reports over the storage limits.
+     */
+    public static final String PHASE_EVICT = "evict";
+
+    /**
+     * Searching for crash reports and deciding whether to send them, ask
+     * the user or do nothing.
+     */
+    public static final String PHASE_EXECUTE = "execute";
+
+    private final Map<String, Long> mDurations = new LinkedHashMap<String, Long>();
+    private final long mStartTime;
+    private long mLastTime;
+    private boolean mAsync;
+
+    public RegistrationTimings() {
+        mStartTime = System.nanoTime();
+        mLastTime = mStartTime;
+    }
+
+    /**
+     * Ends a phase. Its duration is the time since the previous phase
+     * ended or, for the first phase, since this object was created.
+     *
+     * @param phase the name of the phase
+     */
+    public synchronized void mark(String phase) {
+        long now = System.nanoTime();
+        Long previous = mDurations.get(phase);
+        mDurations.put(phase, (now - mLastTime) / 1000 + (previous != null ? previous : 0));
+        mLastTime = now;
+    }
+
+    /**
+     * Returns the durations of all phases in microseconds, in the order
+     * they ran.
+     *
+     * @return the durations by phase
+     */
+    public synchronized Map<String, Long> getDurations() {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, Long>(mDurations));
+    }
+
+    /**
+     * Returns the duration of a phase in microseconds.
+     *
+     * @param phase the name of the phase
+     * @return the duration or 0 if the phase didn't run
+     */
+    public synchronized long getDuration(String phase) {
+        Long duration = mDurations.get(phase);
+        return (duration != null) ? duration : 0;
+    }
+
+    /**
+     * Returns the time from the start of the registration to the end of the
+     * last phase in microseconds.
+     *
+     * @return the total duration
+     */
+    public synchronized long getTotalDuration() {
+        return (mLastTime - mStartTime) / 1000;
+    }
+
+    /**
+     * Returns true if all phases but the handler ran on a background
+     * thread.
+     *
+     * @return if true, the registration was asynchronous
+     */
+    public synchronized boolean isAsync() {
+        return mAsync;
+    }
+
+    public synchronized void setAsync(boolean async) {
+        mAsync = async;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(mAsync ? "async" : "sync").append(" registration ").append(getTotalDuration()).append(" us");
+        for (Map.Entry<String, Long> entry : mDurations.entrySet()) {
+            builder.append(", ").append(entry.getKey()).append(" ").append(entry.getValue()).append(" us");
+        }
+        return builder.toString();
+    }
+}
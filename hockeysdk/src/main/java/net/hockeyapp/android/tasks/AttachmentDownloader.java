@@ -2,15 +2,17 @@ package net.hockeyapp.android.tasks;
 
 import android.graphics.Bitmap;
 import android.os.AsyncTask;
-import android.os.Build;
 import android.os.Handler;
 import android.os.Message;
 import android.util.Log;
 
 import net.hockeyapp.android.Constants;
+import net.hockeyapp.android.objects.Endpoint;
 import net.hockeyapp.android.objects.FeedbackAttachment;
 import net.hockeyapp.android.utils.AsyncTaskUtils;
+import net.hockeyapp.android.utils.HttpTransports;
 import net.hockeyapp.android.utils.ImageUtils;
+import net.hockeyapp.android.utils.RequestTrace;
 import net.hockeyapp.android.views.AttachmentView;
 
 import java.io.BufferedInputStream;
@@ -245,10 +247,15 @@ public class AttachmentDownloader {
         }
 
         private boolean downloadAttachment(String urlString, String filename) {
+            RequestTrace trace = RequestTrace.start(Endpoint.ATTACHMENT, urlString, 0);
             try {
                 URL url = new URL(urlString);
                 URLConnection connection = createConnection(url);
                 connection.connect();
+                trace.connected();
+                if (connection instanceof HttpURLConnection) {
+                    trace.responseReceived(((HttpURLConnection) connection).getResponseCode());
+                }
 
                 int lengthOfFile = connection.getContentLength();
                 String status = connection.getHeaderField("Status");
@@ -275,22 +282,20 @@ public class AttachmentDownloader {
                 output.flush();
                 output.close();
                 input.close();
+                trace.addResponseBytes(total);
                 return (total > 0);
 
             } catch (IOException e) {
                 e.printStackTrace();
                 return false;
+            } finally {
+                trace.finish();
             }
         }
 
         private URLConnection createConnection(URL url) throws IOException {
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.addRequestProperty("User-Agent", "HockeySDK/Android");
+            HttpURLConnection connection = HttpTransports.getDefault().openConnection(url);
             connection.setInstanceFollowRedirects(true);
-      /* connection bug workaround for SDK<=2.x */
-            if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.GINGERBREAD) {
-                connection.setRequestProperty("connection", "close");
-            }
             return connection;
         }
     }
@@ -8,6 +8,10 @@ import android.provider.Settings;
 import net.hockeyapp.android.Constants;
 import net.hockeyapp.android.Tracking;
 import net.hockeyapp.android.UpdateManagerListener;
+import net.hockeyapp.android.objects.Endpoint;
+import net.hockeyapp.android.utils.HttpTransports;
+import net.hockeyapp.android.utils.RequestTrace;
+import net.hockeyapp.android.utils.ResponseBodyReader;
 import net.hockeyapp.android.utils.VersionCache;
 import net.hockeyapp.android.utils.VersionHelper;
 
@@ -15,13 +19,10 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.lang.ref.WeakReference;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLEncoder;
@@ -122,6 +123,7 @@ public class CheckUpdateTask extends AsyncTask<Void, String, JSONArray> {
 
     @Override
     protected JSONArray doInBackground(Void... args) {
+        RequestTrace trace = null;
         try {
             int versionCode = getVersionCode();
 
@@ -131,33 +133,55 @@ public class CheckUpdateTask extends AsyncTask<Void, String, JSONArray> {
             }
 
             URL url = new URL(getURLString("json"));
+            trace = RequestTrace.start(Endpoint.UPDATE_CHECK, url.toString(), 0);
             URLConnection connection = createConnection(url);
-            connection.connect();
+            ResponseBodyReader.acceptCompression(connection);
 
-            InputStream inputStream = new BufferedInputStream(connection.getInputStream());
-            String jsonString = convertStreamToString(inputStream);
-            inputStream.close();
+            // Query parameters like the usage time change with every check
+            String cacheKey = url.getProtocol() + "://" + url.getAuthority() + url.getPath();
+            VersionCache.CachedResponse cached = VersionCache.getCachedResponse(context, cacheKey);
+            VersionCache.setValidators(connection, cached);
+            connection.connect();
+            trace.connected();
+
+            int responseCode = getResponseCode(connection);
+            trace.responseReceived(responseCode);
+            if (VersionCache.isNotModified(cached, responseCode)) {
+                VersionCache.recordHit(context, cached.getLength());
+                // Usually empty, but counts what was received like any other response
+                ResponseBodyReader.discard(connection, trace);
+                HttpTransports.getDefault().releaseConnection((HttpURLConnection) connection, responseCode);
+                json = cached.getJSON();
+            } else {
+                String jsonString = ResponseBodyReader.readString(connection, trace);
+                json = new JSONArray(jsonString);
+
+                VersionCache.recordMiss(context);
+                VersionCache.setCachedResponse(context, cacheKey, connection.getHeaderField("ETag"),
+                        connection.getHeaderField("Last-Modified"), jsonString);
+            }
 
-            json = new JSONArray(jsonString);
             if (findNewVersion(json, versionCode)) {
                 json = limitResponseSize(json);
                 return json;
             }
         } catch (IOException | JSONException e) {
             e.printStackTrace();
+        } finally {
+            if (trace != null) {
+                trace.finish();
+            }
         }
 
         return null;
     }
 
     protected URLConnection createConnection(URL url) throws IOException {
-        URLConnection connection = url.openConnection();
-        connection.addRequestProperty("User-Agent", "HockeySDK/Android");
-        // connection bug workaround for SDK<=2.x
-        if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.GINGERBREAD) {
-            connection.setRequestProperty("connection", "close");
-        }
-        return connection;
+        return HttpTransports.getDefault().openConnection(url);
+    }
+
+    private static int getResponseCode(URLConnection connection) throws IOException {
+        return (connection instanceof HttpURLConnection) ? ((HttpURLConnection) connection).getResponseCode() : -1;
     }
 
     private boolean findNewVersion(JSONArray json, int versionCode) {
@@ -252,36 +276,4 @@ public class CheckUpdateTask extends AsyncTask<Void, String, JSONArray> {
         return true;
     }
 
-    /*
-    MIT Mobile for Android is open source software, created, maintained, and shared under the MIT license by Information Services & Technology at the Massachusetts Institute of Technology. The project includes components from other open source projects which remain under their existing licenses, detailed in their respective source files. The open source license does not apply to media depicting people and places at MIT which are included in the source. Said media may not be duplicated without MIT's consent.
-
-    Copyright (c) 2010 Massachusetts Institute of Technology
-
-    Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
-
-    The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
-
-    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
-    */
-    private static String convertStreamToString(InputStream inputStream) {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream), 1024);
-        StringBuilder stringBuilder = new StringBuilder();
-
-        String line = null;
-        try {
-            while ((line = reader.readLine()) != null) {
-                stringBuilder.append(line + "\n");
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            try {
-                inputStream.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        return stringBuilder.toString();
-    }
-
 }
\ No newline at end of file
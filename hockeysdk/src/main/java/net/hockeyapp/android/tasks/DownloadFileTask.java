@@ -7,11 +7,13 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.AsyncTask;
-import android.os.Build;
 import android.os.Environment;
 
 import net.hockeyapp.android.R;
 import net.hockeyapp.android.listeners.DownloadFileListener;
+import net.hockeyapp.android.objects.Endpoint;
+import net.hockeyapp.android.utils.HttpTransports;
+import net.hockeyapp.android.utils.RequestTrace;
 
 import java.io.BufferedInputStream;
 import java.io.File;
@@ -93,11 +95,14 @@ public class DownloadFileTask extends AsyncTask<Void, Integer, Long> {
     protected Long doInBackground(Void... args) {
         InputStream input = null;
         OutputStream output = null;
+        RequestTrace trace = RequestTrace.start(Endpoint.APK_DOWNLOAD, getURLString(), 0);
 
         try {
             URL url = new URL(getURLString());
             URLConnection connection = createConnection(url, MAX_REDIRECTS);
             connection.connect();
+            trace.connected();
+            trace.responseReceived(getResponseCode(connection));
 
             int lengthOfFile = connection.getContentLength();
             String contentType = connection.getContentType();
@@ -128,12 +133,14 @@ public class DownloadFileTask extends AsyncTask<Void, Integer, Long> {
             }
 
             output.flush();
+            trace.addResponseBytes(total);
 
             return total;
         } catch (IOException e) {
             e.printStackTrace();
             return 0L;
         } finally {
+            trace.finish();
             try {
                 if (output != null) {
                     output.close();
@@ -147,14 +154,16 @@ public class DownloadFileTask extends AsyncTask<Void, Integer, Long> {
         }
     }
 
+    /**
+     * Returns the status code of the given connection or -1 if it isn't an
+     * HTTP connection.
+     */
+    protected static int getResponseCode(URLConnection connection) throws IOException {
+        return (connection instanceof HttpURLConnection) ? ((HttpURLConnection) connection).getResponseCode() : -1;
+    }
+
     protected void setConnectionProperties(HttpURLConnection connection) {
-        connection.addRequestProperty("User-Agent", "HockeySDK/Android");
         connection.setInstanceFollowRedirects(true);
-
-        // connection bug workaround for SDK<=2.x
-        if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.GINGERBREAD) {
-            connection.setRequestProperty("connection", "close");
-        }
     }
 
     /**
@@ -166,7 +175,7 @@ public class DownloadFileTask extends AsyncTask<Void, Integer, Long> {
      * @throws IOException if connection fails
      */
     protected URLConnection createConnection(URL url, int remainingRedirects) throws IOException {
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        HttpURLConnection connection = HttpTransports.getDefault().openConnection(url);
         setConnectionProperties(connection);
 
         int code = connection.getResponseCode();
@@ -183,7 +192,7 @@ public class DownloadFileTask extends AsyncTask<Void, Integer, Long> {
             if (!url.getProtocol().equals(movedUrl.getProtocol())) {
                 // HttpURLConnection doesn't handle redirects across schemes, so handle it manually, see
                 // http://code.google.com/p/android/issues/detail?id=41651
-                connection.disconnect();
+                HttpTransports.getDefault().releaseConnection(connection, code);
                 return createConnection(movedUrl, --remainingRedirects); // Recursion
             }
         }
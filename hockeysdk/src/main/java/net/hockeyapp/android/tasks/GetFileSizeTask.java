@@ -52,6 +52,7 @@ public class GetFileSizeTask extends DownloadFileTask {
 
     @Override
     protected Long doInBackground(Void... args) {
+        // Not traced, the size probe would skew the APK download stats
         try {
             URL url = new URL(getURLString());
             URLConnection connection = createConnection(url, MAX_REDIRECTS);
@@ -11,7 +11,10 @@ import android.text.TextUtils;
 
 import net.hockeyapp.android.Constants;
 import net.hockeyapp.android.LoginManager;
+import net.hockeyapp.android.objects.Endpoint;
+import net.hockeyapp.android.utils.HttpTransports;
 import net.hockeyapp.android.utils.HttpURLConnectionBuilder;
+import net.hockeyapp.android.utils.RequestTrace;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -121,13 +124,18 @@ public class LoginTask extends ConnectionTask<Void, Void, Boolean> {
     @Override
     protected Boolean doInBackground(Void... args) {
         HttpURLConnection connection = null;
+        RequestTrace trace = RequestTrace.start(Endpoint.LOGIN, mUrlString, 0);
+        int responseCode = -1;
         try {
 
-            connection = makeRequest(mMode, mParams);
+            connection = makeRequest(mMode, mParams, trace);
             connection.connect();
+            trace.connected();
 
-            if (connection.getResponseCode() == 200) {
-                String responseStr = getStringFromConnection(connection);
+            responseCode = connection.getResponseCode();
+            trace.responseReceived(responseCode);
+            if (responseCode == 200) {
+                String responseStr = getStringFromConnection(connection, trace);
 
                 if (!TextUtils.isEmpty(responseStr)) {
                     return handleResponse(responseStr);
@@ -138,8 +146,9 @@ public class LoginTask extends ConnectionTask<Void, Void, Boolean> {
         } catch (IOException e) {
             e.printStackTrace();
         } finally {
+            trace.finish();
             if (connection != null) {
-                connection.disconnect();
+                HttpTransports.getDefault().releaseConnection(connection, responseCode);
             }
         }
 
@@ -167,18 +176,22 @@ public class LoginTask extends ConnectionTask<Void, Void, Boolean> {
         }
     }
 
-    private HttpURLConnection makeRequest(int mode, Map<String, String> params) throws IOException {
+    private HttpURLConnection makeRequest(int mode, Map<String, String> params, RequestTrace trace) throws IOException {
         if (mode == LoginManager.LOGIN_MODE_EMAIL_ONLY) {
 
             return new HttpURLConnectionBuilder(mUrlString)
                     .setRequestMethod("POST")
                     .writeFormFields(params)
+                    .setAcceptCompression(true)
+                    .setTrace(trace)
                     .build();
         } else if (mode == LoginManager.LOGIN_MODE_EMAIL_PASSWORD) {
 
             return new HttpURLConnectionBuilder(mUrlString)
                     .setRequestMethod("POST")
                     .setBasicAuthorization(params.get("email"), params.get("password"))
+                    .setAcceptCompression(true)
+                    .setTrace(trace)
                     .build();
         } else if (mode == LoginManager.LOGIN_MODE_VALIDATE) {
             String type = params.get("type");
@@ -186,6 +199,8 @@ public class LoginTask extends ConnectionTask<Void, Void, Boolean> {
             String paramUrl = mUrlString + "?" + type + "=" + id;
 
             return new HttpURLConnectionBuilder(paramUrl)
+                    .setAcceptCompression(true)
+                    .setTrace(trace)
                     .build();
         } else {
             throw new IllegalArgumentException("Login mode " + mode + " not supported.");
@@ -11,7 +11,10 @@ import android.os.Message;
 import android.util.Log;
 
 import net.hockeyapp.android.Constants;
+import net.hockeyapp.android.objects.Endpoint;
+import net.hockeyapp.android.utils.HttpTransports;
 import net.hockeyapp.android.utils.HttpURLConnectionBuilder;
+import net.hockeyapp.android.utils.RequestTrace;
 import net.hockeyapp.android.utils.Util;
 
 import java.io.File;
@@ -232,6 +235,8 @@ public class SendFeedbackTask extends ConnectionTask<Void, Void, HashMap<String,
         result.put("type", "send");
 
         HttpURLConnection urlConnection = null;
+        RequestTrace trace = RequestTrace.start(Endpoint.FEEDBACK_SEND, mUrlString, 0);
+        int responseCode = -1;
         try {
             Map<String, String> parameters = new HashMap<String, String>();
             parameters.put("name", mName);
@@ -252,17 +257,23 @@ public class SendFeedbackTask extends ConnectionTask<Void, Void, HashMap<String,
             urlConnection = new HttpURLConnectionBuilder(mUrlString)
                     .setRequestMethod(mToken != null ? "PUT" : "POST")
                     .writeFormFields(parameters)
+                    .setAcceptCompression(true)
+                    .setTrace(trace)
                     .build();
 
             urlConnection.connect();
+            trace.connected();
 
-            result.put("status", String.valueOf(urlConnection.getResponseCode()));
-            result.put("response", getStringFromConnection(urlConnection));
+            responseCode = urlConnection.getResponseCode();
+            trace.responseReceived(responseCode);
+            result.put("status", String.valueOf(responseCode));
+            result.put("response", getStringFromConnection(urlConnection, trace));
         } catch (IOException e) {
             e.printStackTrace();
         } finally {
+            trace.finish();
             if (urlConnection != null) {
-                urlConnection.disconnect();
+                HttpTransports.getDefault().releaseConnection(urlConnection, responseCode);
             }
         }
 
@@ -279,6 +290,8 @@ public class SendFeedbackTask extends ConnectionTask<Void, Void, HashMap<String,
         result.put("type", "send");
 
         HttpURLConnection urlConnection = null;
+        RequestTrace trace = RequestTrace.start(Endpoint.FEEDBACK_SEND, mUrlString, 0);
+        int responseCode = -1;
         try {
             Map<String, String> parameters = new HashMap<String, String>();
             parameters.put("name", mName);
@@ -299,18 +312,24 @@ public class SendFeedbackTask extends ConnectionTask<Void, Void, HashMap<String,
             urlConnection = new HttpURLConnectionBuilder(mUrlString)
                     .setRequestMethod(mToken != null ? "PUT" : "POST")
                     .writeMultipartData(parameters, mContext, mAttachmentUris)
+                    .setAcceptCompression(true)
+                    .setTrace(trace)
                     .build();
 
             urlConnection.connect();
+            trace.connected();
 
-            result.put("status", String.valueOf(urlConnection.getResponseCode()));
-            result.put("response", getStringFromConnection(urlConnection));
+            responseCode = urlConnection.getResponseCode();
+            trace.responseReceived(responseCode);
+            result.put("status", String.valueOf(responseCode));
+            result.put("response", getStringFromConnection(urlConnection, trace));
 
         } catch (IOException e) {
             e.printStackTrace();
         } finally {
+            trace.finish();
             if (urlConnection != null) {
-                urlConnection.disconnect();
+                HttpTransports.getDefault().releaseConnection(urlConnection, responseCode);
             }
         }
 
@@ -333,22 +352,30 @@ public class SendFeedbackTask extends ConnectionTask<Void, Void, HashMap<String,
         HashMap<String, String> result = new HashMap<String, String>();
 
         HttpURLConnection urlConnection = null;
+        RequestTrace trace = RequestTrace.start(Endpoint.FEEDBACK_FETCH, mUrlString, 0);
+        int responseCode = -1;
         try {
 
             urlConnection = new HttpURLConnectionBuilder(sb.toString())
+                    .setAcceptCompression(true)
+                    .setTrace(trace)
                     .build();
 
             result.put("type", "fetch");
 
             urlConnection.connect();
+            trace.connected();
 
-            result.put("status", String.valueOf(urlConnection.getResponseCode()));
-            result.put("response", getStringFromConnection(urlConnection));
+            responseCode = urlConnection.getResponseCode();
+            trace.responseReceived(responseCode);
+            result.put("status", String.valueOf(responseCode));
+            result.put("response", getStringFromConnection(urlConnection, trace));
         } catch (IOException e) {
             e.printStackTrace();
         } finally {
+            trace.finish();
             if (urlConnection != null) {
-                urlConnection.disconnect();
+                HttpTransports.getDefault().releaseConnection(urlConnection, responseCode);
             }
         }
 
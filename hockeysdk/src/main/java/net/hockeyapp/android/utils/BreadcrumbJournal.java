@@ -0,0 +1,345 @@
+package net.hockeyapp.android.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Breadcrumb ring buffer in a memory mapped file. Writes are plain stores
+ * into the mapped region, which the kernel keeps even if the process is
+ * killed, e.g. by a native crash, an ANR or the low memory killer. The
+ * file also holds the state of the session, so the next session can tell
+ * whether the previous one ended unexpectedly.
+ *
+ * The file starts with a header of 64 bytes: magic bytes, format version,
+ * session state, session start and the version code of the app. It is
+ * followed by one slot of 512 bytes per breadcrumb with sequence number,
+ * timestamp, thread id, message length and the UTF-8 encoded message.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class BreadcrumbJournal {
+
+    /**
+     * The app is not in the foreground, the process may be killed any time.
+     */
+    public static final int STATE_BACKGROUND = 0;
+
+    /**
+     * The app is in the foreground.
+     */
+    public static final int STATE_FOREGROUND = 1;
+
+    /**
+     * The session ended with a crash that was already saved as a report.
+     */
+    public static final int STATE_CRASHED = 2;
+
+    private static final byte[] MAGIC = {'H', 'A', 'B', 'J'};
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_STATE = 5;
+    private static final int OFFSET_SESSION_START = 8;
+    private static final int OFFSET_APP_VERSION = 16;
+    private static final int MAX_APP_VERSION_LENGTH = 31;
+
+    private static final int SLOT_SIZE = 512;
+    private static final int SLOT_TIMESTAMP = 8;
+    private static final int SLOT_THREAD_ID = 16;
+    private static final int SLOT_LENGTH = 24;
+    private static final int SLOT_MESSAGE = 26;
+    private static final int MAX_MESSAGE_LENGTH = SLOT_SIZE - SLOT_MESSAGE;
+
+    private final MappedByteBuffer mBuffer;
+    private final int mCapacity;
+
+    private BreadcrumbJournal(MappedByteBuffer buffer, int capacity) {
+        mBuffer = buffer;
+        mCapacity = capacity;
+    }
+
+    /**
+     * Opens the journal file and maps it into memory. The content of the
+     * previous session is kept until startSession is called. A missing or
+     * invalid file is initialized as empty journal.
+     *
+     * @param file     the journal file
+     * @param capacity the number of breadcrumbs
+     * @return the journal
+     * @throws IOException if the file can't be mapped
+     */
+    public static BreadcrumbJournal open(File file, int capacity) throws IOException {
+        long size = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            boolean valid = (randomAccessFile.length() == size);
+            if (!valid) {
+                randomAccessFile.setLength(size);
+            }
+
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            BreadcrumbJournal journal = new BreadcrumbJournal(buffer, capacity);
+            if (!valid || !journal.hasValidHeader()) {
+                journal.startSession(null, 0);
+                journal.setState(STATE_BACKGROUND);
+            }
+            return journal;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Returns whether the session in the journal ended unexpectedly, i.e.
+     * the process died in the foreground without saving a crash report.
+     *
+     * @return true if the session ended unexpectedly
+     */
+    public boolean hasUncleanSession() {
+        return mBuffer.get(OFFSET_STATE) == STATE_FOREGROUND;
+    }
+
+    /**
+     * Returns the start time of the session in the journal.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getSessionStart() {
+        return mBuffer.getLong(OFFSET_SESSION_START);
+    }
+
+    /**
+     * Returns the version code of the app that wrote the journal.
+     *
+     * @return the version code, may be empty
+     */
+    public String getAppVersion() {
+        int length = Math.min(mBuffer.get(OFFSET_APP_VERSION) & 0xFF, MAX_APP_VERSION_LENGTH);
+        byte[] bytes = new byte[length];
+        for (int index = 0; index < length; index++) {
+            bytes[index] = mBuffer.get(OFFSET_APP_VERSION + 1 + index);
+        }
+        return decode(bytes);
+    }
+
+    /**
+     * Returns the time of the last breadcrumb in the journal.
+     *
+     * @return the time in milliseconds since the epoch, or the session
+     * start if there are no breadcrumbs
+     */
+    public long getLastTimestamp() {
+        long lastSequence = -1;
+        long lastTimestamp = getSessionStart();
+        for (int slot = 0; slot < mCapacity; slot++) {
+            long sequence = mBuffer.getLong(getSlotOffset(slot));
+            if (sequence > lastSequence) {
+                lastSequence = sequence;
+                lastTimestamp = mBuffer.getLong(getSlotOffset(slot) + SLOT_TIMESTAMP);
+            }
+        }
+        return lastTimestamp;
+    }
+
+    /**
+     * Appends the breadcrumbs of the journal to the given builder, oldest
+     * first, in the same format as the in-memory breadcrumbs. Times are
+     * relative to the given time.
+     *
+     * @param builder the builder to append to
+     * @param now     the reference time, e.g. the last timestamp
+     * @return the number of breadcrumbs
+     */
+    public int dump(StringBuilder builder, long now) {
+        long lastSequence = -1;
+        for (int slot = 0; slot < mCapacity; slot++) {
+            lastSequence = Math.max(lastSequence, mBuffer.getLong(getSlotOffset(slot)));
+        }
+
+        int count = 0;
+        for (long sequence = Math.max(lastSequence - mCapacity + 1, 0); sequence <= lastSequence; sequence++) {
+            int offset = getSlotOffset((int) (sequence % mCapacity));
+            if (mBuffer.getLong(offset) != sequence) {
+                // Never written or the process died while writing it
+                continue;
+            }
+
+            int length = Math.min(mBuffer.getShort(offset + SLOT_LENGTH) & 0xFFFF, MAX_MESSAGE_LENGTH);
+            byte[] message = new byte[length];
+            for (int index = 0; index < length; index++) {
+                message[index] = mBuffer.get(offset + SLOT_MESSAGE + index);
+            }
+
+            builder.append(mBuffer.getLong(offset + SLOT_TIMESTAMP) - now).append(" ms [")
+                    .append(mBuffer.getLong(offset + SLOT_THREAD_ID)).append("] ")
+                    .append(decode(message)).append('\n');
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Discards the previous session and starts a new one in the foreground.
+     *
+     * @param appVersion   the version code of the app
+     * @param sessionStart the start time of the session
+     */
+    public synchronized void startSession(String appVersion, long sessionStart) {
+        for (int slot = 0; slot < mCapacity; slot++) {
+            mBuffer.putLong(getSlotOffset(slot), -1);
+        }
+
+        for (int index = 0; index < MAGIC.length; index++) {
+            mBuffer.put(index, MAGIC[index]);
+        }
+        mBuffer.put(OFFSET_VERSION, (byte) VERSION);
+        mBuffer.putLong(OFFSET_SESSION_START, sessionStart);
+
+        byte[] version = encode(appVersion != null ? appVersion : "");
+        int length = Math.min(version.length, MAX_APP_VERSION_LENGTH);
+        mBuffer.put(OFFSET_APP_VERSION, (byte) length);
+        for (int index = 0; index < length; index++) {
+            mBuffer.put(OFFSET_APP_VERSION + 1 + index, version[index]);
+        }
+        setState(STATE_FOREGROUND);
+    }
+
+    /**
+     * Sets the state of the current session.
+     *
+     * @param state one of the STATE constants
+     */
+    public void setState(int state) {
+        mBuffer.put(OFFSET_STATE, (byte) state);
+    }
+
+    /**
+     * Writes a breadcrumb into the slot of its sequence number. The slot is
+     * invalidated first, so a write interrupted by the death of the process
+     * is skipped when the journal is read. The message is encoded right
+     * into the slot, so no memory is allocated, and cut off before the
+     * first character that doesn't fit.
+     *
+     * @param sequence  the sequence number of the breadcrumb
+     * @param timestamp the time of the breadcrumb
+     * @param threadId  the id of the thread that left the breadcrumb
+     * @param message   the message
+     */
+    public void write(long sequence, long timestamp, long threadId, String message) {
+        int offset = getSlotOffset((int) (sequence % mCapacity));
+
+        mBuffer.putLong(offset, -1);
+        mBuffer.putLong(offset + SLOT_TIMESTAMP, timestamp);
+        mBuffer.putLong(offset + SLOT_THREAD_ID, threadId);
+        int length = encodeMessage(offset + SLOT_MESSAGE, message);
+        mBuffer.putShort(offset + SLOT_LENGTH, (short) length);
+        mBuffer.putLong(offset, sequence);
+    }
+
+    /**
+     * Encodes the message as UTF-8 at the given offset, up to
+     * MAX_MESSAGE_LENGTH bytes. Unpaired surrogates are replaced by '?'
+     * like String.getBytes() does.
+     *
+     * @return the number of bytes written
+     */
+    private int encodeMessage(int offset, String message) {
+        int length = 0;
+        for (int index = 0; index < message.length(); index++) {
+            char c = message.charAt(index);
+            int codePoint = c;
+            if (Character.isHighSurrogate(c) && index + 1 < message.length() && Character.isLowSurrogate(message.charAt(index + 1))) {
+                codePoint = Character.toCodePoint(c, message.charAt(index + 1));
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                codePoint = '?';
+            }
+
+            int size = (codePoint < 0x80) ? 1 : (codePoint < 0x800) ? 2 : (codePoint < 0x10000) ? 3 : 4;
+            if (length + size > MAX_MESSAGE_LENGTH) {
+                break;
+            }
+
+            int position = offset + length;
+            if (size == 1) {
+                mBuffer.put(position, (byte) codePoint);
+            } else if (size == 2) {
+                mBuffer.put(position, (byte) (0xC0 | (codePoint >> 6)));
+                mBuffer.put(position + 1, (byte) (0x80 | (codePoint & 0x3F)));
+            } else if (size == 3) {
+                mBuffer.put(position, (byte) (0xE0 | (codePoint >> 12)));
+                mBuffer.put(position + 1, (byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                mBuffer.put(position + 2, (byte) (0x80 | (codePoint & 0x3F)));
+            } else {
+                mBuffer.put(position, (byte) (0xF0 | (codePoint >> 18)));
+                mBuffer.put(position + 1, (byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                mBuffer.put(position + 2, (byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                mBuffer.put(position + 3, (byte) (0x80 | (codePoint & 0x3F)));
+                index++;
+            }
+            length += size;
+        }
+        return length;
+    }
+
+    private boolean hasValidHeader() {
+        for (int index = 0; index < MAGIC.length; index++) {
+            if (mBuffer.get(index) != MAGIC[index]) {
+                return false;
+            }
+        }
+        return mBuffer.get(OFFSET_VERSION) == VERSION;
+    }
+
+    private static int getSlotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static byte[] encode(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String decode(byte[] bytes) {
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package net.hockeyapp.android.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Computes the fingerprint of a crash report to find reports of the same
+ * crash. The fingerprint is a 64 bit FNV-1a hash over the package and
+ * version code from the header, the exception type and the top frames of
+ * the stack trace. Line numbers and the exception message are left out,
+ * as they often differ between occurrences of the same crash. Reports of
+ * different app versions never share a fingerprint.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class CrashFingerprint {
+
+    /**
+     * Number of frames from the top of the stack trace that are hashed.
+     */
+    public static final int MAX_FRAMES = 5;
+
+    private static final int MAX_READ_LENGTH = 16 * 1024;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final String[] HEADER_KEYS = {"Package: ", "Version Code: "};
+
+    private CrashFingerprint() {
+    }
+
+    /**
+     * Computes the fingerprint of a crash report file in the single file
+     * or legacy format. Only the beginning of the stack trace is read.
+     *
+     * @param file the crash report file
+     * @return the fingerprint or null if the file has no stack trace
+     * @throws IOException if the file can't be read
+     */
+    public static String compute(File file) throws IOException {
+        Map<Integer, CrashReportFile.Section> sections = CrashReportFile.readSections(file);
+        if (sections == null) {
+            // Legacy format: header lines, an empty line, then the stack trace
+            String raw = read(file, 0, MAX_READ_LENGTH);
+            int separator = raw.indexOf("\n\n");
+            if (separator < 0) {
+                return compute("", raw);
+            }
+            return compute(raw.substring(0, separator), raw.substring(separator + 2));
+        }
+
+        CrashReportFile.Section header = sections.get(CrashReportFile.SECTION_HEADER);
+        CrashReportFile.Section stacktrace = sections.get(CrashReportFile.SECTION_STACKTRACE);
+        if (stacktrace == null) {
+            return null;
+        }
+        return compute(header != null ? read(file, header.getOffset(), header.getLength()) : "",
+                read(file, stacktrace.getOffset(), stacktrace.getLength()));
+    }
+
+    /**
+     * Computes the fingerprint from the header lines and the stack trace of
+     * a crash report.
+     *
+     * @param header     the header lines
+     * @param stacktrace the stack trace, formatted like printStackTrace()
+     * @return the fingerprint or null if the stack trace is empty
+     */
+    public static String compute(String header, String stacktrace) {
+        String[] lines = stacktrace.split("\n");
+        String type = getExceptionType(lines[0]);
+        if (type.length() == 0) {
+            return null;
+        }
+
+        long hash = FNV_OFFSET_BASIS;
+        for (String key : HEADER_KEYS) {
+            hash = hash(hash, getHeaderValue(header, key));
+        }
+        hash = hash(hash, type);
+
+        int frames = 0;
+        for (int index = 1; index < lines.length && frames < MAX_FRAMES; index++) {
+            String line = lines[index].trim();
+            if (line.startsWith("Caused by:")) {
+                break;
+            }
+            if (line.startsWith("at ")) {
+                hash = hash(hash, normalizeFrame(line));
+                frames++;
+            }
+        }
+        return String.format("%016x", hash);
+    }
+
+    /**
+     * Computes the fingerprint of an exception without formatting its
+     * stack trace. The result is the same as for a report of the exception
+     * with the given package and version code.
+     *
+     * @param packageName the package name of the app
+     * @param versionCode the version code of the app
+     * @param throwable   the exception
+     * @return the fingerprint
+     */
+    public static String compute(String packageName, String versionCode, Throwable throwable) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = hash(hash, packageName != null ? packageName : "");
+        hash = hash(hash, versionCode != null ? versionCode : "");
+        hash = hash(hash, throwable.getClass().getName());
+
+        StackTraceElement[] trace = throwable.getStackTrace();
+        for (int index = 0; index < trace.length && index < MAX_FRAMES; index++) {
+            hash = hash(hash, normalizeFrame("at " + trace[index]));
+        }
+        return String.format("%016x", hash);
+    }
+
+    /**
+     * Returns the class name of the exception from the first line of a
+     * stack trace, i.e. the text in front of the message.
+     */
+    private static String getExceptionType(String line) {
+        int colon = line.indexOf(':');
+        return (colon >= 0 ? line.substring(0, colon) : line).trim();
+    }
+
+    private static String getHeaderValue(String header, String key) {
+        for (String line : header.split("\n")) {
+            if (line.startsWith(key)) {
+                return line.substring(key.length()).trim();
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Strips the line number from a frame, e.g. "at a.B.c(B.java:12)"
+     * becomes "at a.B.c(B.java)".
+     */
+    private static String normalizeFrame(String frame) {
+        return frame.replaceAll(":\\d+\\)$", ")");
+    }
+
+    private static long hash(long hash, String value) {
+        for (int index = 0; index < value.length(); index++) {
+            hash ^= value.charAt(index);
+            hash *= FNV_PRIME;
+        }
+        // Separator, so that ("ab", "c") and ("a", "bc") differ
+        hash ^= '\n';
+        hash *= FNV_PRIME;
+        return hash;
+    }
+
+    private static String read(File file, long offset, int maxLength) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            long skip = offset;
+            while (skip > 0) {
+                long skipped = input.skip(skip);
+                if (skipped <= 0) {
+                    return "";
+                }
+                skip -= skipped;
+            }
+
+            byte[] buffer = new byte[Math.min(maxLength, MAX_READ_LENGTH)];
+            int length = 0;
+            int count;
+            while (length < buffer.length && (count = input.read(buffer, length, buffer.length - length)) > 0) {
+                length += count;
+            }
+            return new String(buffer, 0, length, "UTF-8");
+        } finally {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package net.hockeyapp.android.utils;
+
+import java.util.List;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Detects crash loops from the time of the previous launch and the time
+ * of the newest crash report. A launch crashed early if the newest crash
+ * happened within the launch window after it; a crash loop is a number of
+ * launches in a row that crashed early.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class CrashLoopDetector {
+
+    private CrashLoopDetector() {
+    }
+
+    /**
+     * Returns the time of the newest fatal crash in the given reports.
+     * Handled exceptions, stalls and unclean sessions don't count.
+     *
+     * @param entries the reports of the crash report index
+     * @return the time in milliseconds since the epoch, 0 if there are no
+     * fatal crashes
+     */
+    public static long getNewestCrashTime(List<CrashReportIndex.Entry> entries) {
+        long newestCrash = 0;
+        for (CrashReportIndex.Entry entry : entries) {
+            if (entry.isFatal()) {
+                newestCrash = Math.max(newestCrash, Math.max(entry.getTimestamp(), entry.getLastSeen()));
+            }
+        }
+        return newestCrash;
+    }
+
+    /**
+     * Returns the number of launches in a row that crashed early,
+     * including the previous launch.
+     *
+     * @param previousLaunch the time of the previous launch, 0 if unknown
+     * @param newestCrash    the time of the newest crash, 0 if none
+     * @param launchWindow   the time after a launch in which a crash
+     *                       counts towards a crash loop
+     * @param count          the number of early crashes in a row before
+     *                       the previous launch
+     * @return the new count, 0 if the previous launch didn't crash early
+     */
+    public static int countEarlyCrashes(long previousLaunch, long newestCrash, long launchWindow, int count) {
+        boolean crashedEarly = (previousLaunch > 0) && (newestCrash >= previousLaunch) && (newestCrash - previousLaunch <= launchWindow);
+        return crashedEarly ? count + 1 : 0;
+    }
+
+    /**
+     * Returns whether the given number of early crashes is a crash loop.
+     *
+     * @param count     the number of launches in a row that crashed early
+     * @param threshold the min number of early crashes, 0 disables
+     *                  detection
+     * @return true if this is a crash loop
+     */
+    public static boolean isCrashLoop(int count, int threshold) {
+        return (threshold > 0) && (count >= threshold);
+    }
+}
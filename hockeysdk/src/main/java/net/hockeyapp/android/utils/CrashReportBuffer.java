@@ -0,0 +1,398 @@
+package net.hockeyapp.android.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Calendar;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Fixed size buffer to format a crash report in the single file format
+ * without allocating memory. All append methods encode directly into the
+ * buffer, which is reserved up front; output that doesn't fit is cut off.
+ * The stack trace is formatted like Throwable.printStackTrace(). The only
+ * allocation is the copy of the stack trace that the VM hands out.
+ *
+ * This class is not thread safe.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class CrashReportBuffer {
+
+    private static final String[] DAYS = {"Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"};
+    private static final String[] MONTHS = {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+
+    private static final int MAX_CAUSES = 16;
+    private static final int SECTION_HEADER_LENGTH = 5;
+
+    private final byte[] mBuffer;
+    private final StackTraceElement[][] mTraces = new StackTraceElement[MAX_CAUSES][];
+    private final Throwable[] mCauses = new Throwable[MAX_CAUSES];
+    private int mPosition;
+    private int mSectionStart = -1;
+
+    /**
+     * Creates a new buffer and writes the file preamble.
+     *
+     * @param capacity the size of the buffer in bytes
+     */
+    public CrashReportBuffer(int capacity) {
+        mBuffer = new byte[Math.max(capacity, 64)];
+        reset();
+    }
+
+    /**
+     * Discards all content except the file preamble.
+     */
+    public void reset() {
+        mPosition = 0;
+        mSectionStart = -1;
+        for (byte b : CrashReportFile.MAGIC) {
+            mBuffer[mPosition++] = b;
+        }
+        mBuffer[mPosition++] = (byte) CrashReportFile.VERSION;
+    }
+
+    /**
+     * Returns the number of bytes in the buffer.
+     *
+     * @return the length of the content
+     */
+    public int length() {
+        return mPosition;
+    }
+
+    /**
+     * Returns whether the buffer is full, i.e. content was cut off.
+     *
+     * @return true if no more bytes fit into the buffer
+     */
+    public boolean isFull() {
+        return mPosition >= mBuffer.length;
+    }
+
+    /**
+     * Starts a new section. Closes the current section if there is one.
+     *
+     * @param type the section type, see CrashReportFile
+     */
+    public void beginSection(int type) {
+        endSection();
+        if (mPosition + SECTION_HEADER_LENGTH > mBuffer.length) {
+            // No room for another section, drop all further content
+            mPosition = mBuffer.length;
+            return;
+        }
+        mBuffer[mPosition] = (byte) type;
+        mPosition += SECTION_HEADER_LENGTH;
+        mSectionStart = mPosition;
+    }
+
+    /**
+     * Closes the current section by writing its length.
+     */
+    public void endSection() {
+        if (mSectionStart < 0) {
+            return;
+        }
+
+        int length = mPosition - mSectionStart;
+        int offset = mSectionStart - 4;
+        mBuffer[offset] = (byte) (length >>> 24);
+        mBuffer[offset + 1] = (byte) (length >>> 16);
+        mBuffer[offset + 2] = (byte) (length >>> 8);
+        mBuffer[offset + 3] = (byte) length;
+        mSectionStart = -1;
+    }
+
+    /**
+     * Appends the given bytes.
+     *
+     * @param bytes the bytes to append
+     * @return this buffer
+     */
+    public CrashReportBuffer append(byte[] bytes) {
+        int length = Math.min(bytes.length, mBuffer.length - mPosition);
+        System.arraycopy(bytes, 0, mBuffer, mPosition, length);
+        mPosition += length;
+        return this;
+    }
+
+    /**
+     * Appends the UTF-8 encoded string. Null is appended as "null".
+     *
+     * @param string the string to append
+     * @return this buffer
+     */
+    public CrashReportBuffer append(String string) {
+        if (string == null) {
+            string = "null";
+        }
+        for (int index = 0; index < string.length(); index++) {
+            char c = string.charAt(index);
+            if (Character.isHighSurrogate(c) && index + 1 < string.length() && Character.isLowSurrogate(string.charAt(index + 1))) {
+                appendCodePoint(Character.toCodePoint(c, string.charAt(++index)));
+            } else {
+                appendCodePoint(c);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Appends the decimal representation of the given number.
+     *
+     * @param value the number to append
+     * @return this buffer
+     */
+    public CrashReportBuffer append(long value) {
+        if (value < 0) {
+            appendByte('-');
+            if (value == Long.MIN_VALUE) {
+                return append("9223372036854775808");
+            }
+            value = -value;
+        }
+
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            appendByte((int) ('0' + (value / divisor) % 10));
+            divisor /= 10;
+        }
+        return this;
+    }
+
+    /**
+     * Appends a character.
+     *
+     * @param c the character to append
+     * @return this buffer
+     */
+    public CrashReportBuffer append(char c) {
+        appendCodePoint(c);
+        return this;
+    }
+
+    /**
+     * Appends the date of the given calendar in the format of
+     * Date.toString(), e.g. "Thu Jan 07 14:22:03 CET 2016".
+     *
+     * @param calendar the calendar, already set to the time to append
+     * @param timeZone the short name of the calendar's time zone
+     * @return this buffer
+     */
+    public CrashReportBuffer appendDate(Calendar calendar, String timeZone) {
+        append(DAYS[calendar.get(Calendar.DAY_OF_WEEK) - 1]).append(' ');
+        append(MONTHS[calendar.get(Calendar.MONTH)]).append(' ');
+        appendTwoDigits(calendar.get(Calendar.DAY_OF_MONTH)).append(' ');
+        appendTwoDigits(calendar.get(Calendar.HOUR_OF_DAY)).append(':');
+        appendTwoDigits(calendar.get(Calendar.MINUTE)).append(':');
+        appendTwoDigits(calendar.get(Calendar.SECOND)).append(' ');
+        append(timeZone).append(' ');
+        return append(calendar.get(Calendar.YEAR));
+    }
+
+    /**
+     * Appends the stack trace of the given throwable and its causes in the
+     * format of Throwable.printStackTrace().
+     *
+     * @param throwable the throwable to append
+     * @return this buffer
+     */
+    public CrashReportBuffer appendStackTrace(Throwable throwable) {
+        int count = 0;
+        try {
+            for (Throwable cause = throwable; cause != null && count < MAX_CAUSES; cause = cause.getCause()) {
+                if (isCollected(cause, count)) {
+                    break;
+                }
+                mCauses[count] = cause;
+                mTraces[count] = null;
+                count++;
+            }
+
+            for (int index = 0; index < count; index++) {
+                Throwable cause = mCauses[index];
+                if (index > 0) {
+                    append("Caused by: ");
+                }
+                appendThrowableName(cause);
+
+                StackTraceElement[] trace = cause.getStackTrace();
+                mTraces[index] = trace;
+                int framesInCommon = (index > 0) ? StackTraceSerializer.countFramesInCommon(trace, mTraces[index - 1]) : 0;
+                appendFrames(trace, trace.length - framesInCommon);
+                if (framesInCommon > 0) {
+                    append("\t... ").append(framesInCommon).append(" more\n");
+                }
+            }
+        } finally {
+            for (int index = 0; index < count; index++) {
+                mCauses[index] = null;
+                mTraces[index] = null;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Appends the class name and message of a throwable in the format of
+     * Throwable.toString(), followed by a line break.
+     *
+     * @param throwable the throwable to append
+     * @return this buffer
+     */
+    public CrashReportBuffer appendThrowableName(Throwable throwable) {
+        append(throwable.getClass().getName());
+        String message = throwable.getLocalizedMessage();
+        if (message != null) {
+            append(": ").append(message);
+        }
+        return append('\n');
+    }
+
+    /**
+     * Appends a stack frame in the format of StackTraceElement.toString().
+     *
+     * @param element the frame to append
+     * @return this buffer
+     */
+    public CrashReportBuffer appendFrame(StackTraceElement element) {
+        append(element.getClassName()).append('.').append(element.getMethodName());
+        if (element.isNativeMethod()) {
+            return append("(Native Method)");
+        }
+
+        String fileName = element.getFileName();
+        if (fileName == null) {
+            return append("(Unknown Source)");
+        }
+
+        append('(').append(fileName);
+        if (element.getLineNumber() >= 0) {
+            append(':').append(element.getLineNumber());
+        }
+        return append(')');
+    }
+
+    /**
+     * Writes the content of the buffer and closes the current section.
+     *
+     * @param output the stream to write to
+     * @throws IOException if the stream can't be written
+     */
+    public void writeTo(OutputStream output) throws IOException {
+        endSection();
+        output.write(mBuffer, 0, mPosition);
+    }
+
+    private boolean isCollected(Throwable throwable, int count) {
+        for (int index = 0; index < count; index++) {
+            if (mCauses[index] == throwable) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Appends the frames, with repeated cycles collapsed like in
+     * StackTraceSerializer.
+     */
+    private void appendFrames(StackTraceElement[] trace, int end) {
+        int index = 0;
+        while (index < end && !isFull()) {
+            int period = StackTraceSerializer.findCycle(trace, index, end);
+            int count = (period > 0) ? period : 1;
+            for (int frame = index; frame < index + count; frame++) {
+                append("\tat ");
+                appendFrame(trace[frame]);
+                append('\n');
+            }
+            index += count;
+
+            if (period > 0) {
+                int repeats = StackTraceSerializer.countRepeats(trace, index - period, end, period);
+                append("\t... ");
+                if (period == 1) {
+                    append("last frame");
+                } else {
+                    append("last ").append(period).append(" frames");
+                }
+                append(" repeated ").append(repeats).append(" more times\n");
+                index += period * repeats;
+            }
+        }
+    }
+
+    private CrashReportBuffer appendTwoDigits(int value) {
+        if (value < 10) {
+            appendByte('0');
+        }
+        return append(value);
+    }
+
+    private void appendCodePoint(int codePoint) {
+        if (codePoint < 0x80) {
+            appendByte(codePoint);
+        } else if (codePoint < 0x800) {
+            if (mPosition + 2 > mBuffer.length) {
+                mPosition = mBuffer.length;
+                return;
+            }
+            appendByte(0xC0 | (codePoint >> 6));
+            appendByte(0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            if (mPosition + 3 > mBuffer.length) {
+                mPosition = mBuffer.length;
+                return;
+            }
+            appendByte(0xE0 | (codePoint >> 12));
+            appendByte(0x80 | ((codePoint >> 6) & 0x3F));
+            appendByte(0x80 | (codePoint & 0x3F));
+        } else {
+            if (mPosition + 4 > mBuffer.length) {
+                mPosition = mBuffer.length;
+                return;
+            }
+            appendByte(0xF0 | (codePoint >> 18));
+            appendByte(0x80 | ((codePoint >> 12) & 0x3F));
+            appendByte(0x80 | ((codePoint >> 6) & 0x3F));
+            appendByte(0x80 | (codePoint & 0x3F));
+        }
+    }
+
+    private void appendByte(int b) {
+        if (mPosition < mBuffer.length) {
+            mBuffer[mPosition++] = (byte) b;
+        }
+    }
+}
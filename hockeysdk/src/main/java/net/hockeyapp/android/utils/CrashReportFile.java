@@ -0,0 +1,469 @@
+package net.hockeyapp.android.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Single file format for crash reports. Older SDK versions wrote the stack
+ * trace, user ID, contact and description of a crash to four separate
+ * files; this format keeps all of them in one file, so a crash costs one
+ * create, one open and one delete.
+ *
+ * A file starts with the magic bytes "HACR" and a version byte, followed
+ * by any number of sections. Every section consists of a type byte, the
+ * length of the payload as 4 byte big endian integer and the UTF-8 encoded
+ * payload. Readers skip unknown section types and stop at a truncated
+ * section, so the sections written before a failure are still readable.
+ * Files of a newer version than VERSION are rejected, e.g. after a
+ * downgrade of the SDK, since their sections can't be interpreted.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class CrashReportFile {
+
+    /**
+     * Current version of the format.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Header lines of the report, i.e. package, version and device data.
+     */
+    public static final int SECTION_HEADER = 1;
+
+    /**
+     * The stack trace of the exception.
+     */
+    public static final int SECTION_STACKTRACE = 2;
+
+    /**
+     * The user ID from the crash manager listener.
+     */
+    public static final int SECTION_USER_ID = 3;
+
+    /**
+     * The contact from the crash manager listener.
+     */
+    public static final int SECTION_CONTACT = 4;
+
+    /**
+     * The description from the crash manager listener.
+     */
+    public static final int SECTION_DESCRIPTION = 5;
+
+    /**
+     * The breadcrumbs left by the app before the crash.
+     */
+    public static final int SECTION_BREADCRUMBS = 6;
+
+    /**
+     * Properties of a handled exception, one "key: value" per line.
+     */
+    public static final int SECTION_PROPERTIES = 7;
+
+    /**
+     * Java and native heap statistics of an out of memory crash.
+     */
+    public static final int SECTION_MEMORY = 8;
+
+    /**
+     * Stacks of all other threads, see ThreadDump.
+     */
+    public static final int SECTION_THREADS = 9;
+
+    static final byte[] MAGIC = {'H', 'A', 'C', 'R'};
+
+    private static final int MAX_SECTION_LENGTH = 32 * 1024 * 1024;
+
+    private final Map<Integer, String> mSections;
+
+    private CrashReportFile(Map<Integer, String> sections) {
+        mSections = sections;
+    }
+
+    /**
+     * Returns the payload of the given section.
+     *
+     * @param type the section type
+     * @return the payload or null if the report has no such section
+     */
+    public String getSection(int type) {
+        return mSections.get(type);
+    }
+
+    /**
+     * Returns the stack trace with the header lines in front of it, as
+     * expected by HockeyApp.
+     *
+     * @return the raw crash log
+     */
+    public String getRaw() {
+        String header = getSection(SECTION_HEADER);
+        String stacktrace = getSection(SECTION_STACKTRACE);
+        return (header != null ? header : "") + "\n" + (stacktrace != null ? stacktrace : "");
+    }
+
+    /**
+     * Reads a crash report from the given stream. The stream is closed
+     * afterwards.
+     *
+     * @param input the stream to read from
+     * @return the report or null if the stream doesn't start with the magic
+     * bytes, e.g. because it is a stack trace file in the legacy format
+     * @throws IOException if the stream can't be read or the file has an
+     *                     unsupported version
+     */
+    public static CrashReportFile read(InputStream input) throws IOException {
+        DataInputStream dataInput = new DataInputStream(input);
+        try {
+            if (!readMagic(dataInput)) {
+                return null;
+            }
+            checkVersion(dataInput.readUnsignedByte());
+
+            Map<Integer, String> sections = new HashMap<Integer, String>();
+            while (true) {
+                int type = dataInput.read();
+                if (type < 0) {
+                    break;
+                }
+
+                byte[] payload;
+                try {
+                    int length = dataInput.readInt();
+                    if (length < 0 || length > MAX_SECTION_LENGTH) {
+                        // Corrupt length, the rest of the file can't be trusted
+                        break;
+                    }
+                    payload = new byte[length];
+                    dataInput.readFully(payload);
+                } catch (EOFException e) {
+                    // Truncated section, e.g. the process died while writing
+                    break;
+                }
+                sections.put(type, new String(payload, "UTF-8"));
+            }
+            return new CrashReportFile(sections);
+        } finally {
+            dataInput.close();
+        }
+    }
+
+    /**
+     * Reads the header lines and the start of the stack trace from the
+     * beginning of a crash report, without reading more than maxBytes.
+     * Works for the single file format and the legacy format.
+     *
+     * @param file     the crash report file
+     * @param maxBytes the max number of bytes to read
+     * @return the header and stack trace like getRaw(), possibly cut off
+     * @throws IOException if the file can't be read
+     */
+    public static String readHead(File file, int maxBytes) throws IOException {
+        return readHead(new FileInputStream(file), maxBytes);
+    }
+
+    /**
+     * Reads the head of a crash report from the given stream, see
+     * readHead(File, int). The stream is closed afterwards.
+     *
+     * @param input    the stream to read from
+     * @param maxBytes the max number of bytes to read
+     * @return the header and stack trace like getRaw(), possibly cut off,
+     * or an empty String if the file has an unsupported version
+     * @throws IOException if the stream can't be read
+     */
+    public static String readHead(InputStream input, int maxBytes) throws IOException {
+        byte[] buffer = new byte[maxBytes];
+        int length = 0;
+        try {
+            int count;
+            while (length < buffer.length && (count = input.read(buffer, length, buffer.length - length)) != -1) {
+                length += count;
+            }
+        } finally {
+            input.close();
+        }
+
+        if (length < MAGIC.length + 1 || !startsWithMagic(buffer)) {
+            return new String(buffer, 0, length, "UTF-8");
+        }
+        if ((buffer[MAGIC.length] & 0xFF) > VERSION) {
+            return "";
+        }
+
+        String header = "";
+        String stacktrace = "";
+        int position = MAGIC.length + 1;
+        while (position + 5 <= length) {
+            int type = buffer[position] & 0xFF;
+            int sectionLength = ((buffer[position + 1] & 0xFF) << 24) | ((buffer[position + 2] & 0xFF) << 16) |
+                    ((buffer[position + 3] & 0xFF) << 8) | (buffer[position + 4] & 0xFF);
+            position += 5;
+            if (sectionLength < 0) {
+                break;
+            }
+
+            int available = Math.min(sectionLength, length - position);
+            if (type == SECTION_HEADER) {
+                header = new String(buffer, position, available, "UTF-8");
+            } else if (type == SECTION_STACKTRACE) {
+                stacktrace = new String(buffer, position, available, "UTF-8");
+            }
+            if (available < sectionLength) {
+                break;
+            }
+            position += sectionLength;
+        }
+        return header + "\n" + stacktrace;
+    }
+
+    /**
+     * Returns whether the given file is a crash report in the single file
+     * format, as opposed to a stack trace file in the legacy format.
+     *
+     * @param file the file to check
+     * @return true if the file starts with the magic bytes
+     */
+    public static boolean isSingleFile(File file) {
+        DataInputStream dataInput = null;
+        try {
+            dataInput = new DataInputStream(new FileInputStream(file));
+            return readMagic(dataInput);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (dataInput != null) {
+                try {
+                    dataInput.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Locates the sections of a crash report file without reading their
+     * payloads, e.g. to stream them to the server.
+     *
+     * @param file the crash report file
+     * @return the sections by type or null if the file is in the legacy
+     * format
+     * @throws IOException if the file can't be read or has an unsupported
+     *                     version
+     */
+    public static Map<Integer, Section> readSections(File file) throws IOException {
+        long fileLength = file.length();
+        DataInputStream dataInput = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (!readMagic(dataInput)) {
+                return null;
+            }
+            checkVersion(dataInput.readUnsignedByte());
+
+            Map<Integer, Section> sections = new HashMap<Integer, Section>();
+            long offset = MAGIC.length + 1;
+            while (true) {
+                int type = dataInput.read();
+                if (type < 0) {
+                    break;
+                }
+
+                int length;
+                try {
+                    length = dataInput.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                offset += 5;
+                if (length < 0 || length > MAX_SECTION_LENGTH || offset + length > fileLength) {
+                    // Corrupt or truncated section, same as in read()
+                    break;
+                }
+                sections.put(type, new Section(offset, length));
+
+                long remaining = length;
+                while (remaining > 0) {
+                    long skipped = dataInput.skip(remaining);
+                    if (skipped <= 0) {
+                        break;
+                    }
+                    remaining -= skipped;
+                }
+                offset += length;
+            }
+            return sections;
+        } finally {
+            dataInput.close();
+        }
+    }
+
+    /**
+     * Reads the payload of a single section, e.g. the meta data of a report
+     * without its stack trace.
+     *
+     * @param file    the crash report file
+     * @param section the section as returned by readSections()
+     * @return the payload or null if section is null
+     * @throws IOException if the file can't be read
+     */
+    public static String readSection(File file, Section section) throws IOException {
+        if (section == null) {
+            return null;
+        }
+
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            byte[] payload = new byte[section.getLength()];
+            input.seek(section.getOffset());
+            input.readFully(payload);
+            return new String(payload, "UTF-8");
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Writes a section to a stream that already contains the magic bytes
+     * and version, e.g. to append meta data to a report. Null values are
+     * skipped.
+     *
+     * @param output the stream to write to
+     * @param type   the section type
+     * @param value  the payload
+     * @throws IOException if the stream can't be written
+     */
+    public static void writeSection(OutputStream output, int type, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+
+        byte[] payload = value.getBytes("UTF-8");
+        output.write(type);
+        output.write(new byte[]{(byte) (payload.length >>> 24), (byte) (payload.length >>> 16),
+                (byte) (payload.length >>> 8), (byte) payload.length});
+        output.write(payload);
+    }
+
+    private static void checkVersion(int version) throws IOException {
+        if (version > VERSION) {
+            throw new IOException("Unsupported crash report version " + version);
+        }
+    }
+
+    private static boolean startsWithMagic(byte[] buffer) {
+        for (int index = 0; index < MAGIC.length; index++) {
+            if (buffer[index] != MAGIC[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean readMagic(DataInputStream input) throws IOException {
+        for (byte expected : MAGIC) {
+            if (input.read() != expected) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes a crash report section by section.
+     */
+    public static class Writer {
+        private final DataOutputStream mOutput;
+
+        /**
+         * Creates a new writer and writes the magic bytes and version.
+         *
+         * @param output the stream to write to
+         * @throws IOException if the stream can't be written
+         */
+        public Writer(OutputStream output) throws IOException {
+            mOutput = new DataOutputStream(new BufferedOutputStream(output));
+            mOutput.write(MAGIC);
+            mOutput.writeByte(VERSION);
+        }
+
+        /**
+         * Writes a section. Null values are skipped.
+         *
+         * @param type  the section type
+         * @param value the payload
+         * @throws IOException if the stream can't be written
+         */
+        public void writeSection(int type, String value) throws IOException {
+            CrashReportFile.writeSection(mOutput, type, value);
+        }
+
+        /**
+         * Flushes and closes the stream.
+         *
+         * @throws IOException if the stream can't be written
+         */
+        public void close() throws IOException {
+            mOutput.close();
+        }
+    }
+
+    /**
+     * Position of a section payload in a crash report file.
+     */
+    public static class Section {
+        private final long mOffset;
+        private final int mLength;
+
+        Section(long offset, int length) {
+            mOffset = offset;
+            mLength = length;
+        }
+
+        public long getOffset() {
+            return mOffset;
+        }
+
+        public int getLength() {
+            return mLength;
+        }
+    }
+}
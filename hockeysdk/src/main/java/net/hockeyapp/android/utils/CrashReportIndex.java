@@ -0,0 +1,721 @@
+package net.hockeyapp.android.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import net.hockeyapp.android.Constants;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Persistent index of all crash reports in the files dir. The index keeps
+ * the state, retry count and size of every report, so the crash manager
+ * doesn't have to list the files dir or parse preference strings on every
+ * start.
+ *
+ * The index is stored as an append-only log: every change appends one line,
+ * later lines override earlier ones. The log is loaded once per process
+ * and compacted when it holds many outdated lines. If no log exists yet,
+ * it is created from the files dir and the preferences of older SDK
+ * versions.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class CrashReportIndex {
+
+    /**
+     * Name of the index file in the files dir.
+     */
+    public static final String FILENAME = "crashes.index";
+
+    /**
+     * The report was found, but not yet confirmed by the user.
+     */
+    public static final int STATE_PENDING = 0;
+
+    /**
+     * The report was confirmed by the user or should have been sent
+     * automatically.
+     */
+    public static final int STATE_CONFIRMED = 1;
+
+    private static final String RECORD_UPDATE = "+";
+    private static final String RECORD_REMOVE = "-";
+    private static final String SEPARATOR = "\t";
+
+    private static final String PREFERENCES_NAME = "HockeySDK";
+    private static final String PREFERENCES_CONFIRMED_KEY = "ConfirmedFilenames";
+    private static final String PREFERENCES_RETRY_PREFIX = "RETRY_COUNT: ";
+
+    private final Map<String, Entry> mEntries = new LinkedHashMap<String, Entry>();
+    private boolean mLoaded = false;
+    private int mModificationCount = 0;
+    private int mRecordCount = 0;
+
+    /**
+     * Private constructor prevents instantiation from other classes
+     */
+    private CrashReportIndex() {
+    }
+
+    /**
+     * CrashReportIndexHolder is loaded on the first execution of
+     * CrashReportIndex.getInstance() or the first access to
+     * CrashReportIndexHolder.INSTANCE, not before.
+     */
+    private static class CrashReportIndexHolder {
+        public static final CrashReportIndex INSTANCE = new CrashReportIndex();
+    }
+
+    /**
+     * Return the singleton.
+     *
+     * @return the singleton
+     */
+    public static CrashReportIndex getInstance() {
+        return CrashReportIndexHolder.INSTANCE;
+    }
+
+    /**
+     * Loads the index if it isn't loaded yet. If there is no index file,
+     * it is created from the stack traces in the files dir and the retry
+     * counters and confirmed filenames in the given context's preferences.
+     * Otherwise only the index file is read: reports get their final name
+     * after they were added to the index, so the files dir doesn't have to
+     * be scanned. Entries whose file is gone are dropped by resolve().
+     *
+     * @param context the context to use, may be null
+     */
+    public synchronized void load(Context context) {
+        if (mLoaded || Constants.FILES_PATH == null) {
+            return;
+        }
+
+        File file = getIndexFile();
+        if (file.exists()) {
+            readIndex(file);
+        } else {
+            migrate(context);
+        }
+        mLoaded = true;
+        mModificationCount++;
+    }
+
+    /**
+     * Returns the file a new report is written to before it is added, see
+     * add().
+     *
+     * @param filename the filename of the report
+     * @return the temporary file in the files dir
+     */
+    public static File getTempFile(String filename) {
+        return new File(Constants.FILES_PATH, filename + ".tmp");
+    }
+
+    /**
+     * Adds a new report in the single file format. The report is appended
+     * to the index first and then renamed to its final name, so every
+     * report in the files dir is known to the index. Only appends to the
+     * index file if it exists, so this is cheap to call from the exception
+     * handler.
+     *
+     * @param filename  the filename of the report
+     * @param file      the complete report, e.g. from getTempFile()
+     * @param timestamp the time of the crash
+     * @param fatal     whether the report is of an uncaught exception
+     * @return true if the report was renamed to its final name
+     */
+    public synchronized boolean add(String filename, File file, long timestamp, boolean fatal) {
+        if (!mLoaded && Constants.FILES_PATH != null && !getIndexFile().exists()) {
+            // Import existing reports first, they would be lost otherwise
+            load(null);
+        }
+
+        Entry entry = new Entry(filename, STATE_PENDING, 0, file.length(), timestamp, true);
+        entry.mFatal = fatal;
+        if (mLoaded) {
+            mEntries.put(filename, entry);
+            mModificationCount++;
+        }
+        append(entry.toRecord());
+
+        if (!file.renameTo(new File(Constants.FILES_PATH, filename))) {
+            Log.e(Constants.TAG, "Failed to rename crash report " + file);
+            if (mEntries.remove(filename) != null) {
+                mModificationCount++;
+            }
+            append(RECORD_REMOVE + SEPARATOR + filename);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks that the file of the given report exists before it is read.
+     * If the process died between adding a report and renaming it, the
+     * rename is completed. If the file is gone, e.g. because it was deleted
+     * by another process, the report is removed.
+     *
+     * @param filename the filename of the report
+     * @return true if the report exists
+     */
+    public synchronized boolean resolve(String filename) {
+        load(null);
+        if (!mEntries.containsKey(filename)) {
+            return false;
+        }
+
+        File file = new File(Constants.FILES_PATH, filename);
+        if (file.exists()) {
+            return true;
+        }
+        if (getTempFile(filename).renameTo(file)) {
+            Log.d(Constants.TAG, "Completed interrupted write of crash report " + filename);
+            return true;
+        }
+
+        Log.d(Constants.TAG, "Removing missing crash report " + filename + " from the index.");
+        remove(filename);
+        return false;
+    }
+
+    /**
+     * Removes the report with the given filename.
+     *
+     * @param filename the filename of the report
+     */
+    public synchronized void remove(String filename) {
+        load(null);
+        if (mEntries.remove(filename) != null) {
+            mModificationCount++;
+            append(RECORD_REMOVE + SEPARATOR + filename);
+            compactIfNeeded();
+
+            // Left over if the process died before the report was renamed
+            getTempFile(filename).delete();
+        }
+    }
+
+    /**
+     * Returns the entry for the given filename. The entry is a snapshot,
+     * later updates of the report don't change it.
+     *
+     * @param filename the filename of the report
+     * @return a copy of the entry or null if the report is unknown
+     */
+    public synchronized Entry get(String filename) {
+        load(null);
+        Entry entry = mEntries.get(filename);
+        return (entry != null) ? new Entry(entry) : null;
+    }
+
+    /**
+     * Returns the filenames of all reports, oldest first.
+     *
+     * @return an array of filenames
+     */
+    public synchronized String[] getFilenames() {
+        load(null);
+        return mEntries.keySet().toArray(new String[mEntries.size()]);
+    }
+
+    /**
+     * Returns the entries of all reports, oldest first. The entries are
+     * snapshots like the ones returned by get().
+     *
+     * @return a list of copies of the entries
+     */
+    public synchronized List<Entry> getEntries() {
+        load(null);
+        List<Entry> entries = new ArrayList<Entry>(mEntries.size());
+        for (Entry entry : mEntries.values()) {
+            entries.add(new Entry(entry));
+        }
+        return entries;
+    }
+
+    /**
+     * Returns a counter that changes whenever reports are added or removed
+     * or their timestamps change, e.g. to invalidate caches.
+     *
+     * @return the number of modifications since the process started
+     */
+    public synchronized int getModificationCount() {
+        load(null);
+        return mModificationCount;
+    }
+
+    /**
+     * Returns whether the index has reports that weren't confirmed yet.
+     *
+     * @return true if at least one report is pending
+     */
+    public synchronized boolean hasPendingReports() {
+        load(null);
+        for (Entry entry : mEntries.values()) {
+            if (entry.mState == STATE_PENDING) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks the given report as confirmed.
+     *
+     * @param filename the filename of the report
+     */
+    public synchronized void confirm(String filename) {
+        load(null);
+        Entry entry = mEntries.get(filename);
+        if (entry != null && entry.mState != STATE_CONFIRMED) {
+            entry.mState = STATE_CONFIRMED;
+            append(entry.toRecord());
+        }
+    }
+
+    /**
+     * Marks all reports as confirmed.
+     */
+    public synchronized void confirmAll() {
+        load(null);
+        for (Entry entry : mEntries.values()) {
+            if (entry.mState != STATE_CONFIRMED) {
+                entry.mState = STATE_CONFIRMED;
+                append(entry.toRecord());
+            }
+        }
+    }
+
+    /**
+     * Stores the fingerprint of the given report.
+     *
+     * @param filename    the filename of the report
+     * @param fingerprint the fingerprint, see CrashFingerprint
+     */
+    public synchronized void setFingerprint(String filename, String fingerprint) {
+        load(null);
+        Entry entry = mEntries.get(filename);
+        if (entry != null) {
+            entry.mFingerprint = fingerprint;
+            append(entry.toRecord());
+        }
+    }
+
+    /**
+     * Adds the occurrences of a duplicate report to the given report, which
+     * then covers the time span of both. Call it after the duplicate has
+     * been deleted, so an occurrence is never counted twice.
+     *
+     * @param filename       the filename of the report to keep
+     * @param duplicateEntry the entry of the deleted duplicate report
+     */
+    public synchronized void mergeOccurrences(String filename, Entry duplicateEntry) {
+        load(null);
+        Entry entry = mEntries.get(filename);
+        if (entry == null || duplicateEntry == null) {
+            return;
+        }
+
+        entry.mTimestamp = Math.min(entry.mTimestamp, duplicateEntry.mTimestamp);
+        entry.mLastSeen = Math.max(entry.mLastSeen, duplicateEntry.mLastSeen);
+        entry.mOccurrences += duplicateEntry.mOccurrences;
+        entry.mFatal |= duplicateEntry.mFatal;
+        mModificationCount++;
+        append(entry.toRecord());
+    }
+
+    /**
+     * Sets the earliest time of the next upload attempt of the given report.
+     *
+     * @param filename    the filename of the report
+     * @param nextAttempt the time in milliseconds since the epoch
+     */
+    public synchronized void setNextAttempt(String filename, long nextAttempt) {
+        load(null);
+        Entry entry = mEntries.get(filename);
+        if (entry != null) {
+            entry.mNextAttempt = nextAttempt;
+            append(entry.toRecord());
+        }
+    }
+
+    /**
+     * Increments the retry counter of the given report.
+     *
+     * @param filename the filename of the report
+     * @return the retry count before the increment, or -1 if the report is unknown
+     */
+    public synchronized int incrementRetryCount(String filename) {
+        load(null);
+        Entry entry = mEntries.get(filename);
+        if (entry == null) {
+            return -1;
+        }
+
+        int retryCount = entry.mRetryCount;
+        entry.mRetryCount++;
+        append(entry.toRecord());
+        return retryCount;
+    }
+
+    private File getIndexFile() {
+        return new File(Constants.FILES_PATH, FILENAME);
+    }
+
+    private void readIndex(File file) {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                mRecordCount++;
+                String[] fields = line.split(SEPARATOR);
+                if (fields.length >= 2 && RECORD_REMOVE.equals(fields[0])) {
+                    mEntries.remove(fields[1]);
+                } else if (RECORD_UPDATE.equals(fields[0])) {
+                    Entry entry = Entry.fromRecord(fields);
+                    if (entry != null) {
+                        Entry existing = mEntries.get(entry.mFilename);
+                        if (existing != null) {
+                            existing.update(entry);
+                        } else {
+                            mEntries.put(entry.mFilename, entry);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.e(Constants.TAG, "Failed to read crash report index.", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void migrate(Context context) {
+        Log.d(Constants.TAG, "Creating crash report index in: " + Constants.FILES_PATH);
+
+        String[] filenames = listStackTraces();
+
+        SharedPreferences preferences = null;
+        List<String> confirmedFilenames = new ArrayList<String>();
+        if (context != null) {
+            preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+            confirmedFilenames = Arrays.asList(preferences.getString(PREFERENCES_CONFIRMED_KEY, "").split("\\|"));
+        }
+
+        if (filenames != null) {
+            for (String filename : filenames) {
+                int state = confirmedFilenames.contains(filename) ? STATE_CONFIRMED : STATE_PENDING;
+                int retryCount = (preferences != null) ? preferences.getInt(PREFERENCES_RETRY_PREFIX + filename, 0) : 0;
+                mEntries.put(filename, createEntry(filename, state, retryCount));
+            }
+        }
+
+        if (compact() && preferences != null) {
+            // The index replaces the preferences, so remove all stale keys
+            SharedPreferences.Editor editor = preferences.edit();
+            editor.remove(PREFERENCES_CONFIRMED_KEY);
+            for (String key : preferences.getAll().keySet()) {
+                if (key.startsWith(PREFERENCES_RETRY_PREFIX)) {
+                    editor.remove(key);
+                }
+            }
+            editor.apply();
+        }
+    }
+
+    private static String[] listStackTraces() {
+        return new File(Constants.FILES_PATH + "/").list(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".stacktrace");
+            }
+        });
+    }
+
+    /**
+     * Creates the entry of a stack trace that was found in the files dir.
+     * The size of a report in the old format includes its meta files.
+     */
+    private static Entry createEntry(String filename, int state, int retryCount) {
+        File file = new File(Constants.FILES_PATH, filename);
+        boolean singleFile = CrashReportFile.isSingleFile(file);
+        long size = file.length();
+        if (!singleFile) {
+            for (String extension : new String[]{".user", ".contact", ".description"}) {
+                size += new File(Constants.FILES_PATH, filename.replace(".stacktrace", extension)).length();
+            }
+        }
+        return new Entry(filename, state, retryCount, size, file.lastModified(), singleFile);
+    }
+
+    private void compactIfNeeded() {
+        if (mRecordCount > 2 * mEntries.size() + 32) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the index file with one line per report.
+     */
+    private boolean compact() {
+        File file = getIndexFile();
+        File tempFile = new File(Constants.FILES_PATH, FILENAME + ".tmp");
+        OutputStream output = null;
+        try {
+            StringBuilder builder = new StringBuilder();
+            for (Entry entry : mEntries.values()) {
+                builder.append(entry.toRecord()).append('\n');
+            }
+
+            output = new FileOutputStream(tempFile);
+            output.write(builder.toString().getBytes("UTF-8"));
+            output.close();
+            output = null;
+
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Failed to rename " + tempFile);
+            }
+            mRecordCount = mEntries.size();
+            return true;
+        } catch (IOException e) {
+            Log.e(Constants.TAG, "Failed to write crash report index.", e);
+            return false;
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void append(String record) {
+        if (Constants.FILES_PATH == null) {
+            return;
+        }
+
+        OutputStream output = null;
+        try {
+            output = new FileOutputStream(getIndexFile(), true);
+            output.write((record + "\n").getBytes("UTF-8"));
+            mRecordCount++;
+        } catch (IOException e) {
+            Log.e(Constants.TAG, "Failed to update crash report index.", e);
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * State of a single crash report. Entries handed out by the index are
+     * snapshots and are never modified.
+     */
+    public static class Entry {
+        private final String mFilename;
+        private int mState;
+        private int mRetryCount;
+        private long mSize;
+        private long mTimestamp;
+        private boolean mSingleFile;
+        private String mFingerprint;
+        private int mOccurrences = 1;
+        private long mLastSeen;
+        private long mNextAttempt;
+        private boolean mFatal;
+
+        private Entry(String filename, int state, int retryCount, long size, long timestamp, boolean singleFile) {
+            mFilename = filename;
+            mState = state;
+            mRetryCount = retryCount;
+            mSize = size;
+            mTimestamp = timestamp;
+            mSingleFile = singleFile;
+            mLastSeen = timestamp;
+        }
+
+        private Entry(Entry entry) {
+            mFilename = entry.mFilename;
+            update(entry);
+        }
+
+        public String getFilename() {
+            return mFilename;
+        }
+
+        public boolean isConfirmed() {
+            return mState == STATE_CONFIRMED;
+        }
+
+        public int getRetryCount() {
+            return mRetryCount;
+        }
+
+        public long getSize() {
+            return mSize;
+        }
+
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+
+        /**
+         * Returns whether the report uses the single file format. Reports
+         * in the legacy format may have separate meta data files.
+         *
+         * @return true if the report has no meta data files
+         */
+        public boolean isSingleFile() {
+            return mSingleFile;
+        }
+
+        /**
+         * Returns the fingerprint of the report, if it was computed yet.
+         *
+         * @return the fingerprint or null
+         */
+        public String getFingerprint() {
+            return mFingerprint;
+        }
+
+        /**
+         * Returns how often the crash occurred, i.e. 1 plus the number of
+         * duplicates merged into this report.
+         *
+         * @return the number of occurrences
+         */
+        public int getOccurrences() {
+            return mOccurrences;
+        }
+
+        /**
+         * Returns the time of the last occurrence. The time of the first
+         * occurrence is the timestamp.
+         *
+         * @return the time of the last occurrence
+         */
+        public long getLastSeen() {
+            return mLastSeen;
+        }
+
+        /**
+         * Returns the earliest time of the next upload attempt. Failed
+         * uploads are retried with exponential backoff.
+         *
+         * @return the time in milliseconds since the epoch, 0 if the report
+         * can be sent right away
+         */
+        public long getNextAttempt() {
+            return mNextAttempt;
+        }
+
+        /**
+         * Returns whether the report is of an uncaught exception that
+         * killed the process. Handled exceptions, stalls and unclean
+         * sessions aren't fatal, neither are reports from before the index
+         * recorded it.
+         *
+         * @return true if the report is of a fatal crash
+         */
+        public boolean isFatal() {
+            return mFatal;
+        }
+
+        private void update(Entry entry) {
+            mState = entry.mState;
+            mRetryCount = entry.mRetryCount;
+            mSize = entry.mSize;
+            mTimestamp = entry.mTimestamp;
+            mSingleFile = entry.mSingleFile;
+            mFingerprint = entry.mFingerprint;
+            mOccurrences = entry.mOccurrences;
+            mLastSeen = entry.mLastSeen;
+            mNextAttempt = entry.mNextAttempt;
+            mFatal = entry.mFatal;
+        }
+
+        private String toRecord() {
+            return RECORD_UPDATE + SEPARATOR + mFilename + SEPARATOR + mState + SEPARATOR + mRetryCount +
+                    SEPARATOR + mSize + SEPARATOR + mTimestamp + SEPARATOR + (mSingleFile ? 1 : 0) +
+                    SEPARATOR + (mFingerprint != null ? mFingerprint : "") + SEPARATOR + mOccurrences +
+                    SEPARATOR + mLastSeen + SEPARATOR + mNextAttempt + SEPARATOR + (mFatal ? 1 : 0);
+        }
+
+        private static Entry fromRecord(String[] fields) {
+            if (fields.length < 6) {
+                return null;
+            }
+
+            try {
+                boolean singleFile = (fields.length > 6) && "1".equals(fields[6]);
+                Entry entry = new Entry(fields[1], Integer.parseInt(fields[2]), Integer.parseInt(fields[3]),
+                        Long.parseLong(fields[4]), Long.parseLong(fields[5]), singleFile);
+                if (fields.length > 9) {
+                    entry.mFingerprint = (fields[7].length() > 0) ? fields[7] : null;
+                    entry.mOccurrences = Integer.parseInt(fields[8]);
+                    entry.mLastSeen = Long.parseLong(fields[9]);
+                }
+                if (fields.length > 10) {
+                    entry.mNextAttempt = Long.parseLong(fields[10]);
+                }
+                if (fields.length > 11) {
+                    entry.mFatal = "1".equals(fields[11]);
+                }
+                return entry;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package net.hockeyapp.android.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import net.hockeyapp.android.Constants;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Triggers retries of failed crash uploads, either when the next upload
+ * attempt is due or when the device regains network connectivity. The
+ * retry callback always runs on the main thread.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class CrashRetryScheduler {
+
+    private final Handler mHandler;
+    private final Runnable mRetry;
+    private final Runnable mTimer;
+    private BroadcastReceiver mReceiver;
+    private long mScheduledTime;
+
+    /**
+     * Creates a new scheduler.
+     *
+     * @param retry the callback that schedules the pending uploads
+     */
+    public CrashRetryScheduler(Runnable retry) {
+        mHandler = new Handler(Looper.getMainLooper());
+        mRetry = retry;
+        mTimer = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (CrashRetryScheduler.this) {
+                    mScheduledTime = 0;
+                }
+                mRetry.run();
+            }
+        };
+    }
+
+    /**
+     * Runs the retry callback at the given time. If an earlier retry is
+     * already scheduled, it is kept.
+     *
+     * @param time the time in milliseconds since the epoch
+     */
+    public synchronized void scheduleAt(long time) {
+        if (mScheduledTime != 0 && mScheduledTime <= time) {
+            return;
+        }
+
+        long delay = Math.max(time - System.currentTimeMillis(), 0);
+        Log.d(Constants.TAG, "Retrying crash uploads in " + (delay / 1000) + " seconds.");
+        mHandler.removeCallbacks(mTimer);
+        mHandler.postDelayed(mTimer, delay);
+        mScheduledTime = time;
+    }
+
+    /**
+     * Runs the retry callback whenever the device connects to a network.
+     * The receiver is registered with the application context, so it is
+     * only registered once per process.
+     *
+     * @param context the context to use
+     */
+    public synchronized void registerConnectivityReceiver(Context context) {
+        if (mReceiver != null) {
+            return;
+        }
+
+        mReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (isInitialStickyBroadcast() || intent.getBooleanExtra(ConnectivityManager.EXTRA_NO_CONNECTIVITY, false)) {
+                    return;
+                }
+                if (Util.isConnectedToNetwork(context)) {
+                    Log.d(Constants.TAG, "Network connected, retrying crash uploads.");
+                    mRetry.run();
+                }
+            }
+        };
+        context.getApplicationContext().registerReceiver(mReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+}
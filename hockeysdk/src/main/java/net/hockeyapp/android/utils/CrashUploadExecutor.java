@@ -0,0 +1,181 @@
+package net.hockeyapp.android.utils;
+
+import android.os.Process;
+import android.util.Log;
+
+import net.hockeyapp.android.Constants;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Bounded executor for crash report uploads. Runs a small number of
+ * low priority worker threads that are shut down when idle. Every upload
+ * is registered with the keys of the reports it handles, so a report that
+ * is already queued or in flight is never scheduled twice.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class CrashUploadExecutor {
+
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadPoolExecutor mExecutor;
+    private final AtomicInteger mInFlight = new AtomicInteger();
+    private final Set<String> mScheduledKeys = new HashSet<String>();
+
+    /**
+     * Creates a new executor.
+     *
+     * @param maxThreads    the number of uploads that can run in parallel
+     * @param queueCapacity the max number of uploads waiting for a worker
+     */
+    public CrashUploadExecutor(int maxThreads, int queueCapacity) {
+        maxThreads = Math.max(1, maxThreads);
+        mExecutor = new ThreadPoolExecutor(maxThreads, maxThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(Math.max(1, queueCapacity)), new UploadThreadFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Changes the number of uploads that can run in parallel.
+     *
+     * @param maxThreads the number of worker threads
+     */
+    public void setMaxThreads(int maxThreads) {
+        maxThreads = Math.max(1, maxThreads);
+        if (maxThreads > mExecutor.getMaximumPoolSize()) {
+            mExecutor.setMaximumPoolSize(maxThreads);
+            mExecutor.setCorePoolSize(maxThreads);
+        } else if (maxThreads < mExecutor.getMaximumPoolSize()) {
+            mExecutor.setCorePoolSize(maxThreads);
+            mExecutor.setMaximumPoolSize(maxThreads);
+        }
+    }
+
+    /**
+     * Returns whether an upload for the given key is queued or in flight.
+     *
+     * @param key the key of a crash report, usually its filename
+     * @return true if the report is already scheduled
+     */
+    public boolean isScheduled(String key) {
+        synchronized (mScheduledKeys) {
+            return mScheduledKeys.contains(key);
+        }
+    }
+
+    /**
+     * Schedules an upload. The upload is rejected if any of its keys is
+     * already scheduled or if the queue is full.
+     *
+     * @param keys   the keys of all crash reports handled by the upload
+     * @param upload the upload to run on a worker thread
+     * @return true if the upload was scheduled
+     */
+    public boolean execute(final Collection<String> keys, final Runnable upload) {
+        synchronized (mScheduledKeys) {
+            for (String key : keys) {
+                if (mScheduledKeys.contains(key)) {
+                    return false;
+                }
+            }
+            mScheduledKeys.addAll(keys);
+        }
+
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mInFlight.incrementAndGet();
+                    try {
+                        upload.run();
+                    } finally {
+                        mInFlight.decrementAndGet();
+                        release(keys);
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            Log.w(Constants.TAG, "Crash upload queue is full, reports will be sent later.");
+            release(keys);
+            return false;
+        }
+    }
+
+    /**
+     * Returns the number of uploads waiting for a worker thread.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return mExecutor.getQueue().size();
+    }
+
+    /**
+     * Returns the number of uploads that are currently running.
+     *
+     * @return the number of uploads in flight
+     */
+    public int getInFlightCount() {
+        return mInFlight.get();
+    }
+
+    private void release(Collection<String> keys) {
+        synchronized (mScheduledKeys) {
+            mScheduledKeys.removeAll(keys);
+        }
+    }
+
+    private static class UploadThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "HockeyApp-CrashUpload-" + mCount.incrementAndGet());
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+}
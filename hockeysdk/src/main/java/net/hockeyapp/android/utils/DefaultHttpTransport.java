@@ -0,0 +1,125 @@
+package net.hockeyapp.android.utils;
+
+import android.os.Build;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * <h3>Description</h3>
+ *
+ * HTTP transport based on HttpURLConnection. It has no connection pool of
+ * its own, pooling is delegated to HttpURLConnection: the platform keeps
+ * idle keep-alive connections per host, up to the http.maxConnections
+ * system property (5 by default). A connection only goes back to that
+ * pool if its response body was read to the end and closed, while
+ * disconnect() closes the socket. releaseConnection therefore drains
+ * small remaining responses instead of disconnecting, so consecutive
+ * requests to HockeyApp share one connection. Connection reuse is broken
+ * on Android 2.3 and below, where every request closes its connection.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class DefaultHttpTransport implements HttpTransport {
+
+    /**
+     * Max number of unread response bytes that are drained to keep a
+     * connection alive. Larger responses are cut off by disconnecting.
+     */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    @Override
+    public HttpURLConnection openConnection(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestProperty("User-Agent", "HockeySDK/Android");
+
+        // Connection bug workaround for SDK<=2.x
+        if (!isKeepAliveSupported()) {
+            connection.setRequestProperty("Connection", "close");
+        }
+        return connection;
+    }
+
+    @Override
+    public void releaseConnection(HttpURLConnection connection, int responseCode) {
+        if (connection == null) {
+            return;
+        }
+
+        // Without a response, the connection is in an unknown state
+        if (responseCode < 0 || !isKeepAliveSupported() || !drain(connection, responseCode)) {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Reads the rest of the response and closes its stream. Returns false
+     * if the connection has to be closed, e.g. because the response is too
+     * large.
+     */
+    private static boolean drain(HttpURLConnection connection, int responseCode) {
+        InputStream input;
+        try {
+            input = (responseCode >= HttpURLConnection.HTTP_BAD_REQUEST) ? connection.getErrorStream() : connection.getInputStream();
+        } catch (IOException e) {
+            return false;
+        }
+
+        if (input == null) {
+            return true;
+        }
+
+        try {
+            byte[] buffer = new byte[4096];
+            int drained = 0;
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                drained += count;
+                if (drained > MAX_DRAIN_BYTES) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // Stream was already closed by the caller, which either pooled
+            // or closed the connection
+            return true;
+        } finally {
+            try {
+                input.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static boolean isKeepAliveSupported() {
+        return Build.VERSION.SDK_INT > Build.VERSION_CODES.GINGERBREAD;
+    }
+}
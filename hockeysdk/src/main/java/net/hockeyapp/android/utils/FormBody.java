@@ -0,0 +1,278 @@
+package net.hockeyapp.android.utils;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Request body in the application/x-www-form-urlencoded format whose values
+ * are composed of strings and regions of files. File content is encoded
+ * while it is written, so the body never has to be held in memory. The
+ * encoding matches URLEncoder with UTF-8, and the content length is known
+ * before the body is written, e.g. for fixed length streaming mode.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class FormBody implements RequestBody {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final byte[] HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+
+    private final List<Field> mFields = new ArrayList<Field>();
+
+    /**
+     * Adds a field with a string value. Null is sent as empty value.
+     *
+     * @param name  the name of the field
+     * @param value the value of the field
+     * @return this body
+     */
+    public FormBody addField(String name, String value) {
+        addField(name).append(value);
+        return this;
+    }
+
+    /**
+     * Adds a field whose value is composed by appending to the returned
+     * field.
+     *
+     * @param name the name of the field
+     * @return the new field
+     */
+    public Field addField(String name) {
+        Field field = new Field(name);
+        mFields.add(field);
+        return field;
+    }
+
+    /**
+     * Returns the number of bytes written by writeTo.
+     *
+     * @return the length of the encoded body
+     * @throws IOException if a file can't be read
+     */
+    @Override
+    public long getContentLength() throws IOException {
+        long length = Math.max(mFields.size() - 1, 0);
+        for (Field field : mFields) {
+            length += field.getEncodedLength();
+        }
+        return length;
+    }
+
+    /**
+     * Writes the encoded body to the given stream.
+     *
+     * @param output the stream to write to
+     * @throws IOException if a file can't be read or the stream can't be
+     *                     written
+     */
+    @Override
+    public void writeTo(OutputStream output) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        byte[] encoded = new byte[BUFFER_SIZE];
+        for (int index = 0; index < mFields.size(); index++) {
+            if (index > 0) {
+                output.write('&');
+            }
+            mFields.get(index).writeTo(output, buffer, encoded);
+        }
+    }
+
+    private static boolean isUnreserved(int b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                || b == '.' || b == '-' || b == '*' || b == '_';
+    }
+
+    private static long getEncodedLength(byte[] bytes, int count) {
+        long length = 0;
+        for (int index = 0; index < count; index++) {
+            int b = bytes[index] & 0xFF;
+            length += (isUnreserved(b) || b == ' ') ? 1 : 3;
+        }
+        return length;
+    }
+
+    /**
+     * Encodes the given bytes into the encoded buffer and writes it to the
+     * stream whenever it is full, so the stream gets a few large writes
+     * instead of one per byte, which matters for a compressing stream.
+     */
+    private static void encode(byte[] bytes, int count, OutputStream output, byte[] encoded) throws IOException {
+        int position = 0;
+        for (int index = 0; index < count; index++) {
+            if (position > encoded.length - 3) {
+                output.write(encoded, 0, position);
+                position = 0;
+            }
+
+            int b = bytes[index] & 0xFF;
+            if (isUnreserved(b)) {
+                encoded[position++] = (byte) b;
+            } else if (b == ' ') {
+                encoded[position++] = '+';
+            } else {
+                encoded[position++] = '%';
+                encoded[position++] = HEX_DIGITS[b >> 4];
+                encoded[position++] = HEX_DIGITS[b & 0x0F];
+            }
+        }
+        output.write(encoded, 0, position);
+    }
+
+    private static byte[] getBytes(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * A field of the body. Its value is the concatenation of all appended
+     * strings and file regions.
+     */
+    public static class Field {
+        private final byte[] mName;
+        private final List<Object> mSegments = new ArrayList<Object>();
+
+        Field(String name) {
+            mName = getBytes(name);
+        }
+
+        /**
+         * Appends a string to the value. Null is ignored.
+         *
+         * @param value the string to append
+         * @return this field
+         */
+        public Field append(String value) {
+            if (value != null) {
+                mSegments.add(getBytes(value));
+            }
+            return this;
+        }
+
+        /**
+         * Appends a region of a file to the value. The file is read when
+         * the body is measured or written.
+         *
+         * @param file   the file to read
+         * @param offset the position of the first byte
+         * @param length the number of bytes
+         * @return this field
+         */
+        public Field append(File file, long offset, long length) {
+            if (length > 0) {
+                mSegments.add(new FileRegion(file, offset, length));
+            }
+            return this;
+        }
+
+        private long getEncodedLength() throws IOException {
+            long length = FormBody.getEncodedLength(mName, mName.length) + 1;
+            for (Object segment : mSegments) {
+                if (segment instanceof byte[]) {
+                    byte[] bytes = (byte[]) segment;
+                    length += FormBody.getEncodedLength(bytes, bytes.length);
+                } else {
+                    length += ((FileRegion) segment).process(null, new byte[BUFFER_SIZE], null);
+                }
+            }
+            return length;
+        }
+
+        private void writeTo(OutputStream output, byte[] buffer, byte[] encoded) throws IOException {
+            encode(mName, mName.length, output, encoded);
+            output.write('=');
+            for (Object segment : mSegments) {
+                if (segment instanceof byte[]) {
+                    byte[] bytes = (byte[]) segment;
+                    encode(bytes, bytes.length, output, encoded);
+                } else {
+                    ((FileRegion) segment).process(output, buffer, encoded);
+                }
+            }
+        }
+    }
+
+    private static class FileRegion {
+        private final File mFile;
+        private final long mOffset;
+        private final long mLength;
+
+        FileRegion(File file, long offset, long length) {
+            mFile = file;
+            mOffset = offset;
+            mLength = length;
+        }
+
+        /**
+         * Reads the region and encodes it to the given stream, or only
+         * measures it if the stream is null. Returns the encoded length.
+         */
+        long process(OutputStream output, byte[] buffer, byte[] encoded) throws IOException {
+            InputStream input = new FileInputStream(mFile);
+            try {
+                long skip = mOffset;
+                while (skip > 0) {
+                    long skipped = input.skip(skip);
+                    if (skipped <= 0) {
+                        throw new EOFException("Unexpected end of " + mFile.getName());
+                    }
+                    skip -= skipped;
+                }
+
+                long encodedLength = 0;
+                long remaining = mLength;
+                while (remaining > 0) {
+                    int count = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (count < 0) {
+                        throw new EOFException("Unexpected end of " + mFile.getName());
+                    }
+                    if (output != null) {
+                        encode(buffer, count, output, encoded);
+                    }
+                    encodedLength += FormBody.getEncodedLength(buffer, count);
+                    remaining -= count;
+                }
+                return encodedLength;
+            } finally {
+                input.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package net.hockeyapp.android.utils;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Opens and releases all HTTP connections of the SDK. The default
+ * implementation is DefaultHttpTransport; apps can plug in their own,
+ * e.g. a tuned client or an in-memory transport for tests, with
+ * HttpTransports.setDefault.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public interface HttpTransport {
+
+    /**
+     * Opens a connection to the given URL with the SDK's default request
+     * headers. The connection is not connected yet, so callers can still
+     * set the request method, headers and body.
+     *
+     * @param url the URL to connect to
+     * @return the new connection
+     * @throws IOException if the connection can't be opened
+     */
+    HttpURLConnection openConnection(URL url) throws IOException;
+
+    /**
+     * Releases a connection after its response was handled. Called instead
+     * of disconnect, so the transport can keep the underlying connection
+     * alive for the next request to the same host.
+     *
+     * @param connection   the connection, may be null
+     * @param responseCode the status code of the response or -1 if no
+     *                     response was received, e.g. because the request
+     *                     failed
+     */
+    void releaseConnection(HttpURLConnection connection, int responseCode);
+}
@@ -0,0 +1,91 @@
+package net.hockeyapp.android.utils;
+
+import net.hockeyapp.android.listeners.NetworkObserver;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Holds the HTTP transport used by all managers and tasks of the SDK and
+ * the observer of their requests.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class HttpTransports {
+
+    private static volatile HttpTransport sTransport = null;
+    private static volatile NetworkObserver sObserver = null;
+
+    private HttpTransports() {
+    }
+
+    /**
+     * DefaultTransportHolder is loaded on the first execution of
+     * HttpTransports.getDefault() without a custom transport, not before.
+     */
+    private static class DefaultTransportHolder {
+        public static final HttpTransport INSTANCE = new DefaultHttpTransport();
+    }
+
+    /**
+     * Returns the transport set with setDefault or the built-in one.
+     *
+     * @return the transport for all SDK requests
+     */
+    public static HttpTransport getDefault() {
+        HttpTransport transport = sTransport;
+        return (transport != null) ? transport : DefaultTransportHolder.INSTANCE;
+    }
+
+    /**
+     * Replaces the transport for all SDK requests that start afterwards.
+     *
+     * @param transport the new transport or null for the built-in one
+     */
+    public static void setDefault(HttpTransport transport) {
+        sTransport = transport;
+    }
+
+    /**
+     * Returns the observer set with setObserver.
+     *
+     * @return the observer or null if none is set
+     */
+    public static NetworkObserver getObserver() {
+        return sObserver;
+    }
+
+    /**
+     * Sets the observer for all SDK requests that start afterwards. The
+     * requests are only measured while an observer is set.
+     *
+     * @param observer the observer or null to stop observing
+     */
+    public static void setObserver(NetworkObserver observer) {
+        sObserver = observer;
+    }
+}
@@ -1,16 +1,14 @@
 package net.hockeyapp.android.utils;
 
+import android.content.ContentResolver;
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.net.Uri;
-import android.os.Build;
 import android.text.TextUtils;
 
-import java.io.BufferedOutputStream;
-import java.io.BufferedWriter;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.URL;
@@ -63,8 +61,12 @@ public class HttpURLConnectionBuilder {
 
     private String mRequestMethod;
     private String mRequestBody;
-    private SimpleMultipartEntity mMultipartEntity;
+    private RequestBody mStreamingBody;
     private int mTimeout = DEFAULT_TIMEOUT;
+    private boolean mCompressRequestBody;
+    private boolean mAcceptCompression;
+    private RequestBodyWriter mBodyWriter;
+    private RequestTrace mTrace;
 
     private final Map<String, String> mHeaders;
 
@@ -94,31 +96,63 @@ public class HttpURLConnectionBuilder {
         return this;
     }
 
-    public HttpURLConnectionBuilder writeMultipartData(Map<String, String> fields, Context context, List<Uri> attachmentUris) {
-        try {
-            mMultipartEntity = new SimpleMultipartEntity();
-            mMultipartEntity.writeFirstBoundaryIfNeeds();
+    /**
+     * Sets a form body that is streamed to the connection with fixed length
+     * streaming mode instead of being buffered in memory.
+     */
+    public HttpURLConnectionBuilder writeFormFields(FormBody formBody) {
+        mStreamingBody = formBody;
+        setHeader("Content-Type", "application/x-www-form-urlencoded");
+        return this;
+    }
 
-            for (String key : fields.keySet()) {
-                mMultipartEntity.addPart(key, fields.get(key));
-            }
+    /**
+     * Sets a multipart body with the given fields and attachments. The
+     * attachments are streamed from the content resolver when the request
+     * is built, not copied into memory.
+     */
+    public HttpURLConnectionBuilder writeMultipartData(Map<String, String> fields, Context context, List<Uri> attachmentUris) {
+        MultipartBody multipartBody = new MultipartBody();
+        for (String key : fields.keySet()) {
+            multipartBody.addPart(key, fields.get(key));
+        }
 
-            for (int i = 0; i < attachmentUris.size(); i++) {
-                Uri attachmentUri = attachmentUris.get(i);
-                boolean lastFile = (i == attachmentUris.size() - 1);
+        ContentResolver contentResolver = context.getContentResolver();
+        for (int i = 0; i < attachmentUris.size(); i++) {
+            Uri attachmentUri = attachmentUris.get(i);
+            String filename = attachmentUri.getLastPathSegment();
+            multipartBody.addPart("attachment" + i, filename, "application/octet-stream", new UriSource(contentResolver, attachmentUri));
+        }
 
-                InputStream input = context.getContentResolver().openInputStream(attachmentUri);
-                String filename = attachmentUri.getLastPathSegment();
-                mMultipartEntity.addPart("attachment" + i, filename, input, lastFile);
-            }
-            mMultipartEntity.writeLastBoundaryIfNeeds();
+        return writeMultipartData(multipartBody);
+    }
 
-            setHeader("Content-Type", "multipart/form-data; boundary=" + mMultipartEntity.getBoundary());
+    /**
+     * Sets a multipart body that is streamed to the connection with fixed
+     * length streaming mode instead of being buffered in memory.
+     */
+    public HttpURLConnectionBuilder writeMultipartData(MultipartBody multipartBody) {
+        mStreamingBody = multipartBody;
+        setHeader("Content-Type", multipartBody.getContentType());
+        return this;
+    }
 
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    /**
+     * Sends the request body compressed with gzip. The server has to support
+     * "Content-Encoding: gzip" for requests.
+     */
+    public HttpURLConnectionBuilder setCompressRequestBody(boolean compress) {
+        mCompressRequestBody = compress;
+        return this;
+    }
 
+    /**
+     * Asks the server for a compressed response. Only set this if the
+     * response is read with ResponseBodyReader.readString, which
+     * decompresses it; the platform doesn't if Accept-Encoding is set.
+     */
+    public HttpURLConnectionBuilder setAcceptCompression(boolean acceptCompression) {
+        mAcceptCompression = acceptCompression;
         return this;
     }
 
@@ -130,6 +164,15 @@ public class HttpURLConnectionBuilder {
         return this;
     }
 
+    /**
+     * Traces the request. For requests with a body, build() marks the
+     * connect and adds the sent bytes; everything else is up to the caller.
+     */
+    public HttpURLConnectionBuilder setTrace(RequestTrace trace) {
+        mTrace = trace;
+        return this;
+    }
+
     public HttpURLConnectionBuilder setHeader(String name, String value) {
         mHeaders.put(name, value);
         return this;
@@ -147,13 +190,12 @@ public class HttpURLConnectionBuilder {
         HttpURLConnection connection;
         try {
             URL url = new URL(mUrlString);
-            connection = (HttpURLConnection) url.openConnection();
+            connection = HttpTransports.getDefault().openConnection(url);
 
             connection.setConnectTimeout(mTimeout);
             connection.setReadTimeout(mTimeout);
-
-            if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.GINGERBREAD) {
-                connection.setRequestProperty("Connection", "close");
+            if (mAcceptCompression) {
+                ResponseBodyReader.acceptCompression(connection);
             }
 
             if (!TextUtils.isEmpty(mRequestMethod)) {
@@ -167,20 +209,22 @@ public class HttpURLConnectionBuilder {
                 connection.setRequestProperty(name, mHeaders.get(name));
             }
 
+            mBodyWriter = new RequestBodyWriter(mCompressRequestBody);
+
             if (!TextUtils.isEmpty(mRequestBody)) {
-                OutputStream outputStream = connection.getOutputStream();
-                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream, DEFAULT_CHARSET));
-                writer.write(mRequestBody);
-                writer.flush();
-                writer.close();
+                mBodyWriter.prepare(connection);
+                connect(connection);
+                mBodyWriter.write(connection, mRequestBody.getBytes(DEFAULT_CHARSET));
+            }
+
+            if (mStreamingBody != null) {
+                mBodyWriter.prepare(connection, mStreamingBody.getContentLength());
+                connect(connection);
+                mBodyWriter.write(connection, mStreamingBody);
             }
 
-            if (mMultipartEntity != null) {
-                connection.setRequestProperty("Content-Length", String.valueOf(mMultipartEntity.getContentLength()));
-                BufferedOutputStream outputStream = new BufferedOutputStream(connection.getOutputStream());
-                outputStream.write(mMultipartEntity.getOutputStream().toByteArray());
-                outputStream.flush();
-                outputStream.close();
+            if (mTrace != null) {
+                mTrace.addRequestBytes(mBodyWriter.getSentSize());
             }
 
         } catch (IOException e) {
@@ -189,6 +233,33 @@ public class HttpURLConnectionBuilder {
         return connection;
     }
 
+    /**
+     * Connects before the body is written, so the trace can tell the
+     * connect from the upload.
+     */
+    private void connect(HttpURLConnection connection) throws IOException {
+        connection.connect();
+        if (mTrace != null) {
+            mTrace.connected();
+        }
+    }
+
+    /**
+     * Returns the size of the request body before compression. Only valid
+     * after build() was called.
+     */
+    public long getRawBodySize() {
+        return mBodyWriter != null ? mBodyWriter.getRawSize() : 0;
+    }
+
+    /**
+     * Returns the size of the request body that was sent, i.e. after
+     * compression if enabled. Only valid after build() was called.
+     */
+    public long getSentBodySize() {
+        return mBodyWriter != null ? mBodyWriter.getSentSize() : 0;
+    }
+
     private static String getFormString(Map<String, String> params, String charset) throws UnsupportedEncodingException {
         List<String> protoList = new ArrayList<String>();
         for (String key : params.keySet()) {
@@ -200,4 +271,71 @@ public class HttpURLConnectionBuilder {
         return TextUtils.join("&", protoList);
     }
 
+    /**
+     * Attachment from a content resolver. The length is taken from the
+     * file descriptor or, if the provider doesn't know it, counted by
+     * reading the stream once.
+     */
+    private static class UriSource implements MultipartBody.Source {
+        private final ContentResolver mContentResolver;
+        private final Uri mUri;
+        private long mLength = -1;
+
+        UriSource(ContentResolver contentResolver, Uri uri) {
+            mContentResolver = contentResolver;
+            mUri = uri;
+        }
+
+        @Override
+        public long getLength() throws IOException {
+            if (mLength < 0) {
+                mLength = getDescriptorLength();
+            }
+            if (mLength < 0) {
+                mLength = countBytes();
+            }
+            return mLength;
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            InputStream input = mContentResolver.openInputStream(mUri);
+            if (input == null) {
+                throw new FileNotFoundException("Can't open " + mUri);
+            }
+            return input;
+        }
+
+        private long getDescriptorLength() {
+            AssetFileDescriptor descriptor = null;
+            try {
+                descriptor = mContentResolver.openAssetFileDescriptor(mUri, "r");
+                return (descriptor != null) ? descriptor.getLength() : AssetFileDescriptor.UNKNOWN_LENGTH;
+            } catch (Exception e) {
+                return AssetFileDescriptor.UNKNOWN_LENGTH;
+            } finally {
+                if (descriptor != null) {
+                    try {
+                        descriptor.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }
+
+        private long countBytes() throws IOException {
+            InputStream input = open();
+            try {
+                byte[] buffer = new byte[8 * 1024];
+                long length = 0;
+                int count;
+                while ((count = input.read(buffer)) != -1) {
+                    length += count;
+                }
+                return length;
+            } finally {
+                input.close();
+            }
+        }
+    }
 }
@@ -0,0 +1,377 @@
+package net.hockeyapp.android.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Multipart form body that is streamed to the connection. File parts are
+ * not copied into memory: the exact length is computed from the part
+ * headers and the content lengths, and the content of every file part is
+ * piped from its source when the body is written.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class MultipartBody implements RequestBody {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final char[] BOUNDARY_CHARS = "-_1234567890abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final String mBoundary;
+    private final List<Part> mParts = new ArrayList<Part>();
+
+    /**
+     * Creates a body with a random boundary.
+     */
+    public MultipartBody() {
+        this(createBoundary());
+    }
+
+    /**
+     * Creates a body with the given boundary.
+     *
+     * @param boundary a string that occurs in none of the parts
+     */
+    public MultipartBody(String boundary) {
+        mBoundary = boundary;
+    }
+
+    public String getBoundary() {
+        return mBoundary;
+    }
+
+    public String getContentType() {
+        return "multipart/form-data; boundary=" + mBoundary;
+    }
+
+    /**
+     * Adds a text part. Null is sent as empty value.
+     *
+     * @param name  the name of the field
+     * @param value the value of the field
+     * @return this body
+     */
+    public MultipartBody addPart(String name, String value) {
+        String headers = "Content-Disposition: form-data; name=\"" + name + "\"\r\n" +
+                "Content-Type: text/plain; charset=UTF-8\r\n" +
+                "Content-Transfer-Encoding: 8bit\r\n\r\n";
+        mParts.add(new Part(getBytes(headers), new ByteArraySource(getBytes(value != null ? value : ""))));
+        return this;
+    }
+
+    /**
+     * Adds a file part with content from memory.
+     *
+     * @param name        the name of the field
+     * @param fileName    the name of the file
+     * @param contentType the MIME type of the content
+     * @param content     the content
+     * @return this body
+     */
+    public MultipartBody addPart(String name, String fileName, String contentType, byte[] content) {
+        return addPart(name, fileName, contentType, new ByteArraySource(content));
+    }
+
+    /**
+     * Adds a file part whose content is read from the source when the
+     * body is written.
+     *
+     * @param name        the name of the field
+     * @param fileName    the name of the file
+     * @param contentType the MIME type of the content
+     * @param source      the source of the content
+     * @return this body
+     */
+    public MultipartBody addPart(String name, String fileName, String contentType, Source source) {
+        String headers = "Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + fileName + "\"\r\n" +
+                "Content-Type: " + contentType + "\r\n" +
+                "Content-Transfer-Encoding: binary\r\n\r\n";
+        mParts.add(new Part(getBytes(headers), source));
+        return this;
+    }
+
+    /**
+     * Returns a source that reads the given region of a file.
+     *
+     * @param file   the file
+     * @param offset the offset of the region in bytes
+     * @param length the length of the region in bytes
+     * @return the source
+     */
+    public static Source fileRegion(File file, long offset, long length) {
+        return new FileRegionSource(file, offset, length);
+    }
+
+    /**
+     * Returns a source of the given bytes.
+     *
+     * @param content the content
+     * @return the source
+     */
+    public static Source bytes(byte[] content) {
+        return new ByteArraySource(content);
+    }
+
+    /**
+     * Returns a source that reads the given sources one after the other.
+     *
+     * @param sources the sources
+     * @return the source
+     */
+    public static Source concat(Source... sources) {
+        return new ConcatSource(sources);
+    }
+
+    @Override
+    public long getContentLength() throws IOException {
+        byte[] delimiter = getDelimiter();
+        long length = 0;
+        for (Part part : mParts) {
+            length += delimiter.length + part.mHeaders.length + part.mSource.getLength() + CRLF.length;
+        }
+        return length + getCloseDelimiter().length;
+    }
+
+    @Override
+    public void writeTo(OutputStream output) throws IOException {
+        byte[] delimiter = getDelimiter();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (Part part : mParts) {
+            output.write(delimiter);
+            output.write(part.mHeaders);
+            copy(part.mSource, output, buffer);
+            output.write(CRLF);
+        }
+        output.write(getCloseDelimiter());
+    }
+
+    /**
+     * Copies exactly the announced number of bytes, as the content length
+     * was sent ahead.
+     */
+    private static void copy(Source source, OutputStream output, byte[] buffer) throws IOException {
+        long remaining = source.getLength();
+        InputStream input = source.open();
+        try {
+            while (remaining > 0) {
+                int count = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (count < 0) {
+                    throw new EOFException("Part is shorter than its length");
+                }
+                output.write(buffer, 0, count);
+                remaining -= count;
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    private byte[] getDelimiter() {
+        return getBytes("--" + mBoundary + "\r\n");
+    }
+
+    private byte[] getCloseDelimiter() {
+        return getBytes("--" + mBoundary + "--\r\n");
+    }
+
+    private static String createBoundary() {
+        StringBuilder builder = new StringBuilder();
+        Random random = new Random();
+        for (int index = 0; index < 30; index++) {
+            builder.append(BOUNDARY_CHARS[random.nextInt(BOUNDARY_CHARS.length)]);
+        }
+        return builder.toString();
+    }
+
+    private static byte[] getBytes(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Content of a file part, which may be opened more than once.
+     */
+    public interface Source {
+
+        /**
+         * Returns the exact number of bytes of the content.
+         *
+         * @return the length of the content
+         * @throws IOException if the length can't be determined
+         */
+        long getLength() throws IOException;
+
+        /**
+         * Opens a new stream of the content. The stream is closed by the
+         * caller.
+         *
+         * @return the content
+         * @throws IOException if the content can't be opened
+         */
+        InputStream open() throws IOException;
+    }
+
+    private static class ByteArraySource implements Source {
+        private final byte[] mContent;
+
+        ByteArraySource(byte[] content) {
+            mContent = content;
+        }
+
+        @Override
+        public long getLength() {
+            return mContent.length;
+        }
+
+        @Override
+        public InputStream open() {
+            return new ByteArrayInputStream(mContent);
+        }
+    }
+
+    private static class FileRegionSource implements Source {
+        private final File mFile;
+        private final long mOffset;
+        private final long mLength;
+
+        FileRegionSource(File file, long offset, long length) {
+            mFile = file;
+            mOffset = offset;
+            mLength = length;
+        }
+
+        @Override
+        public long getLength() {
+            return mLength;
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            InputStream input = new FileInputStream(mFile);
+            try {
+                long remaining = mOffset;
+                while (remaining > 0) {
+                    long skipped = input.skip(remaining);
+                    if (skipped <= 0) {
+                        throw new EOFException("File is shorter than the region");
+                    }
+                    remaining -= skipped;
+                }
+                return input;
+            } catch (IOException e) {
+                input.close();
+                throw e;
+            }
+        }
+    }
+
+    private static class ConcatSource implements Source {
+        private final Source[] mSources;
+
+        ConcatSource(Source[] sources) {
+            mSources = sources;
+        }
+
+        @Override
+        public long getLength() throws IOException {
+            long length = 0;
+            for (Source source : mSources) {
+                length += source.getLength();
+            }
+            return length;
+        }
+
+        @Override
+        public InputStream open() {
+            return new InputStream() {
+                private int mIndex = -1;
+                private InputStream mCurrent;
+                private long mRemaining;
+
+                @Override
+                public int read() throws IOException {
+                    byte[] single = new byte[1];
+                    return (read(single, 0, 1) == 1) ? (single[0] & 0xff) : -1;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int count) throws IOException {
+                    // Each source is cut at its length, as a file region
+                    // is only bounded at its start
+                    while (mCurrent == null || mRemaining == 0) {
+                        close();
+                        if (++mIndex >= mSources.length) {
+                            return -1;
+                        }
+                        mCurrent = mSources[mIndex].open();
+                        mRemaining = mSources[mIndex].getLength();
+                    }
+
+                    int read = mCurrent.read(buffer, offset, (int) Math.min(count, mRemaining));
+                    if (read < 0) {
+                        throw new EOFException("Source is shorter than its length");
+                    }
+                    mRemaining -= read;
+                    return read;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    if (mCurrent != null) {
+                        mCurrent.close();
+                        mCurrent = null;
+                    }
+                }
+            };
+        }
+    }
+
+    private static class Part {
+        private final byte[] mHeaders;
+        private final Source mSource;
+
+        Part(byte[] headers, Source source) {
+            mHeaders = headers;
+            mSource = source;
+        }
+    }
+}
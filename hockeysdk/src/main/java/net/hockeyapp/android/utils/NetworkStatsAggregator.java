@@ -0,0 +1,284 @@
+package net.hockeyapp.android.utils;
+
+import net.hockeyapp.android.listeners.NetworkObserver;
+import net.hockeyapp.android.objects.Endpoint;
+import net.hockeyapp.android.objects.NetworkEvent;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Network observer that keeps statistics per endpoint in memory. Counts
+ * and byte totals cover all requests; latency percentiles are computed
+ * from the most recent requests only, so memory use is bounded.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class NetworkStatsAggregator implements NetworkObserver {
+
+    /**
+     * Default number of recent requests per endpoint for the percentiles.
+     */
+    public static final int DEFAULT_MAX_SAMPLES = 256;
+
+    private final int mMaxSamples;
+    private final Map<Endpoint, Samples> mSamples = new EnumMap<Endpoint, Samples>(Endpoint.class);
+
+    public NetworkStatsAggregator() {
+        this(DEFAULT_MAX_SAMPLES);
+    }
+
+    /**
+     * @param maxSamples the number of recent requests per endpoint for the
+     *                   percentiles
+     */
+    public NetworkStatsAggregator(int maxSamples) {
+        if (maxSamples < 1) {
+            throw new IllegalArgumentException("maxSamples must be positive");
+        }
+        mMaxSamples = maxSamples;
+    }
+
+    @Override
+    public synchronized void onRequestFinished(NetworkEvent event) {
+        Samples samples = mSamples.get(event.getEndpoint());
+        if (samples == null) {
+            samples = new Samples(mMaxSamples);
+            mSamples.put(event.getEndpoint(), samples);
+        }
+        samples.add(event);
+    }
+
+    /**
+     * Returns the statistics of the given endpoint.
+     *
+     * @param endpoint the endpoint
+     * @return a snapshot of the statistics, empty if nothing was recorded
+     */
+    public synchronized Summary getSummary(Endpoint endpoint) {
+        Samples samples = mSamples.get(endpoint);
+        return (samples != null) ? samples.summarize(endpoint) : new Samples(1).summarize(endpoint);
+    }
+
+    /**
+     * Removes the statistics of all endpoints.
+     */
+    public synchronized void reset() {
+        mSamples.clear();
+    }
+
+    /**
+     * Returns the value at the given percentile of sorted values, using the
+     * nearest rank method.
+     *
+     * @param sorted     the values in ascending order
+     * @param percentile the percentile between 0 and 100
+     * @return the value or -1 if there are no values
+     */
+    static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return -1;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.min(Math.max(rank, 1), sorted.length) - 1];
+    }
+
+    /**
+     * Totals and a ring buffer of the recent events of an endpoint.
+     */
+    private static class Samples {
+        private final NetworkEvent[] mRecent;
+        private int mNext = 0;
+        private int mSize = 0;
+        private long mRequestCount = 0;
+        private long mFailureCount = 0;
+        private long mRetryCount = 0;
+        private long mRequestBytes = 0;
+        private long mResponseBytes = 0;
+
+        Samples(int maxSamples) {
+            mRecent = new NetworkEvent[maxSamples];
+        }
+
+        void add(NetworkEvent event) {
+            mRecent[mNext] = event;
+            mNext = (mNext + 1) % mRecent.length;
+            mSize = Math.min(mSize + 1, mRecent.length);
+
+            mRequestCount++;
+            if (!event.isSuccessful()) {
+                mFailureCount++;
+            }
+            if (event.getAttempt() > 0) {
+                mRetryCount++;
+            }
+            mRequestBytes += event.getRequestBytes();
+            mResponseBytes += event.getResponseBytes();
+        }
+
+        Summary summarize(Endpoint endpoint) {
+            long[] dnsTimes = new long[mSize];
+            long[] connectTimes = new long[mSize];
+            long[] firstByteTimes = new long[mSize];
+            long[] totalTimes = new long[mSize];
+            int dnsCount = 0;
+            int connectCount = 0;
+            int firstByteCount = 0;
+            for (int index = 0; index < mSize; index++) {
+                NetworkEvent event = mRecent[index];
+                if (event.getDnsTime() >= 0) {
+                    dnsTimes[dnsCount++] = event.getDnsTime();
+                }
+                if (event.getConnectTime() >= 0) {
+                    connectTimes[connectCount++] = event.getConnectTime();
+                }
+                if (event.getTimeToFirstByte() >= 0) {
+                    firstByteTimes[firstByteCount++] = event.getTimeToFirstByte();
+                }
+                totalTimes[index] = event.getTotalTime();
+            }
+
+            return new Summary(endpoint, mRequestCount, mFailureCount, mRetryCount, mRequestBytes, mResponseBytes,
+                    sorted(dnsTimes, dnsCount), sorted(connectTimes, connectCount),
+                    sorted(firstByteTimes, firstByteCount), sorted(totalTimes, mSize));
+        }
+
+        private static long[] sorted(long[] values, int length) {
+            long[] result = Arrays.copyOf(values, length);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+
+    /**
+     * Snapshot of the statistics of an endpoint. Latencies are in
+     * milliseconds; unknown phases of a request, e.g. the connect time of a
+     * reused connection, are left out of their percentiles.
+     */
+    public static class Summary {
+        private final Endpoint mEndpoint;
+        private final long mRequestCount;
+        private final long mFailureCount;
+        private final long mRetryCount;
+        private final long mRequestBytes;
+        private final long mResponseBytes;
+        private final long[] mDnsTimes;
+        private final long[] mConnectTimes;
+        private final long[] mFirstByteTimes;
+        private final long[] mTotalTimes;
+
+        Summary(Endpoint endpoint, long requestCount, long failureCount, long retryCount, long requestBytes,
+                long responseBytes, long[] dnsTimes, long[] connectTimes, long[] firstByteTimes, long[] totalTimes) {
+            mEndpoint = endpoint;
+            mRequestCount = requestCount;
+            mFailureCount = failureCount;
+            mRetryCount = retryCount;
+            mRequestBytes = requestBytes;
+            mResponseBytes = responseBytes;
+            mDnsTimes = dnsTimes;
+            mConnectTimes = connectTimes;
+            mFirstByteTimes = firstByteTimes;
+            mTotalTimes = totalTimes;
+        }
+
+        public Endpoint getEndpoint() {
+            return mEndpoint;
+        }
+
+        public long getRequestCount() {
+            return mRequestCount;
+        }
+
+        /**
+         * Returns the number of requests without a response or with a
+         * status code of 400 or above.
+         */
+        public long getFailureCount() {
+            return mFailureCount;
+        }
+
+        /**
+         * Returns the number of requests that were retries of an earlier
+         * attempt.
+         */
+        public long getRetryCount() {
+            return mRetryCount;
+        }
+
+        public long getRequestBytes() {
+            return mRequestBytes;
+        }
+
+        public long getResponseBytes() {
+            return mResponseBytes;
+        }
+
+        /**
+         * @param percentile the percentile between 0 and 100, e.g. 50 for the median
+         * @return the DNS time at the percentile or -1 if unknown
+         */
+        public long getDnsTime(double percentile) {
+            return percentile(mDnsTimes, percentile);
+        }
+
+        /**
+         * @param percentile the percentile between 0 and 100, e.g. 50 for the median
+         * @return the connect time at the percentile or -1 if unknown
+         */
+        public long getConnectTime(double percentile) {
+            return percentile(mConnectTimes, percentile);
+        }
+
+        /**
+         * @param percentile the percentile between 0 and 100, e.g. 50 for the median
+         * @return the time to first byte at the percentile or -1 if unknown
+         */
+        public long getTimeToFirstByte(double percentile) {
+            return percentile(mFirstByteTimes, percentile);
+        }
+
+        /**
+         * @param percentile the percentile between 0 and 100, e.g. 50 for the median
+         * @return the total time at the percentile or -1 if no request was recorded
+         */
+        public long getTotalTime(double percentile) {
+            return percentile(mTotalTimes, percentile);
+        }
+
+        @Override
+        public String toString() {
+            return mEndpoint + ": " + mRequestCount + " requests, " + mFailureCount + " failed, " + mRetryCount +
+                    " retries, " + mRequestBytes + " bytes sent, " + mResponseBytes + " bytes received, total p50/p90/p99 " +
+                    getTotalTime(50) + "/" + getTotalTime(90) + "/" + getTotalTime(99) + " ms, ttfb p50/p90/p99 " +
+                    getTimeToFirstByte(50) + "/" + getTimeToFirstByte(90) + "/" + getTimeToFirstByte(99) + " ms";
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package net.hockeyapp.android.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Token bucket rate limiter with one bucket per key. Each bucket holds up
+ * to a burst of tokens and gains one token per refill interval. Only the
+ * most recently used keys are tracked; a key that was evicted starts
+ * with a full bucket again.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class RateLimiter {
+
+    private static final int MAX_KEYS = 100;
+
+    private final int mBurst;
+    private final long mRefillInterval;
+    private final Map<String, long[]> mBuckets;
+
+    /**
+     * Creates a new rate limiter.
+     *
+     * @param burst          the max number of tokens per bucket
+     * @param refillInterval the time in milliseconds to gain one token
+     */
+    public RateLimiter(int burst, long refillInterval) {
+        mBurst = Math.max(burst, 1);
+        mRefillInterval = Math.max(refillInterval, 1);
+        mBuckets = new LinkedHashMap<String, long[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+                return size() > MAX_KEYS;
+            }
+        };
+    }
+
+    /**
+     * Takes a token from the bucket of the given key.
+     *
+     * @param key the key, e.g. a crash fingerprint
+     * @param now the current time in milliseconds of a monotonic clock
+     * @return true if a token was available
+     */
+    public synchronized boolean tryAcquire(String key, long now) {
+        // Bucket state: number of tokens and time of the last refill
+        long[] bucket = mBuckets.get(key);
+        if (bucket == null) {
+            bucket = new long[]{mBurst, now};
+            mBuckets.put(key, bucket);
+        } else {
+            long refills = (now - bucket[1]) / mRefillInterval;
+            if (refills > 0) {
+                bucket[0] = Math.min(mBurst, bucket[0] + refills);
+                bucket[1] += refills * mRefillInterval;
+            }
+        }
+
+        if (bucket[0] == 0) {
+            return false;
+        }
+        bucket[0]--;
+        return true;
+    }
+}
@@ -0,0 +1,57 @@
+package net.hockeyapp.android.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Request body of known length that is streamed to the connection instead
+ * of being buffered in memory.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public interface RequestBody {
+
+    /**
+     * Returns the number of bytes written by writeTo.
+     *
+     * @return the length of the body
+     * @throws IOException if a part can't be measured
+     */
+    long getContentLength() throws IOException;
+
+    /**
+     * Writes the body to the given stream.
+     *
+     * @param output the stream to write to
+     * @throws IOException if a part can't be read or the stream can't be
+     *                     written
+     */
+    void writeTo(OutputStream output) throws IOException;
+}
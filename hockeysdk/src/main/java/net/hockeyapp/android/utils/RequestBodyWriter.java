@@ -0,0 +1,171 @@
+package net.hockeyapp.android.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Writes the body of a request to a connection, optionally compressed with
+ * gzip, and counts the bytes before and after compression. A compressed
+ * body is sent with "Content-Encoding: gzip" and chunked transfer encoding,
+ * as its length is not known in advance.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class RequestBodyWriter {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final boolean mCompress;
+    private long mRawSize;
+    private long mSentSize;
+
+    public RequestBodyWriter(boolean compress) {
+        mCompress = compress;
+    }
+
+    /**
+     * Prepares the connection for the body. Has to be called before the
+     * output stream of the connection is opened.
+     *
+     * @param connection the connection to send the body with
+     */
+    public void prepare(HttpURLConnection connection) {
+        if (mCompress) {
+            connection.setRequestProperty("Content-Encoding", "gzip");
+            connection.setChunkedStreamingMode(0);
+        }
+    }
+
+    /**
+     * Prepares the connection for a body of known length. Uncompressed
+     * bodies are streamed with fixed length streaming mode, so the
+     * connection doesn't buffer them. Has to be called before the output
+     * stream of the connection is opened.
+     *
+     * @param connection    the connection to send the body with
+     * @param contentLength the uncompressed length of the body
+     */
+    public void prepare(HttpURLConnection connection, long contentLength) {
+        if (mCompress) {
+            prepare(connection);
+        } else {
+            // setFixedLengthStreamingMode(long) requires API level 19
+            connection.setFixedLengthStreamingMode((int) contentLength);
+        }
+    }
+
+    /**
+     * Writes the body to the connection and closes its output stream.
+     *
+     * @param connection the prepared connection
+     * @param body       the uncompressed body
+     * @throws IOException if the body could not be sent
+     */
+    public void write(HttpURLConnection connection, byte[] body) throws IOException {
+        CountingOutputStream sent = new CountingOutputStream(new BufferedOutputStream(connection.getOutputStream(), BUFFER_SIZE));
+        CountingOutputStream raw = new CountingOutputStream(mCompress ? new GZIPOutputStream(sent, BUFFER_SIZE) : sent);
+        try {
+            raw.write(body);
+            raw.flush();
+        } finally {
+            raw.close();
+            mRawSize += raw.getCount();
+            mSentSize += sent.getCount();
+        }
+    }
+
+    /**
+     * Streams the body to the connection and closes its output stream.
+     *
+     * @param connection the prepared connection
+     * @param body       the uncompressed body
+     * @throws IOException if the body could not be read or sent
+     */
+    public void write(HttpURLConnection connection, RequestBody body) throws IOException {
+        CountingOutputStream sent = new CountingOutputStream(new BufferedOutputStream(connection.getOutputStream(), BUFFER_SIZE));
+        CountingOutputStream raw = new CountingOutputStream(mCompress ? new GZIPOutputStream(sent, BUFFER_SIZE) : sent);
+        try {
+            body.writeTo(raw);
+            raw.flush();
+        } finally {
+            raw.close();
+            mRawSize += raw.getCount();
+            mSentSize += sent.getCount();
+        }
+    }
+
+    /**
+     * Returns the number of body bytes before compression.
+     *
+     * @return the uncompressed size of the body
+     */
+    public long getRawSize() {
+        return mRawSize;
+    }
+
+    /**
+     * Returns the number of body bytes that were sent, i.e. after
+     * compression if enabled.
+     *
+     * @return the size of the body on the wire
+     */
+    public long getSentSize() {
+        return mSentSize;
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long mCount;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            mCount++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            mCount += len;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package net.hockeyapp.android.utils;
+
+import android.util.Log;
+
+import net.hockeyapp.android.Constants;
+import net.hockeyapp.android.listeners.NetworkObserver;
+import net.hockeyapp.android.objects.Endpoint;
+import net.hockeyapp.android.objects.NetworkEvent;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Measures a single HTTP request and reports it to the observer of
+ * HttpTransports when it is finished. Callers mark the phases of the
+ * request as they happen; phases that aren't marked are reported as
+ * unknown.
+ *
+ * HttpURLConnection doesn't expose its DNS lookup, so the DNS time is
+ * reported as unknown and the lookup is part of the connect time. Only
+ * crash uploads are retried with a known attempt; all other requests are
+ * reported as attempt 0. Without an observer, a trace does nothing.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class RequestTrace {
+
+    private final NetworkObserver mObserver;
+    private final Endpoint mEndpoint;
+    private final String mHost;
+    private final int mAttempt;
+    private final long mStartTime;
+    private long mConnectedTime = -1;
+    private long mFirstByteTime = -1;
+    private int mStatusCode = -1;
+    private long mRequestBytes = 0;
+    private long mResponseBytes = 0;
+    private boolean mFinished = false;
+
+    private RequestTrace(NetworkObserver observer, Endpoint endpoint, String host, int attempt) {
+        mObserver = observer;
+        mEndpoint = endpoint;
+        mHost = host;
+        mAttempt = attempt;
+        mStartTime = System.nanoTime();
+    }
+
+    /**
+     * Starts the trace of a request.
+     *
+     * @param endpoint  the endpoint of the request
+     * @param urlString the URL of the request
+     * @param attempt   the retry attempt, 0 for the first try or if the
+     *                  caller doesn't count attempts
+     * @return the trace
+     */
+    public static RequestTrace start(Endpoint endpoint, String urlString, int attempt) {
+        NetworkObserver observer = HttpTransports.getObserver();
+        String host = null;
+        try {
+            host = new URL(urlString).getHost();
+        } catch (MalformedURLException ignored) {
+        }
+
+        return new RequestTrace(observer, endpoint, host, attempt);
+    }
+
+    public Endpoint getEndpoint() {
+        return mEndpoint;
+    }
+
+    /**
+     * Marks that the connection was established. Only the first call
+     * counts.
+     */
+    public synchronized void connected() {
+        if (mConnectedTime < 0) {
+            mConnectedTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * Marks that the response headers were received.
+     *
+     * @param statusCode the HTTP status code
+     */
+    public synchronized void responseReceived(int statusCode) {
+        if (mFirstByteTime < 0) {
+            mFirstByteTime = System.nanoTime();
+        }
+        mStatusCode = statusCode;
+    }
+
+    /**
+     * Adds sent request body bytes, after compression.
+     *
+     * @param count the number of bytes
+     */
+    public synchronized void addRequestBytes(long count) {
+        mRequestBytes += count;
+    }
+
+    /**
+     * Adds received response body bytes, before decompression.
+     *
+     * @param count the number of bytes
+     */
+    public synchronized void addResponseBytes(long count) {
+        mResponseBytes += count;
+    }
+
+    /**
+     * Finishes the trace and reports it to the observer. Only the first
+     * call counts, so it can be called in a finally block.
+     */
+    public void finish() {
+        NetworkEvent event;
+        synchronized (this) {
+            if (mFinished || mObserver == null) {
+                mFinished = true;
+                return;
+            }
+            mFinished = true;
+
+            event = new NetworkEvent(mEndpoint, mHost, mAttempt, mStatusCode, -1,
+                    (mConnectedTime >= 0) ? toMillis(mConnectedTime - mStartTime) : -1,
+                    (mFirstByteTime >= 0) ? toMillis(mFirstByteTime - mStartTime) : -1,
+                    toMillis(System.nanoTime() - mStartTime), mRequestBytes, mResponseBytes);
+        }
+
+        try {
+            mObserver.onRequestFinished(event);
+        } catch (RuntimeException e) {
+            Log.w(Constants.TAG, "Network observer failed.", e);
+        }
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos / 1000000L;
+    }
+}
@@ -0,0 +1,390 @@
+package net.hockeyapp.android.utils;
+
+import net.hockeyapp.android.objects.Endpoint;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Reads UTF-8 encoded response bodies. Bytes are decoded straight from a
+ * reusable buffer, without splitting the body into lines, and the result
+ * is built in a StringBuilder presized with the Content-Length of the
+ * response. Parsers that can consume chunks of chars can use the callback
+ * variant and skip the intermediate String completely.
+ *
+ * Requests that call acceptCompression get gzip or deflate compressed
+ * responses, which are decompressed while they are decoded. Deflate is
+ * accepted with and without the zlib wrapper, as servers send both. The platform
+ * only decompresses transparently if the app doesn't set Accept-Encoding
+ * itself, and it hides the compressed size; decompressing here lets
+ * ResponseMetrics count the bytes on the wire and after decoding.
+ *
+ * Instances are not thread-safe; the static helpers reuse one reader per
+ * thread.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class ResponseBodyReader {
+
+    /**
+     * Receives the decoded chars of a response body chunk by chunk.
+     */
+    public interface Callback {
+
+        /**
+         * Called for every decoded chunk. The buffer is reused for the next
+         * chunk, so the chars have to be copied if they are needed later.
+         *
+         * @param buffer the buffer with the decoded chars
+         * @param offset the offset of the first char
+         * @param length the number of chars
+         * @throws IOException to stop reading
+         */
+        void onChars(char[] buffer, int offset, int length) throws IOException;
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int DEFAULT_BUFFER_SIZE = 4096;
+
+    /**
+     * Capacity of the StringBuilder if the response has no Content-Length.
+     */
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Max capacity of the presized StringBuilder, so a wrong Content-Length
+     * can't allocate an arbitrary amount of memory up front.
+     */
+    private static final int MAX_PRESIZED_CAPACITY = 512 * 1024;
+
+    /**
+     * Expected ratio of decoded to compressed bytes of JSON and HTML, to
+     * presize the StringBuilder for compressed responses.
+     */
+    private static final int EXPECTED_COMPRESSION_RATIO = 4;
+
+    private static final ThreadLocal<ResponseBodyReader> sReaders = new ThreadLocal<ResponseBodyReader>() {
+        @Override
+        protected ResponseBodyReader initialValue() {
+            return new ResponseBodyReader();
+        }
+    };
+
+    private final ByteBuffer mBytes;
+    private final CharBuffer mChars;
+    private final CharsetDecoder mDecoder;
+
+    public ResponseBodyReader() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a reader with the given buffer size. The size has to be at
+     * least 4 bytes, the length of the longest UTF-8 sequence.
+     *
+     * @param bufferSize the size of the byte and char buffer
+     */
+    public ResponseBodyReader(int bufferSize) {
+        if (bufferSize < 4) {
+            throw new IllegalArgumentException("bufferSize must be at least 4");
+        }
+        mBytes = ByteBuffer.allocate(bufferSize);
+        mChars = CharBuffer.allocate(bufferSize);
+        mDecoder = UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Asks the server for a gzip or deflate compressed response. The body
+     * has to be read with readString, which decompresses it.
+     *
+     * @param connection the connection, before the request is sent
+     */
+    public static void acceptCompression(URLConnection connection) {
+        connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+    }
+
+    /**
+     * Reads the body of the given connection as String, using the reader of
+     * the current thread.
+     *
+     * @param connection the connection, after the request was sent
+     * @return the body
+     * @throws IOException if the body can't be read
+     */
+    public static String readString(URLConnection connection) throws IOException {
+        return readString(connection, (Endpoint) null);
+    }
+
+    /**
+     * Reads and decompresses the body of the given connection as String,
+     * using the reader of the current thread, and records its size in
+     * ResponseMetrics.
+     *
+     * @param connection the connection, after the request was sent
+     * @param endpoint   the endpoint for the metrics or null for none
+     * @return the body
+     * @throws IOException if the body can't be read
+     */
+    public static String readString(URLConnection connection, Endpoint endpoint) throws IOException {
+        return readString(connection, endpoint, null);
+    }
+
+    /**
+     * Reads and decompresses the body of the given connection like
+     * readString(URLConnection, Endpoint), for the endpoint of the given
+     * trace, and adds the received bytes to the trace.
+     *
+     * @param connection the connection, after the request was sent
+     * @param trace      the trace of the request
+     * @return the body
+     * @throws IOException if the body can't be read
+     */
+    public static String readString(URLConnection connection, RequestTrace trace) throws IOException {
+        return readString(connection, trace.getEndpoint(), trace);
+    }
+
+    private static String readString(URLConnection connection, Endpoint endpoint, RequestTrace trace) throws IOException {
+        String encoding = connection.getContentEncoding();
+        boolean compressed = "gzip".equalsIgnoreCase(encoding) || "deflate".equalsIgnoreCase(encoding);
+        int lengthHint = connection.getContentLength();
+        if (compressed && lengthHint > 0) {
+            lengthHint = (int) Math.min((long) lengthHint * EXPECTED_COMPRESSION_RATIO, Integer.MAX_VALUE);
+        }
+
+        CountingInputStream wire = new CountingInputStream(connection.getInputStream());
+        CountingInputStream decoded = wire;
+        Inflater inflater = null;
+        try {
+            if ("gzip".equalsIgnoreCase(encoding)) {
+                decoded = new CountingInputStream(new GZIPInputStream(wire));
+            } else if ("deflate".equalsIgnoreCase(encoding)) {
+                PushbackInputStream input = new PushbackInputStream(wire, 2);
+                inflater = new Inflater(!hasZlibHeader(input));
+                decoded = new CountingInputStream(new InflaterInputStream(input, inflater));
+            }
+            return sReaders.get().read(decoded, lengthHint);
+        } finally {
+            wire.close();
+            if (inflater != null) {
+                // Only the default inflater is released by the stream
+                inflater.end();
+            }
+            if (endpoint != null) {
+                ResponseMetrics.getInstance().record(endpoint, wire.getCount(), decoded.getCount());
+            }
+            if (trace != null) {
+                trace.addResponseBytes(wire.getCount());
+            }
+        }
+    }
+
+    /**
+     * Reads the rest of a response without decoding it and closes its
+     * stream, e.g. the body of a 304 Not Modified. Such a body is usually
+     * empty, but may still be announced as gzip, which a decoding read
+     * would fail on. The received bytes are added to the trace.
+     *
+     * @param connection the connection, after the request was sent
+     * @param trace      the trace of the request, may be null
+     * @return the number of bytes read
+     * @throws IOException if the body can't be read
+     */
+    public static long discard(URLConnection connection, RequestTrace trace) throws IOException {
+        CountingInputStream wire = new CountingInputStream(connection.getInputStream());
+        try {
+            byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+            while (wire.read(buffer) != -1) {
+                // Only counted
+            }
+            return wire.getCount();
+        } finally {
+            wire.close();
+            if (trace != null) {
+                trace.addResponseBytes(wire.getCount());
+            }
+        }
+    }
+
+    /**
+     * Returns whether a deflate stream starts with a zlib header, see RFC
+     * 1950. The header bytes are pushed back.
+     */
+    private static boolean hasZlibHeader(PushbackInputStream input) throws IOException {
+        int cmf = input.read();
+        int flg = (cmf != -1) ? input.read() : -1;
+        if (flg != -1) {
+            input.unread(flg);
+        }
+        if (cmf != -1) {
+            input.unread(cmf);
+        }
+        return (cmf != -1) && (flg != -1) && ((cmf & 0x0f) == 8) && (((cmf << 8) | flg) % 31 == 0);
+    }
+
+    /**
+     * Reads the given stream as String, using the reader of the current
+     * thread. The stream is closed afterwards.
+     *
+     * @param input      the stream to read
+     * @param lengthHint the expected length in bytes, e.g. the Content-Length,
+     *                   or -1 if unknown
+     * @return the body
+     * @throws IOException if the stream can't be read
+     */
+    public static String readString(InputStream input, int lengthHint) throws IOException {
+        return sReaders.get().read(input, lengthHint);
+    }
+
+    /**
+     * Reads the given stream as String. The stream is closed afterwards.
+     *
+     * @param input      the stream to read
+     * @param lengthHint the expected length in bytes, e.g. the Content-Length,
+     *                   or -1 if unknown
+     * @return the body
+     * @throws IOException if the stream can't be read
+     */
+    public String read(InputStream input, int lengthHint) throws IOException {
+        // UTF-8 never needs more chars than bytes
+        int capacity = (lengthHint > 0) ? Math.min(lengthHint, MAX_PRESIZED_CAPACITY) : DEFAULT_CAPACITY;
+        final StringBuilder builder = new StringBuilder(capacity);
+        read(input, new Callback() {
+            @Override
+            public void onChars(char[] buffer, int offset, int length) {
+                builder.append(buffer, offset, length);
+            }
+        });
+        return builder.toString();
+    }
+
+    /**
+     * Decodes the given stream and passes the chars to the callback. The
+     * stream is closed afterwards.
+     *
+     * @param input    the stream to read
+     * @param callback the callback for the decoded chars
+     * @throws IOException if the stream can't be read or the callback fails
+     */
+    public void read(InputStream input, Callback callback) throws IOException {
+        mDecoder.reset();
+        mBytes.clear();
+        try {
+            byte[] bytes = mBytes.array();
+            int count;
+            while ((count = input.read(bytes, mBytes.position(), mBytes.remaining())) != -1) {
+                mBytes.position(mBytes.position() + count);
+                mBytes.flip();
+                decode(false, callback);
+                // Keeps an incomplete sequence at the end for the next read
+                mBytes.compact();
+            }
+
+            mBytes.flip();
+            decode(true, callback);
+
+            mChars.clear();
+            mDecoder.flush(mChars);
+            emit(callback);
+        } finally {
+            input.close();
+        }
+    }
+
+    private void decode(boolean endOfInput, Callback callback) throws IOException {
+        CoderResult result;
+        do {
+            mChars.clear();
+            result = mDecoder.decode(mBytes, mChars, endOfInput);
+            emit(callback);
+        } while (result.isOverflow());
+    }
+
+    private void emit(Callback callback) throws IOException {
+        mChars.flip();
+        if (mChars.hasRemaining()) {
+            callback.onChars(mChars.array(), 0, mChars.limit());
+        }
+    }
+
+    /**
+     * Counts the bytes read from a stream.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long mCount = 0;
+
+        CountingInputStream(InputStream input) {
+            super(input);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value != -1) {
+                mCount++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                mCount += count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long skipped = super.skip(count);
+            mCount += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package net.hockeyapp.android.utils;
+
+import net.hockeyapp.android.objects.Endpoint;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Counts the response bytes per endpoint, both as received on the wire
+ * and after decompression, to see how much compression saves.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class ResponseMetrics {
+
+    private final Map<Endpoint, long[]> mCounters = new EnumMap<Endpoint, long[]>(Endpoint.class);
+
+    private ResponseMetrics() {
+    }
+
+    /**
+     * ResponseMetricsHolder is loaded on the first execution of
+     * ResponseMetrics.getInstance() or the first access to
+     * ResponseMetricsHolder.INSTANCE, not before.
+     */
+    private static class ResponseMetricsHolder {
+        public static final ResponseMetrics INSTANCE = new ResponseMetrics();
+    }
+
+    public static ResponseMetrics getInstance() {
+        return ResponseMetricsHolder.INSTANCE;
+    }
+
+    /**
+     * Adds a response to the counters of its endpoint.
+     *
+     * @param endpoint     the endpoint of the request
+     * @param wireBytes    the bytes received on the wire
+     * @param decodedBytes the bytes after decompression
+     */
+    public synchronized void record(Endpoint endpoint, long wireBytes, long decodedBytes) {
+        long[] counters = mCounters.get(endpoint);
+        if (counters == null) {
+            counters = new long[3];
+            mCounters.put(endpoint, counters);
+        }
+        counters[0]++;
+        counters[1] += wireBytes;
+        counters[2] += decodedBytes;
+    }
+
+    /**
+     * Returns the counters of the given endpoint.
+     *
+     * @param endpoint the endpoint
+     * @return a snapshot of the counters, all zero if nothing was recorded
+     */
+    public synchronized Stats getStats(Endpoint endpoint) {
+        long[] counters = mCounters.get(endpoint);
+        return (counters != null) ? new Stats(counters[0], counters[1], counters[2]) : new Stats(0, 0, 0);
+    }
+
+    /**
+     * Resets the counters of all endpoints.
+     */
+    public synchronized void reset() {
+        mCounters.clear();
+    }
+
+    /**
+     * Snapshot of the response counters of an endpoint.
+     */
+    public static class Stats {
+        private final long mResponseCount;
+        private final long mWireBytes;
+        private final long mDecodedBytes;
+
+        Stats(long responseCount, long wireBytes, long decodedBytes) {
+            mResponseCount = responseCount;
+            mWireBytes = wireBytes;
+            mDecodedBytes = decodedBytes;
+        }
+
+        public long getResponseCount() {
+            return mResponseCount;
+        }
+
+        public long getWireBytes() {
+            return mWireBytes;
+        }
+
+        public long getDecodedBytes() {
+            return mDecodedBytes;
+        }
+
+        /**
+         * Returns the ratio of decoded to wire bytes, e.g. 4.0 if responses
+         * were compressed to a quarter of their size.
+         *
+         * @return the ratio or 1.0 if nothing was received
+         */
+        public double getCompressionRatio() {
+            return (mWireBytes > 0) ? (double) mDecodedBytes / mWireBytes : 1.0;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package net.hockeyapp.android.utils;
+
+import java.util.Random;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Exponential backoff for failed uploads. The delay doubles with every
+ * failed attempt up to a maximum. Half of the delay is random, so devices
+ * that failed at the same time, e.g. during a server outage, don't retry
+ * at the same time.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class RetryBackoff {
+
+    /**
+     * Delay after the first failed attempt, in milliseconds.
+     */
+    public static final long BASE_DELAY = 60 * 1000;
+
+    /**
+     * Max delay between two attempts, in milliseconds.
+     */
+    public static final long MAX_DELAY = 6 * 60 * 60 * 1000;
+
+    private static final Random RANDOM = new Random();
+
+    private RetryBackoff() {
+    }
+
+    /**
+     * Returns the delay before the next attempt.
+     *
+     * @param retryCount the number of failed attempts before the last one
+     * @return the delay in milliseconds
+     */
+    public static long getDelay(int retryCount) {
+        return getDelay(retryCount, RANDOM);
+    }
+
+    /**
+     * Returns the delay before the next attempt.
+     *
+     * @param retryCount the number of failed attempts before the last one
+     * @param random     the source of the jitter
+     * @return the delay in milliseconds, between half and all of the
+     * exponential delay
+     */
+    public static long getDelay(int retryCount, Random random) {
+        long delay = MAX_DELAY;
+        if (retryCount < 30) {
+            delay = Math.min(BASE_DELAY << Math.max(retryCount, 0), MAX_DELAY);
+        }
+        long half = delay / 2;
+        return half + (long) (random.nextDouble() * half);
+    }
+}
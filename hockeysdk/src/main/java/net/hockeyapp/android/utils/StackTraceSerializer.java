@@ -0,0 +1,306 @@
+package net.hockeyapp.android.utils;
+
+import android.annotation.SuppressLint;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Formats a throwable like Throwable.printStackTrace(), but keeps the
+ * result small no matter what was thrown. Runs of a repeated frame cycle,
+ * e.g. from the recursion behind a StackOverflowError, are written once
+ * with a repeat count. The depth of nested causes and suppressed
+ * exceptions, the number of suppressed exceptions, the length of messages
+ * and the total size are capped.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class StackTraceSerializer {
+
+    /**
+     * Default max size of a serialized stack trace in bytes.
+     */
+    public static final int DEFAULT_MAX_BYTES = 128 * 1024;
+
+    /**
+     * Default max number of nested causes and suppressed exceptions.
+     */
+    public static final int DEFAULT_MAX_DEPTH = 10;
+
+    /**
+     * Longest frame cycle that is detected.
+     */
+    public static final int MAX_CYCLE_LENGTH = 64;
+
+    /**
+     * A cycle is only collapsed if it is repeated at least this many times
+     * after its first occurrence.
+     */
+    private static final int MIN_REPEATS = 2;
+
+    private static final int MAX_SUPPRESSED = 8;
+    private static final int MAX_MESSAGE_LENGTH = 1024;
+    private static final String TRUNCATED = "\t... stack trace truncated\n";
+
+    private final int mMaxBytes;
+    private final int mMaxDepth;
+
+    private StringBuilder mOutput;
+    private int mBytes;
+    private boolean mTruncated;
+
+    /**
+     * Creates a serializer with the default limits.
+     */
+    public StackTraceSerializer() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * Creates a serializer.
+     *
+     * @param maxBytes the max size of the result in bytes, encoded as UTF-8
+     * @param maxDepth the max number of nested causes and suppressed
+     *                 exceptions
+     */
+    public StackTraceSerializer(int maxBytes, int maxDepth) {
+        mMaxBytes = Math.max(maxBytes, TRUNCATED.length());
+        mMaxDepth = Math.max(maxDepth, 0);
+    }
+
+    /**
+     * Returns the stack trace of the given throwable, its suppressed
+     * exceptions and causes. This method is not thread safe.
+     *
+     * @param throwable the throwable to serialize
+     * @return the stack trace, with one line break after every line
+     */
+    public String serialize(Throwable throwable) {
+        mOutput = new StringBuilder();
+        mBytes = 0;
+        mTruncated = false;
+        try {
+            Map<Throwable, Boolean> dejaVu = new IdentityHashMap<Throwable, Boolean>();
+            dejaVu.put(throwable, Boolean.TRUE);
+
+            StackTraceElement[] trace = throwable.getStackTrace();
+            appendLine("", describe(throwable));
+            appendFrames(trace, trace.length, "");
+            appendEnclosed(throwable, trace, "", 1, dejaVu);
+
+            if (mTruncated) {
+                mOutput.append(TRUNCATED);
+            }
+            return mOutput.toString();
+        } finally {
+            mOutput = null;
+        }
+    }
+
+    /**
+     * Returns the length of the frame cycle that covers the most frames
+     * from start on, preferring shorter cycles. A cycle has to be repeated
+     * at least twice after its first occurrence.
+     *
+     * @param trace the stack trace
+     * @param start the index of the first frame of the cycle
+     * @param end   the index after the last frame to consider
+     * @return the number of frames in the cycle or 0 if there is none
+     */
+    public static int findCycle(StackTraceElement[] trace, int start, int end) {
+        int bestPeriod = 0;
+        int bestCoverage = 0;
+        int maxPeriod = Math.min(MAX_CYCLE_LENGTH, (end - start) / (MIN_REPEATS + 1));
+        for (int period = 1; period <= maxPeriod; period++) {
+            int repeats = countRepeats(trace, start, end, period);
+            int coverage = period * (repeats + 1);
+            if (repeats >= MIN_REPEATS && coverage > bestCoverage) {
+                bestPeriod = period;
+                bestCoverage = coverage;
+            }
+        }
+        return bestPeriod;
+    }
+
+    /**
+     * Returns how often the frames from start to start + period are
+     * repeated right after their first occurrence.
+     *
+     * @param trace  the stack trace
+     * @param start  the index of the first frame of the cycle
+     * @param end    the index after the last frame to consider
+     * @param period the number of frames in the cycle
+     * @return the number of complete repetitions
+     */
+    public static int countRepeats(StackTraceElement[] trace, int start, int end, int period) {
+        int index = start + period;
+        while (index < end && trace[index].equals(trace[index - period])) {
+            index++;
+        }
+        return (index - start) / period - 1;
+    }
+
+    /**
+     * Returns the number of frames at the end of the trace that it shares
+     * with the trace of the enclosing throwable.
+     *
+     * @param trace          the stack trace of a cause or suppressed exception
+     * @param enclosingTrace the stack trace of the enclosing throwable
+     * @return the number of frames in common
+     */
+    public static int countFramesInCommon(StackTraceElement[] trace, StackTraceElement[] enclosingTrace) {
+        int index = trace.length - 1;
+        int enclosingIndex = enclosingTrace.length - 1;
+        while (index >= 0 && enclosingIndex >= 0 && trace[index].equals(enclosingTrace[enclosingIndex])) {
+            index--;
+            enclosingIndex--;
+        }
+        return trace.length - 1 - index;
+    }
+
+    /**
+     * Appends the suppressed exceptions and the cause of a throwable.
+     */
+    private void appendEnclosed(Throwable throwable, StackTraceElement[] trace, String prefix, int depth, Map<Throwable, Boolean> dejaVu) {
+        Throwable[] suppressed = getSuppressed(throwable);
+        Throwable cause = throwable.getCause();
+        if ((suppressed.length > 0 || cause != null) && depth > mMaxDepth) {
+            appendLine(prefix, "\t... further causes omitted");
+            return;
+        }
+
+        for (int index = 0; index < suppressed.length && !mTruncated; index++) {
+            if (index == MAX_SUPPRESSED) {
+                appendLine(prefix, "\t... " + (suppressed.length - index) + " more suppressed");
+                break;
+            }
+            appendEnclosing(suppressed[index], trace, "Suppressed: ", prefix + "\t", depth, dejaVu);
+        }
+
+        if (cause != null && !mTruncated) {
+            appendEnclosing(cause, trace, "Caused by: ", prefix, depth, dejaVu);
+        }
+    }
+
+    private void appendEnclosing(Throwable throwable, StackTraceElement[] enclosingTrace, String caption, String prefix, int depth, Map<Throwable, Boolean> dejaVu) {
+        if (dejaVu.containsKey(throwable)) {
+            appendLine(prefix, "\t[CIRCULAR REFERENCE:" + describe(throwable) + "]");
+            return;
+        }
+        dejaVu.put(throwable, Boolean.TRUE);
+
+        StackTraceElement[] trace = throwable.getStackTrace();
+        int framesInCommon = countFramesInCommon(trace, enclosingTrace);
+        appendLine(prefix, caption + describe(throwable));
+        appendFrames(trace, trace.length - framesInCommon, prefix);
+        if (framesInCommon > 0) {
+            appendLine(prefix, "\t... " + framesInCommon + " more");
+        }
+        appendEnclosed(throwable, trace, prefix, depth + 1, dejaVu);
+    }
+
+    private void appendFrames(StackTraceElement[] trace, int end, String prefix) {
+        int index = 0;
+        while (index < end && !mTruncated) {
+            int period = findCycle(trace, index, end);
+            if (period == 0) {
+                appendLine(prefix, "\tat " + trace[index]);
+                index++;
+                continue;
+            }
+
+            int repeats = countRepeats(trace, index, end, period);
+            for (int frame = index; frame < index + period; frame++) {
+                appendLine(prefix, "\tat " + trace[frame]);
+            }
+            appendLine(prefix, "\t... " + (period == 1 ? "last frame" : "last " + period + " frames") +
+                    " repeated " + repeats + " more times");
+            index += period * (repeats + 1);
+        }
+    }
+
+    private void appendLine(String prefix, String line) {
+        if (mTruncated) {
+            return;
+        }
+
+        int bytes = utf8Length(prefix) + utf8Length(line) + 1;
+        if (mBytes + bytes > mMaxBytes - TRUNCATED.length()) {
+            mTruncated = true;
+            return;
+        }
+        mOutput.append(prefix).append(line).append('\n');
+        mBytes += bytes;
+    }
+
+    /**
+     * Returns the class name and message like Throwable.toString(), with
+     * the message cut off if it is too long.
+     */
+    private static String describe(Throwable throwable) {
+        String name = throwable.getClass().getName();
+        String message = throwable.getLocalizedMessage();
+        if (message == null) {
+            return name;
+        }
+        if (message.length() > MAX_MESSAGE_LENGTH) {
+            message = message.substring(0, MAX_MESSAGE_LENGTH) + "...";
+        }
+        return name + ": " + message;
+    }
+
+    @SuppressLint("NewApi")
+    private static Throwable[] getSuppressed(Throwable throwable) {
+        try {
+            return throwable.getSuppressed();
+        } catch (NoSuchMethodError e) {
+            // Suppressed exceptions were added in API level 19
+            return new Throwable[0];
+        }
+    }
+
+    private static int utf8Length(String string) {
+        int length = 0;
+        for (int index = 0; index < string.length(); index++) {
+            char c = string.charAt(index);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                index++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,184 @@
+package net.hockeyapp.android.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <h3>Description</h3>
+ *
+ * Captures the stacks of all threads for a crash report under a time and
+ * size budget. Threads with identical stacks are grouped, so a pool of
+ * idle workers costs one stack. Blocked threads come first, as they are
+ * the most likely to explain a deadlock.
+ *
+ * <h3>License</h3>
+ *
+ * <pre>
+ * Copyright (c) 2011-2016 Bit Stadium GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * </pre>
+ */
+public class ThreadDump {
+
+    /**
+     * Default max time in milliseconds to capture and format the stacks.
+     */
+    public static final long DEFAULT_TIME_BUDGET = 250;
+
+    /**
+     * Default max size of a thread dump in characters.
+     */
+    public static final int DEFAULT_MAX_LENGTH = 64 * 1024;
+
+    private ThreadDump() {
+    }
+
+    /**
+     * Captures the stacks of all threads except the excluded ones. The
+     * stacks are collected on a helper thread, so a VM that takes too long
+     * to suspend all threads can't exceed the budget.
+     *
+     * @param timeBudget the max time to spend in milliseconds
+     * @param maxLength  the max length of the result
+     * @param excluded   threads to leave out, e.g. the crashed thread
+     * @return the thread dump or null if the stacks couldn't be captured
+     * in time
+     */
+    public static String capture(long timeBudget, int maxLength, Thread... excluded) {
+        long deadline = System.nanoTime() + timeBudget * 1000 * 1000;
+        final AtomicReference<Map<Thread, StackTraceElement[]>> result = new AtomicReference<Map<Thread, StackTraceElement[]>>();
+        Thread capture = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result.set(Thread.getAllStackTraces());
+            }
+        }, "HockeyApp-ThreadDump");
+        capture.setDaemon(true);
+        capture.start();
+
+        try {
+            capture.join(timeBudget);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Map<Thread, StackTraceElement[]> stacks = result.get();
+        if (stacks == null) {
+            return null;
+        }
+
+        Thread[] allExcluded = Arrays.copyOf(excluded, excluded.length + 1);
+        allExcluded[excluded.length] = capture;
+        return format(stacks, deadline, maxLength, allExcluded);
+    }
+
+    /**
+     * Formats the given stacks grouped by identical stacks. Groups that
+     * don't fit into the length or are reached after the deadline are
+     * left out with a note.
+     *
+     * @param stacks    the stacks by thread
+     * @param deadline  the value of System.nanoTime() to stop at
+     * @param maxLength the max length of the result
+     * @param excluded  threads to leave out
+     * @return the thread dump, starting with a line break
+     */
+    public static String format(Map<Thread, StackTraceElement[]> stacks, long deadline, int maxLength, Thread... excluded) {
+        Map<List<StackTraceElement>, List<Thread>> groups = new LinkedHashMap<List<StackTraceElement>, List<Thread>>();
+        List<Thread> threads = new ArrayList<Thread>(stacks.keySet());
+        threads.removeAll(Arrays.asList(excluded));
+        Collections.sort(threads, new Comparator<Thread>() {
+            @Override
+            public int compare(Thread lhs, Thread rhs) {
+                boolean lhsBlocked = lhs.getState() == Thread.State.BLOCKED;
+                boolean rhsBlocked = rhs.getState() == Thread.State.BLOCKED;
+                if (lhsBlocked != rhsBlocked) {
+                    return lhsBlocked ? -1 : 1;
+                }
+                return (lhs.getId() < rhs.getId()) ? -1 : ((lhs.getId() == rhs.getId()) ? 0 : 1);
+            }
+        });
+        for (Thread thread : threads) {
+            List<StackTraceElement> stack = Arrays.asList(stacks.get(thread));
+            List<Thread> group = groups.get(stack);
+            if (group == null) {
+                group = new ArrayList<Thread>();
+                groups.put(stack, group);
+            }
+            group.add(thread);
+        }
+
+        StringBuilder builder = new StringBuilder();
+        StringBuilder groupBuilder = new StringBuilder();
+        int omitted = 0;
+        for (Map.Entry<List<StackTraceElement>, List<Thread>> group : groups.entrySet()) {
+            if (omitted > 0 || System.nanoTime() > deadline) {
+                omitted += group.getValue().size();
+                continue;
+            }
+
+            groupBuilder.setLength(0);
+            groupBuilder.append('\n');
+            for (Thread thread : group.getValue()) {
+                groupBuilder.append('"').append(thread.getName()).append("\" id=").append(thread.getId())
+                        .append(' ').append(thread.getState()).append('\n');
+            }
+            appendFrames(groupBuilder, group.getKey().toArray(new StackTraceElement[group.getKey().size()]));
+
+            if (builder.length() + groupBuilder.length() > maxLength) {
+                omitted += group.getValue().size();
+            } else {
+                builder.append(groupBuilder);
+            }
+        }
+        if (omitted > 0) {
+            builder.append("\n... ").append(omitted).append(omitted == 1 ? " more thread omitted\n" : " more threads omitted\n");
+        }
+        return builder.toString();
+    }
+
+    private static void appendFrames(StringBuilder builder, StackTraceElement[] trace) {
+        int index = 0;
+        while (index < trace.length) {
+            int period = StackTraceSerializer.findCycle(trace, index, trace.length);
+            int count = (period > 0) ? period : 1;
+            for (int frame = index; frame < index + count; frame++) {
+                builder.append("\tat ").append(trace[frame]).append('\n');
+            }
+            index += count;
+
+            if (period > 0) {
+                int repeats = StackTraceSerializer.countRepeats(trace, index - period, trace.length, period);
+                builder.append("\t... ").append(period == 1 ? "last frame" : "last " + period + " frames")
+                        .append(" repeated ").append(repeats).append(" more times\n");
+                index += period * repeats;
+            }
+        }
+    }
+}
@@ -2,12 +2,34 @@ package net.hockeyapp.android.utils;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.util.Log;
+
+import net.hockeyapp.android.Constants;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.util.Iterator;
 
 /**
  * <h3>Description</h3>
  *
  * Internal helper class to cache version data.
  *
+ * Besides the version info of a found update, the last full response of
+ * the versions API is kept together with its ETag and Last-Modified
+ * headers. Update checks send them as If-None-Match and If-Modified-Since
+ * and reuse the cached response on 304 Not Modified. The number of such
+ * hits and of full downloads is counted to see how much traffic is saved.
+ *
  * <h3>License</h3>
  *
  * <pre>
@@ -39,6 +61,26 @@ import android.content.SharedPreferences;
  **/
 public class VersionCache {
     private static String PREF_VERSION_INFO_KEY = "versionInfo";
+    private static final String PREF_RESPONSE_URL_KEY = "versionResponseUrl";
+    private static final String PREF_RESPONSE_BODY_KEY = "versionResponseBody";
+    private static final String PREF_RESPONSE_LENGTH_KEY = "versionResponseLength";
+    private static final String PREF_RESPONSE_ETAG_KEY = "versionResponseETag";
+    private static final String PREF_RESPONSE_LAST_MODIFIED_KEY = "versionResponseLastModified";
+    private static final String PREF_HIT_COUNT_KEY = "versionResponseHits";
+    private static final String PREF_MISS_COUNT_KEY = "versionResponseMisses";
+    private static final String PREF_BYTES_SAVED_KEY = "versionResponseBytesSaved";
+
+    /**
+     * Name of the file in the HockeyApp cache dir that holds the body of
+     * the cached response. Only its validators are kept in the preferences,
+     * which are loaded into memory as a whole.
+     */
+    private static final String RESPONSE_BODY_FILENAME = "versions.json";
+
+    /**
+     * Parsed copy of the cached response, so a 304 doesn't parse it again.
+     */
+    private static volatile CachedResponse sCachedResponse = null;
 
     public static void setVersionInfo(Context context, String json) {
         if (context != null) {
@@ -57,4 +99,360 @@ public class VersionCache {
             return "[]";
         }
     }
+
+    /**
+     * Returns the last full response of the versions API for the given URL.
+     * Reads the body from the cache dir, so don't call this on the main
+     * thread.
+     *
+     * @param context the context to use
+     * @param url     the URL of the request without query parameters
+     * @return the response or null if none is cached
+     */
+    public static CachedResponse getCachedResponse(Context context, String url) {
+        CachedResponse cached = sCachedResponse;
+        if (cached != null && cached.mUrl.equals(url)) {
+            return cached;
+        }
+        if (context == null) {
+            return null;
+        }
+
+        SharedPreferences preferences = context.getSharedPreferences("HockeyApp", Context.MODE_PRIVATE);
+        if (!url.equals(preferences.getString(PREF_RESPONSE_URL_KEY, null))) {
+            return null;
+        }
+        String body = readBody(getBodyFile(context));
+        if (body == null) {
+            // E.g. the system cleared the cache dir
+            return null;
+        }
+        cached = new CachedResponse(url, preferences.getString(PREF_RESPONSE_ETAG_KEY, null),
+                preferences.getString(PREF_RESPONSE_LAST_MODIFIED_KEY, null), body,
+                preferences.getInt(PREF_RESPONSE_LENGTH_KEY, getUTF8Length(body)), null);
+        sCachedResponse = cached;
+        return cached;
+    }
+
+    /**
+     * Adds the validators of the cached response to a request, so the
+     * server can answer with 304 Not Modified.
+     *
+     * @param connection the connection that isn't connected yet
+     * @param cached     the cached response or null
+     */
+    public static void setValidators(URLConnection connection, CachedResponse cached) {
+        if (cached == null) {
+            return;
+        }
+        if (cached.getETag() != null) {
+            connection.setRequestProperty("If-None-Match", cached.getETag());
+        }
+        if (cached.getLastModified() != null) {
+            connection.setRequestProperty("If-Modified-Since", cached.getLastModified());
+        }
+    }
+
+    /**
+     * Returns whether the cached response can be used for a response with
+     * the given status code.
+     *
+     * @param cached       the cached response or null
+     * @param responseCode the status code of the response
+     * @return true if the server answered with 304 Not Modified
+     */
+    public static boolean isNotModified(CachedResponse cached, int responseCode) {
+        return cached != null && responseCode == HttpURLConnection.HTTP_NOT_MODIFIED;
+    }
+
+    /**
+     * Caches a full response of the versions API. Responses without ETag
+     * and Last-Modified can't be validated and are not cached. Writes the
+     * body to the cache dir, so don't call this on the main thread.
+     *
+     * @param context      the context to use
+     * @param url          the URL of the request without query parameters
+     * @param eTag         the ETag header or null
+     * @param lastModified the Last-Modified header or null
+     * @param body         the response body
+     */
+    public static void setCachedResponse(Context context, String url, String eTag, String lastModified,
+                                         String body) {
+        if (context == null) {
+            return;
+        }
+        int length = getUTF8Length(body);
+        File bodyFile = getBodyFile(context);
+
+        // Older versions kept the body in the preferences
+        SharedPreferences.Editor editor = context.getSharedPreferences("HockeyApp", Context.MODE_PRIVATE).edit()
+                .remove(PREF_RESPONSE_BODY_KEY);
+        if ((eTag == null && lastModified == null) || !writeBody(bodyFile, body)) {
+            sCachedResponse = null;
+            bodyFile.delete();
+            editor.remove(PREF_RESPONSE_URL_KEY)
+                    .remove(PREF_RESPONSE_LENGTH_KEY)
+                    .remove(PREF_RESPONSE_ETAG_KEY)
+                    .remove(PREF_RESPONSE_LAST_MODIFIED_KEY);
+        } else {
+            // The caller keeps the parsed body, it's parsed again on the first hit
+            sCachedResponse = new CachedResponse(url, eTag, lastModified, body, length, null);
+            editor.putString(PREF_RESPONSE_URL_KEY, url)
+                    .putInt(PREF_RESPONSE_LENGTH_KEY, length)
+                    .putString(PREF_RESPONSE_ETAG_KEY, eTag)
+                    .putString(PREF_RESPONSE_LAST_MODIFIED_KEY, lastModified);
+        }
+        editor.apply();
+    }
+
+    private static File getBodyFile(Context context) {
+        return new File(new File(context.getCacheDir(), Constants.TAG), RESPONSE_BODY_FILENAME);
+    }
+
+    /**
+     * Writes the body to a temporary file first and renames it, so a
+     * reader never sees a partial body.
+     *
+     * @return true if the body was written
+     */
+    static boolean writeBody(File file, String body) {
+        File dir = file.getParentFile();
+        if (!dir.mkdirs() && !dir.isDirectory()) {
+            return false;
+        }
+
+        File tempFile = new File(dir, file.getName() + ".tmp");
+        OutputStream output = null;
+        try {
+            output = new FileOutputStream(tempFile);
+            output.write(body.getBytes("UTF-8"));
+            output.close();
+            output = null;
+            return tempFile.renameTo(file);
+        } catch (IOException e) {
+            Log.e(Constants.TAG, "Failed to cache update response.", e);
+            return false;
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the body written by writeBody.
+     *
+     * @return the body or null if the file can't be read
+     */
+    static String readBody(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return ResponseBodyReader.readString(new FileInputStream(file), (int) file.length());
+        } catch (IOException e) {
+            Log.e(Constants.TAG, "Failed to read cached update response.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Counts an update check that was answered with 304 Not Modified.
+     *
+     * @param context    the context to use
+     * @param bytesSaved the length of the cached response, see
+     *                   CachedResponse.getLength
+     */
+    public static void recordHit(Context context, int bytesSaved) {
+        if (context != null) {
+            recordHit(context.getSharedPreferences("HockeyApp", Context.MODE_PRIVATE), bytesSaved);
+        }
+    }
+
+    /**
+     * Counts an update check that downloaded the full response.
+     *
+     * @param context the context to use
+     */
+    public static void recordMiss(Context context) {
+        if (context != null) {
+            recordMiss(context.getSharedPreferences("HockeyApp", Context.MODE_PRIVATE));
+        }
+    }
+
+    /**
+     * Counts a hit in the given preferences. Synchronized, so concurrent
+     * update checks don't lose counts.
+     */
+    static synchronized void recordHit(SharedPreferences preferences, int bytesSaved) {
+        preferences.edit()
+                .putInt(PREF_HIT_COUNT_KEY, preferences.getInt(PREF_HIT_COUNT_KEY, 0) + 1)
+                .putLong(PREF_BYTES_SAVED_KEY, preferences.getLong(PREF_BYTES_SAVED_KEY, 0) + bytesSaved)
+                .apply();
+    }
+
+    /**
+     * Counts a miss in the given preferences.
+     */
+    static synchronized void recordMiss(SharedPreferences preferences) {
+        preferences.edit()
+                .putInt(PREF_MISS_COUNT_KEY, preferences.getInt(PREF_MISS_COUNT_KEY, 0) + 1)
+                .apply();
+    }
+
+    /**
+     * Returns the number of update checks answered with 304 Not Modified.
+     *
+     * @param context the context to use
+     * @return the number of hits since the app was installed
+     */
+    public static int getHitCount(Context context) {
+        return getCounter(context, PREF_HIT_COUNT_KEY);
+    }
+
+    /**
+     * Returns the number of update checks that downloaded the full response.
+     *
+     * @param context the context to use
+     * @return the number of misses since the app was installed
+     */
+    public static int getMissCount(Context context) {
+        return getCounter(context, PREF_MISS_COUNT_KEY);
+    }
+
+    /**
+     * Returns the number of response bytes that didn't have to be
+     * downloaded because of a hit.
+     *
+     * @param context the context to use
+     * @return the bytes saved since the app was installed
+     */
+    public static long getBytesSaved(Context context) {
+        if (context == null) {
+            return 0;
+        }
+        return getBytesSaved(context.getSharedPreferences("HockeyApp", Context.MODE_PRIVATE));
+    }
+
+    static int getHitCount(SharedPreferences preferences) {
+        return preferences.getInt(PREF_HIT_COUNT_KEY, 0);
+    }
+
+    static int getMissCount(SharedPreferences preferences) {
+        return preferences.getInt(PREF_MISS_COUNT_KEY, 0);
+    }
+
+    static long getBytesSaved(SharedPreferences preferences) {
+        return preferences.getLong(PREF_BYTES_SAVED_KEY, 0);
+    }
+
+    private static int getCounter(Context context, String key) {
+        if (context == null) {
+            return 0;
+        }
+        return context.getSharedPreferences("HockeyApp", Context.MODE_PRIVATE).getInt(key, 0);
+    }
+
+    /**
+     * Returns the number of bytes of the given string in UTF-8, the length
+     * of the decoded response body. Counting the body the same way for
+     * every response keeps the saved bytes comparable, whether or not the
+     * server sent a Content-Length or compressed the response.
+     */
+    static int getUTF8Length(String value) {
+        int length = 0;
+        for (int index = 0; index < value.length(); index++) {
+            char c = value.charAt(index);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && index + 1 < value.length() && Character.isLowSurrogate(value.charAt(index + 1))) {
+                length += 4;
+                index++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Returns a deep copy of a parsed JSON value.
+     */
+    private static Object copy(Object value) throws JSONException {
+        if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            JSONArray result = new JSONArray();
+            for (int index = 0; index < array.length(); index++) {
+                result.put(copy(array.get(index)));
+            }
+            return result;
+        } else if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            JSONObject result = new JSONObject();
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                result.put(key, copy(object.get(key)));
+            }
+            return result;
+        }
+        return value;
+    }
+
+    /**
+     * A cached response of the versions API with its validators.
+     */
+    public static class CachedResponse {
+        private final String mUrl;
+        private final String mETag;
+        private final String mLastModified;
+        private final String mBody;
+        private final int mLength;
+        private JSONArray mJSON;
+
+        CachedResponse(String url, String eTag, String lastModified, String body, int length, JSONArray json) {
+            mUrl = url;
+            mETag = eTag;
+            mLastModified = lastModified;
+            mBody = body;
+            mLength = length;
+            mJSON = json;
+        }
+
+        public String getETag() {
+            return mETag;
+        }
+
+        public String getLastModified() {
+            return mLastModified;
+        }
+
+        /**
+         * Returns the length of the decoded body in UTF-8 bytes.
+         *
+         * @return the length in bytes
+         */
+        public int getLength() {
+            return mLength;
+        }
+
+        /**
+         * Returns a copy of the parsed body, which the caller may modify.
+         * The body is parsed on the first call only.
+         *
+         * @return the parsed body
+         * @throws JSONException if the body isn't a JSON array
+         */
+        public synchronized JSONArray getJSON() throws JSONException {
+            if (mJSON == null) {
+                mJSON = new JSONArray(mBody);
+            }
+            return (JSONArray) copy(mJSON);
+        }
+    }
 }
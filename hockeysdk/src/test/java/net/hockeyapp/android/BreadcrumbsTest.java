@@ -0,0 +1,66 @@
+package net.hockeyapp.android;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BreadcrumbsTest {
+
+    @After
+    public void tearDown() {
+        Breadcrumbs.clear();
+    }
+
+    @Test
+    public void keepsTheLatestBreadcrumbsInOrder() {
+        for (int index = 0; index < Breadcrumbs.CAPACITY + 3; index++) {
+            Breadcrumbs.leave("crumb " + index);
+        }
+
+        StringBuilder builder = new StringBuilder();
+        Assert.assertEquals(Breadcrumbs.CAPACITY, Breadcrumbs.dump(builder, System.currentTimeMillis()));
+
+        String[] lines = builder.toString().split("\n");
+        Assert.assertTrue(lines[0].endsWith("] crumb 3"));
+        Assert.assertTrue(lines[lines.length - 1].endsWith("] crumb " + (Breadcrumbs.CAPACITY + 2)));
+    }
+
+    @Test
+    public void clearsBreadcrumbs() {
+        Breadcrumbs.leave("before");
+        Breadcrumbs.clear();
+        Breadcrumbs.leave("after");
+
+        StringBuilder builder = new StringBuilder();
+        Assert.assertEquals(1, Breadcrumbs.dump(builder, System.currentTimeMillis()));
+        Assert.assertTrue(builder.toString().endsWith("] after\n"));
+    }
+
+    @Test
+    public void survivesConcurrentWriters() throws Exception {
+        Thread[] threads = new Thread[4];
+        for (int index = 0; index < threads.length; index++) {
+            threads[index] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int count = 0; count < 10000; count++) {
+                        Breadcrumbs.leave("event");
+                    }
+                }
+            });
+            threads[index].start();
+        }
+
+        for (int count = 0; count < 100; count++) {
+            StringBuilder builder = new StringBuilder();
+            Breadcrumbs.dump(builder, System.currentTimeMillis());
+            for (String line : builder.toString().split("\n")) {
+                Assert.assertTrue(line.isEmpty() || line.endsWith("] event"));
+            }
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package net.hockeyapp.android.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+
+public class BreadcrumbJournalTest {
+
+    @Test
+    public void keepsBreadcrumbsOfPreviousSession() throws Exception {
+        File file = File.createTempFile("breadcrumbs", ".journal");
+        file.deleteOnExit();
+
+        BreadcrumbJournal journal = BreadcrumbJournal.open(file, 4);
+        Assert.assertFalse(journal.hasUncleanSession());
+        journal.startSession("42", 1000);
+        for (int index = 0; index < 6; index++) {
+            journal.write(index, 2000 + index, 1, "crumb " + index);
+        }
+
+        // Reopening the file is what the next process does
+        BreadcrumbJournal previous = BreadcrumbJournal.open(file, 4);
+        Assert.assertTrue(previous.hasUncleanSession());
+        Assert.assertEquals("42", previous.getAppVersion());
+        Assert.assertEquals(1000, previous.getSessionStart());
+        Assert.assertEquals(2005, previous.getLastTimestamp());
+
+        StringBuilder builder = new StringBuilder();
+        Assert.assertEquals(4, previous.dump(builder, previous.getLastTimestamp()));
+        Assert.assertEquals("-3 ms [1] crumb 2\n-2 ms [1] crumb 3\n-1 ms [1] crumb 4\n0 ms [1] crumb 5\n", builder.toString());
+
+        previous.startSession("43", 3000);
+        previous.setState(BreadcrumbJournal.STATE_BACKGROUND);
+        BreadcrumbJournal next = BreadcrumbJournal.open(file, 4);
+        Assert.assertFalse(next.hasUncleanSession());
+        Assert.assertEquals(0, next.dump(new StringBuilder(), 0));
+    }
+
+    @Test
+    public void resetsFileWithOtherCapacity() throws Exception {
+        File file = File.createTempFile("breadcrumbs", ".journal");
+        file.deleteOnExit();
+
+        BreadcrumbJournal.open(file, 4).startSession("42", 1000);
+        BreadcrumbJournal journal = BreadcrumbJournal.open(file, 8);
+        Assert.assertFalse(journal.hasUncleanSession());
+        Assert.assertEquals(0, journal.dump(new StringBuilder(), 0));
+    }
+
+    @Test
+    public void cutsMessagesAtCharacterBoundary() throws Exception {
+        File file = File.createTempFile("breadcrumbs", ".journal");
+        file.deleteOnExit();
+
+        StringBuilder umlauts = new StringBuilder("a");
+        for (int index = 0; index < 300; index++) {
+            umlauts.append('\u00e4');
+        }
+
+        BreadcrumbJournal journal = BreadcrumbJournal.open(file, 4);
+        journal.startSession("42", 1000);
+        journal.write(0, 1000, 1, umlauts.toString());
+        journal.write(1, 1000, 1, "\ud83d\ude00 \ud83d \u20ac");
+
+        StringBuilder builder = new StringBuilder();
+        BreadcrumbJournal.open(file, 4).dump(builder, 1000);
+        String[] lines = builder.toString().split("\n");
+
+        // 1 + 242 * 2 bytes fit into a slot, the next umlaut would be split
+        Assert.assertEquals("0 ms [1] " + umlauts.substring(0, 243), lines[0]);
+        Assert.assertEquals("0 ms [1] \ud83d\ude00 ? \u20ac", lines[1]);
+    }
+}
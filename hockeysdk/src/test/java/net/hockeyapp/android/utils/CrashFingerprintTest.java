@@ -0,0 +1,52 @@
+package net.hockeyapp.android.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+public class CrashFingerprintTest {
+
+    private static final String HEADER = "Package: net.hockeyapp.test\nVersion Code: 12\nDate: Thu Jan 07 14:22:03 UTC 2016\n";
+
+    @Test
+    public void ignoresMessageAndLineNumbers() {
+        String first = CrashFingerprint.compute(HEADER,
+                "java.lang.IllegalStateException: id 1\n\tat a.B.c(B.java:10)\n\tat a.B.d(B.java:20)\n");
+        String second = CrashFingerprint.compute(HEADER.replace("14:22:03", "15:00:00"),
+                "java.lang.IllegalStateException: id 2\n\tat a.B.c(B.java:11)\n\tat a.B.d(B.java:21)\n");
+
+        Assert.assertNotNull(first);
+        Assert.assertEquals(first, second);
+    }
+
+    @Test
+    public void differsByTypeFramesAndVersion() {
+        String trace = "java.lang.IllegalStateException\n\tat a.B.c(B.java:10)\n";
+        String fingerprint = CrashFingerprint.compute(HEADER, trace);
+
+        Assert.assertNotEquals(fingerprint, CrashFingerprint.compute(HEADER, trace.replace("IllegalState", "IllegalArgument")));
+        Assert.assertNotEquals(fingerprint, CrashFingerprint.compute(HEADER, trace.replace("a.B.c", "a.B.e")));
+        Assert.assertNotEquals(fingerprint, CrashFingerprint.compute(HEADER.replace("Code: 12", "Code: 13"), trace));
+    }
+
+    @Test
+    public void returnsNullForEmptyStackTrace() {
+        Assert.assertNull(CrashFingerprint.compute(HEADER, ""));
+    }
+
+    @Test
+    public void matchesFingerprintOfFormattedException() {
+        IllegalStateException exception = new IllegalStateException("id 1: failed");
+        exception.setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("a.B", "c", "B.java", 10),
+                new StackTraceElement("a.B", "d", null, -1)
+        });
+        StringWriter stacktrace = new StringWriter();
+        exception.printStackTrace(new PrintWriter(stacktrace));
+
+        Assert.assertEquals(CrashFingerprint.compute(HEADER, stacktrace.toString()),
+                CrashFingerprint.compute("net.hockeyapp.test", "12", exception));
+    }
+}
@@ -0,0 +1,54 @@
+package net.hockeyapp.android.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class CrashLoopDetectorTest {
+
+    private static final long WINDOW = 10 * 1000;
+    private static final long LAUNCH = 1000000;
+
+    @Test
+    public void countsCrashesWithinTheLaunchWindow() {
+        Assert.assertEquals(1, CrashLoopDetector.countEarlyCrashes(LAUNCH, LAUNCH + 5000, WINDOW, 0));
+        Assert.assertEquals(3, CrashLoopDetector.countEarlyCrashes(LAUNCH, LAUNCH + 5000, WINDOW, 2));
+
+        // The window includes both ends
+        Assert.assertEquals(1, CrashLoopDetector.countEarlyCrashes(LAUNCH, LAUNCH, WINDOW, 0));
+        Assert.assertEquals(1, CrashLoopDetector.countEarlyCrashes(LAUNCH, LAUNCH + WINDOW, WINDOW, 0));
+    }
+
+    @Test
+    public void resetsCountOutsideTheLaunchWindow() {
+        // Crashed late in the previous launch
+        Assert.assertEquals(0, CrashLoopDetector.countEarlyCrashes(LAUNCH, LAUNCH + WINDOW + 1, WINDOW, 2));
+
+        // The newest crash happened before the previous launch, it didn't crash
+        Assert.assertEquals(0, CrashLoopDetector.countEarlyCrashes(LAUNCH, LAUNCH - 1, WINDOW, 2));
+
+        // No crash reports
+        Assert.assertEquals(0, CrashLoopDetector.countEarlyCrashes(LAUNCH, 0, WINDOW, 2));
+    }
+
+    @Test
+    public void ignoresFirstLaunch() {
+        Assert.assertEquals(0, CrashLoopDetector.countEarlyCrashes(0, 5000, WINDOW, 0));
+    }
+
+    @Test
+    public void detectsCrashLoopAtThreshold() {
+        Assert.assertFalse(CrashLoopDetector.isCrashLoop(1, 2));
+        Assert.assertTrue(CrashLoopDetector.isCrashLoop(2, 2));
+        Assert.assertTrue(CrashLoopDetector.isCrashLoop(5, 2));
+
+        // Detection is disabled with a threshold of 0
+        Assert.assertFalse(CrashLoopDetector.isCrashLoop(5, 0));
+    }
+
+    @Test
+    public void returnsZeroWithoutReports() {
+        Assert.assertEquals(0, CrashLoopDetector.getNewestCrashTime(Collections.<CrashReportIndex.Entry>emptyList()));
+    }
+}
@@ -0,0 +1,66 @@
+package net.hockeyapp.android.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+public class CrashReportBufferTest {
+
+    @Test
+    public void formatsStackTraceLikePrintStackTrace() throws Exception {
+        RuntimeException cause = new RuntimeException("inner");
+        cause.setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("com.example.Worker", "run", "Worker.java", 12),
+                new StackTraceElement("com.example.Main", "start", null, -1),
+                new StackTraceElement("android.os.Looper", "loop", "Looper.java", 148)
+        });
+        Throwable throwable = new IllegalStateException("outer", cause);
+        throwable.setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("com.example.Main", "onClick", "Main.java", 40),
+                new StackTraceElement("android.os.Looper", "loop", "Looper.java", 148)
+        });
+        StringWriter expected = new StringWriter();
+        throwable.printStackTrace(new PrintWriter(expected));
+
+        CrashReportBuffer buffer = new CrashReportBuffer(64 * 1024);
+        buffer.beginSection(CrashReportFile.SECTION_STACKTRACE);
+        buffer.appendStackTrace(throwable);
+
+        Assert.assertEquals(expected.toString().replace(System.getProperty("line.separator"), "\n"),
+                read(buffer).getSection(CrashReportFile.SECTION_STACKTRACE));
+    }
+
+    @Test
+    public void formatsDateLikeDateToString() throws Exception {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(1452176523000L);
+
+        CrashReportBuffer buffer = new CrashReportBuffer(256);
+        buffer.beginSection(CrashReportFile.SECTION_HEADER);
+        buffer.append("Date: ").appendDate(calendar, "UTC").append(' ').append(-42L);
+
+        Assert.assertEquals("Date: Thu Jan 07 14:22:03 UTC 2016 -42", read(buffer).getSection(CrashReportFile.SECTION_HEADER));
+    }
+
+    @Test
+    public void cutsOffContentThatDoesNotFit() throws Exception {
+        CrashReportBuffer buffer = new CrashReportBuffer(64);
+        buffer.beginSection(CrashReportFile.SECTION_STACKTRACE);
+        buffer.appendStackTrace(new RuntimeException("a message that is too long for the buffer"));
+
+        Assert.assertTrue(buffer.isFull());
+        Assert.assertEquals(64 - 10, read(buffer).getSection(CrashReportFile.SECTION_STACKTRACE).length());
+    }
+
+    private static CrashReportFile read(CrashReportBuffer buffer) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        buffer.writeTo(output);
+        return CrashReportFile.read(new ByteArrayInputStream(output.toByteArray()));
+    }
+}
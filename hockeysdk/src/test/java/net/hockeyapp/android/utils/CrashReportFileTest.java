@@ -0,0 +1,110 @@
+package net.hockeyapp.android.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class CrashReportFileTest {
+
+    @Test
+    public void readsWrittenSections() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CrashReportFile.Writer writer = new CrashReportFile.Writer(output);
+        writer.writeSection(CrashReportFile.SECTION_HEADER, "Package: net.hockeyapp.test\n");
+        writer.writeSection(CrashReportFile.SECTION_STACKTRACE, "java.lang.RuntimeException: ümläut");
+        writer.writeSection(CrashReportFile.SECTION_USER_ID, null);
+        writer.close();
+
+        CrashReportFile report = CrashReportFile.read(new ByteArrayInputStream(output.toByteArray()));
+
+        Assert.assertNotNull(report);
+        Assert.assertEquals("Package: net.hockeyapp.test\n\njava.lang.RuntimeException: ümläut", report.getRaw());
+        Assert.assertNull(report.getSection(CrashReportFile.SECTION_USER_ID));
+    }
+
+    @Test
+    public void returnsNullForLegacyStackTrace() throws Exception {
+        byte[] legacy = "Package: net.hockeyapp.test\nVersion Code: 1\n".getBytes("UTF-8");
+
+        Assert.assertNull(CrashReportFile.read(new ByteArrayInputStream(legacy)));
+    }
+
+    @Test
+    public void rejectsNewerVersion() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CrashReportFile.Writer writer = new CrashReportFile.Writer(output);
+        writer.writeSection(CrashReportFile.SECTION_HEADER, "Package: net.hockeyapp.test\n");
+        writer.close();
+        byte[] bytes = output.toByteArray();
+        bytes[CrashReportFile.MAGIC.length] = (byte) (CrashReportFile.VERSION + 1);
+
+        try {
+            CrashReportFile.read(new ByteArrayInputStream(bytes));
+            Assert.fail("Expected an IOException for an unsupported version");
+        } catch (IOException expected) {
+        }
+        Assert.assertEquals("", CrashReportFile.readHead(new ByteArrayInputStream(bytes), 256));
+    }
+
+    @Test
+    public void ignoresTruncatedSection() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CrashReportFile.Writer writer = new CrashReportFile.Writer(output);
+        writer.writeSection(CrashReportFile.SECTION_HEADER, "Package: net.hockeyapp.test\n");
+        writer.writeSection(CrashReportFile.SECTION_DESCRIPTION, "a description that gets cut off");
+        writer.close();
+
+        byte[] bytes = output.toByteArray();
+        CrashReportFile report = CrashReportFile.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 5)));
+
+        Assert.assertNotNull(report);
+        Assert.assertEquals("Package: net.hockeyapp.test\n", report.getSection(CrashReportFile.SECTION_HEADER));
+        Assert.assertNull(report.getSection(CrashReportFile.SECTION_DESCRIPTION));
+    }
+
+    @Test
+    public void readsHeadWithinLimit() throws Exception {
+        StringBuilder stacktrace = new StringBuilder("java.lang.IllegalStateException: broken\n");
+        for (int index = 0; index < 1000; index++) {
+            stacktrace.append("\tat com.example.Deep.call(Deep.java:").append(index).append(")\n");
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CrashReportFile.Writer writer = new CrashReportFile.Writer(output);
+        writer.writeSection(CrashReportFile.SECTION_HEADER, "Package: net.hockeyapp.test\nThread: main-1\n");
+        writer.writeSection(CrashReportFile.SECTION_STACKTRACE, stacktrace.toString());
+        writer.writeSection(CrashReportFile.SECTION_DESCRIPTION, "never read");
+        writer.close();
+
+        String head = CrashReportFile.readHead(new ByteArrayInputStream(output.toByteArray()), 256);
+
+        Assert.assertTrue(head.startsWith("Package: net.hockeyapp.test\nThread: main-1\n\njava.lang.IllegalStateException: broken\n"));
+        Assert.assertTrue(head.length() < 256);
+    }
+
+    @Test
+    public void detectsSingleFileFormat() throws Exception {
+        File report = File.createTempFile("report", ".stacktrace");
+        File legacy = File.createTempFile("legacy", ".stacktrace");
+        try {
+            CrashReportFile.Writer writer = new CrashReportFile.Writer(new FileOutputStream(report));
+            writer.writeSection(CrashReportFile.SECTION_STACKTRACE, "java.lang.IllegalStateException");
+            writer.close();
+            FileOutputStream output = new FileOutputStream(legacy);
+            output.write("Package: net.hockeyapp.test\n".getBytes("UTF-8"));
+            output.close();
+
+            Assert.assertTrue(CrashReportFile.isSingleFile(report));
+            Assert.assertFalse(CrashReportFile.isSingleFile(legacy));
+            Assert.assertFalse(CrashReportFile.isSingleFile(new File(report.getPath() + ".missing")));
+        } finally {
+            report.delete();
+            legacy.delete();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package net.hockeyapp.android.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URLEncoder;
+
+public class FormBodyTest {
+
+    @Test
+    public void encodesLikeUrlEncoder() throws Exception {
+        String stacktrace = "java.lang.RuntimeException: Ümlaut & 100% ~*._-\n\tat Main.main(Main.java:1)";
+        File file = File.createTempFile("crash", ".stacktrace");
+        file.deleteOnExit();
+        FileOutputStream output = new FileOutputStream(file);
+        output.write("HEAD".getBytes("UTF-8"));
+        output.write(stacktrace.getBytes("UTF-8"));
+        output.write("TAIL".getBytes("UTF-8"));
+        output.close();
+
+        FormBody body = new FormBody();
+        body.addField("raw").append("Package: a b\n").append(file, 4, stacktrace.getBytes("UTF-8").length);
+        body.addField("user ID", null);
+        body.addField("sdk", "HockeySDK");
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        body.writeTo(written);
+
+        String expected = "raw=" + URLEncoder.encode("Package: a b\n" + stacktrace, "UTF-8")
+                + "&" + URLEncoder.encode("user ID", "UTF-8") + "="
+                + "&sdk=HockeySDK";
+        Assert.assertEquals(expected, written.toString("UTF-8"));
+        Assert.assertEquals(written.size(), body.getContentLength());
+    }
+
+    @Test
+    public void readsSectionPositions() throws Exception {
+        File file = File.createTempFile("crash", ".stacktrace");
+        file.deleteOnExit();
+        CrashReportFile.Writer writer = new CrashReportFile.Writer(new FileOutputStream(file));
+        writer.writeSection(CrashReportFile.SECTION_HEADER, "Package: net.hockeyapp.test");
+        writer.writeSection(CrashReportFile.SECTION_STACKTRACE, "java.lang.RuntimeException");
+        writer.close();
+
+        FormBody body = new FormBody();
+        CrashReportFile.Section section = CrashReportFile.readSections(file).get(CrashReportFile.SECTION_STACKTRACE);
+        body.addField("raw").append(file, section.getOffset(), section.getLength());
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        body.writeTo(written);
+        Assert.assertEquals("raw=java.lang.RuntimeException", written.toString("UTF-8"));
+    }
+
+    @Test
+    public void writesValuesInChunks() throws Exception {
+        StringBuilder value = new StringBuilder();
+        for (int index = 0; index < 10000; index++) {
+            value.append("a b%");
+        }
+        FormBody body = new FormBody().addField("raw", value.toString());
+
+        final int[] writes = new int[1];
+        ByteArrayOutputStream output = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(int b) {
+                writes[0]++;
+                super.write(b);
+            }
+
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                writes[0]++;
+                super.write(b, off, len);
+            }
+        };
+        body.writeTo(output);
+
+        Assert.assertEquals("raw=" + URLEncoder.encode(value.toString(), "UTF-8"), output.toString("UTF-8"));
+        Assert.assertEquals(body.getContentLength(), output.size());
+        Assert.assertTrue("Too many writes: " + writes[0], writes[0] < 20);
+    }
+}
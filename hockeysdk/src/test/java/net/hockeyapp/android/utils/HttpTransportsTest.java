@@ -0,0 +1,51 @@
+package net.hockeyapp.android.utils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+public class HttpTransportsTest {
+
+    @After
+    public void tearDown() {
+        HttpTransports.setDefault(null);
+    }
+
+    @Test
+    public void usesCustomTransportUntilReset() throws Exception {
+        HttpTransport transport = new HttpTransport() {
+            @Override
+            public HttpURLConnection openConnection(URL url) {
+                return new HttpURLConnection(url) {
+                    @Override
+                    public void connect() {
+                    }
+
+                    @Override
+                    public void disconnect() {
+                    }
+
+                    @Override
+                    public boolean usingProxy() {
+                        return false;
+                    }
+                };
+            }
+
+            @Override
+            public void releaseConnection(HttpURLConnection connection, int responseCode) {
+            }
+        };
+
+        HttpTransports.setDefault(transport);
+        Assert.assertSame(transport, HttpTransports.getDefault());
+        Assert.assertEquals("https://sdk.hockeyapp.net/api/2/apps",
+                HttpTransports.getDefault().openConnection(new URL("https://sdk.hockeyapp.net/api/2/apps")).getURL().toString());
+
+        HttpTransports.setDefault(null);
+        Assert.assertTrue(HttpTransports.getDefault() instanceof DefaultHttpTransport);
+    }
+}
@@ -0,0 +1,92 @@
+package net.hockeyapp.android.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+
+public class MultipartBodyTest {
+
+    @Test
+    public void writesPartsWithPrecomputedLength() throws Exception {
+        final byte[] screenshot = new byte[20000];
+        for (int index = 0; index < screenshot.length; index++) {
+            screenshot[index] = (byte) index;
+        }
+        MultipartBody body = new MultipartBody("BOUNDARY")
+                .addPart("text", "Grüße")
+                .addPart("attachment0", "shot.png", "application/octet-stream", new MultipartBody.Source() {
+                    @Override
+                    public long getLength() {
+                        return screenshot.length;
+                    }
+
+                    @Override
+                    public InputStream open() {
+                        return new ByteArrayInputStream(screenshot);
+                    }
+                });
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        body.writeTo(output);
+        byte[] bytes = output.toByteArray();
+
+        Assert.assertEquals(bytes.length, body.getContentLength());
+        String text = new String(bytes, "ISO-8859-1");
+        Assert.assertTrue(text.startsWith("--BOUNDARY\r\n" +
+                "Content-Disposition: form-data; name=\"text\"\r\n" +
+                "Content-Type: text/plain; charset=UTF-8\r\n" +
+                "Content-Transfer-Encoding: 8bit\r\n\r\n" +
+                new String("Grüße".getBytes("UTF-8"), "ISO-8859-1") + "\r\n" +
+                "--BOUNDARY\r\n" +
+                "Content-Disposition: form-data; name=\"attachment0\"; filename=\"shot.png\"\r\n"));
+        Assert.assertTrue(text.endsWith("\r\n--BOUNDARY--\r\n"));
+    }
+
+    @Test(expected = java.io.EOFException.class)
+    public void failsIfSourceIsShorterThanItsLength() throws Exception {
+        MultipartBody body = new MultipartBody("BOUNDARY")
+                .addPart("attachment0", "log.txt", "text/plain", new MultipartBody.Source() {
+                    @Override
+                    public long getLength() {
+                        return 10;
+                    }
+
+                    @Override
+                    public InputStream open() {
+                        return new ByteArrayInputStream(new byte[5]);
+                    }
+                });
+
+        body.writeTo(new ByteArrayOutputStream());
+    }
+
+    @Test
+    public void streamsFileRegionsOfConcatenatedSources() throws Exception {
+        File file = File.createTempFile("report", ".stacktrace");
+        try {
+            FileOutputStream output = new FileOutputStream(file);
+            output.write("xxHEADERyyTRACEzz".getBytes("UTF-8"));
+            output.close();
+
+            MultipartBody.Source log = MultipartBody.concat(
+                    MultipartBody.fileRegion(file, 2, 6),
+                    MultipartBody.bytes(new byte[]{'\n'}),
+                    MultipartBody.fileRegion(file, 10, 5));
+            Assert.assertEquals(12, log.getLength());
+
+            MultipartBody body = new MultipartBody("BOUNDARY").addPart("log", "log.txt", "text/plain", log);
+            ByteArrayOutputStream bodyOutput = new ByteArrayOutputStream();
+            body.writeTo(bodyOutput);
+
+            Assert.assertEquals(bodyOutput.size(), body.getContentLength());
+            Assert.assertTrue(bodyOutput.toString("UTF-8").contains("\r\n\r\nHEADER\nTRACE\r\n--BOUNDARY--\r\n"));
+        } finally {
+            file.delete();
+        }
+    }
+}
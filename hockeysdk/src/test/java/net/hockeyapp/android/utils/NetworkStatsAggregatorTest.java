@@ -0,0 +1,51 @@
+package net.hockeyapp.android.utils;
+
+import net.hockeyapp.android.objects.Endpoint;
+import net.hockeyapp.android.objects.NetworkEvent;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NetworkStatsAggregatorTest {
+
+    @Test
+    public void computesNearestRankPercentiles() {
+        long[] sorted = {10, 20, 30, 40, 50, 60, 70, 80, 90, 100};
+        Assert.assertEquals(50, NetworkStatsAggregator.percentile(sorted, 50));
+        Assert.assertEquals(90, NetworkStatsAggregator.percentile(sorted, 90));
+        Assert.assertEquals(100, NetworkStatsAggregator.percentile(sorted, 99));
+        Assert.assertEquals(10, NetworkStatsAggregator.percentile(sorted, 0));
+        Assert.assertEquals(-1, NetworkStatsAggregator.percentile(new long[0], 50));
+    }
+
+    @Test
+    public void summarizesRecentRequestsPerEndpoint() {
+        NetworkStatsAggregator aggregator = new NetworkStatsAggregator(4);
+        for (int index = 1; index <= 6; index++) {
+            // Reused connections have no connect time
+            long connectTime = (index % 2 == 0) ? -1 : index;
+            aggregator.onRequestFinished(new NetworkEvent(Endpoint.CRASH, "rink.hockeyapp.net", index - 1,
+                    (index == 6) ? -1 : 201, 1, connectTime, index * 10, index * 100, 1000, 10));
+        }
+        aggregator.onRequestFinished(new NetworkEvent(Endpoint.LOGIN, "rink.hockeyapp.net", 0, 200, -1, -1, 5, 7, 0, 0));
+
+        NetworkStatsAggregator.Summary summary = aggregator.getSummary(Endpoint.CRASH);
+        Assert.assertEquals(6, summary.getRequestCount());
+        Assert.assertEquals(1, summary.getFailureCount());
+        Assert.assertEquals(5, summary.getRetryCount());
+        Assert.assertEquals(6000, summary.getRequestBytes());
+        Assert.assertEquals(60, summary.getResponseBytes());
+
+        // Only the 4 most recent requests, 3 to 6, count for the percentiles
+        Assert.assertEquals(400, summary.getTotalTime(50));
+        Assert.assertEquals(600, summary.getTotalTime(99));
+        Assert.assertEquals(30, summary.getTimeToFirstByte(0));
+        Assert.assertEquals(3, summary.getConnectTime(50));
+        Assert.assertEquals(5, summary.getConnectTime(90));
+
+        Assert.assertEquals(1, aggregator.getSummary(Endpoint.LOGIN).getRequestCount());
+        Assert.assertEquals(-1, aggregator.getSummary(Endpoint.LOGIN).getDnsTime(50));
+        Assert.assertEquals(0, aggregator.getSummary(Endpoint.ATTACHMENT).getRequestCount());
+        Assert.assertEquals(-1, aggregator.getSummary(Endpoint.ATTACHMENT).getTotalTime(50));
+    }
+}
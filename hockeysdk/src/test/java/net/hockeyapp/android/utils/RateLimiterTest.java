@@ -0,0 +1,33 @@
+package net.hockeyapp.android.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+    @Test
+    public void allowsBurstThenRefills() {
+        RateLimiter limiter = new RateLimiter(3, 1000);
+        Assert.assertTrue(limiter.tryAcquire("a", 0));
+        Assert.assertTrue(limiter.tryAcquire("a", 0));
+        Assert.assertTrue(limiter.tryAcquire("a", 0));
+        Assert.assertFalse(limiter.tryAcquire("a", 999));
+
+        Assert.assertTrue(limiter.tryAcquire("a", 1000));
+        Assert.assertFalse(limiter.tryAcquire("a", 1500));
+
+        // Refills stop at the burst size
+        Assert.assertTrue(limiter.tryAcquire("a", 100000));
+        Assert.assertTrue(limiter.tryAcquire("a", 100000));
+        Assert.assertTrue(limiter.tryAcquire("a", 100000));
+        Assert.assertFalse(limiter.tryAcquire("a", 100000));
+    }
+
+    @Test
+    public void limitsKeysSeparately() {
+        RateLimiter limiter = new RateLimiter(1, 1000);
+        Assert.assertTrue(limiter.tryAcquire("a", 0));
+        Assert.assertFalse(limiter.tryAcquire("a", 0));
+        Assert.assertTrue(limiter.tryAcquire("b", 0));
+    }
+}
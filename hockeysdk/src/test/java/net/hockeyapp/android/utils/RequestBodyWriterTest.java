@@ -0,0 +1,104 @@
+package net.hockeyapp.android.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+public class RequestBodyWriterTest {
+
+    private HttpServer mServer;
+    private String mContentEncoding;
+    private byte[] mReceivedBody;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mContentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+                mReceivedBody = readFully(exchange.getRequestBody());
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_CREATED, -1);
+                exchange.close();
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void sendsGzipCompressedBody() throws Exception {
+        byte[] body = createBody();
+        RequestBodyWriter writer = new RequestBodyWriter(true);
+
+        Assert.assertEquals(HttpURLConnection.HTTP_CREATED, post(writer, body));
+        Assert.assertEquals("gzip", mContentEncoding);
+        Assert.assertArrayEquals(body, readFully(new GZIPInputStream(new ByteArrayInputStream(mReceivedBody))));
+        Assert.assertEquals(body.length, writer.getRawSize());
+        Assert.assertEquals(mReceivedBody.length, writer.getSentSize());
+        Assert.assertTrue(writer.getSentSize() < writer.getRawSize());
+    }
+
+    @Test
+    public void sendsUncompressedBody() throws Exception {
+        byte[] body = createBody();
+        RequestBodyWriter writer = new RequestBodyWriter(false);
+
+        Assert.assertEquals(HttpURLConnection.HTTP_CREATED, post(writer, body));
+        Assert.assertNull(mContentEncoding);
+        Assert.assertArrayEquals(body, mReceivedBody);
+        Assert.assertEquals(body.length, writer.getRawSize());
+        Assert.assertEquals(body.length, writer.getSentSize());
+    }
+
+    private int post(RequestBodyWriter writer, byte[] body) throws IOException {
+        URL url = new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + "/");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            writer.prepare(connection);
+            writer.write(connection, body);
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static byte[] createBody() throws IOException {
+        StringBuilder builder = new StringBuilder("raw=");
+        for (int line = 0; line < 500; line++) {
+            builder.append("at+net.hockeyapp.android.Example.method%28Example.java%3A").append(line).append("%29%0A");
+        }
+        return builder.toString().getBytes("UTF-8");
+    }
+
+    private static byte[] readFully(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = input.read(buffer)) != -1) {
+            output.write(buffer, 0, count);
+        }
+        input.close();
+        return output.toByteArray();
+    }
+}
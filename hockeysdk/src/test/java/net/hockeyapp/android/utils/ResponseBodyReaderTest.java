@@ -0,0 +1,117 @@
+package net.hockeyapp.android.utils;
+
+import net.hockeyapp.android.objects.Endpoint;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class ResponseBodyReaderTest {
+
+    private static final String BODY = "{\"title\":\"Grüße 😀\",\n\"notes\":\"€\"}\n";
+
+    @Test
+    public void decodesSequencesSplitAcrossReads() throws Exception {
+        byte[] bytes = BODY.getBytes("UTF-8");
+        ResponseBodyReader reader = new ResponseBodyReader(4);
+        Assert.assertEquals(BODY, reader.read(new ByteArrayInputStream(bytes), bytes.length));
+        Assert.assertEquals(BODY, reader.read(new ByteArrayInputStream(bytes), -1));
+    }
+
+    @Test
+    public void passesChunksToCallback() throws Exception {
+        byte[] bytes = BODY.getBytes("UTF-8");
+        final StringBuilder chunks = new StringBuilder();
+        new ResponseBodyReader(8).read(new ByteArrayInputStream(bytes), new ResponseBodyReader.Callback() {
+            @Override
+            public void onChars(char[] buffer, int offset, int length) {
+                Assert.assertTrue(length <= 8);
+                chunks.append(buffer, offset, length);
+            }
+        });
+        Assert.assertEquals(BODY, chunks.toString());
+    }
+
+    @Test
+    public void replacesMalformedInput() throws IOException {
+        byte[] bytes = {'a', (byte) 0xC3};
+        Assert.assertEquals("a�", ResponseBodyReader.readString(new ByteArrayInputStream(bytes), 2));
+    }
+
+    @Test
+    public void decompressesGzipAndRecordsMetrics() throws Exception {
+        StringBuilder notes = new StringBuilder();
+        for (int index = 0; index < 200; index++) {
+            notes.append("<p>Release notes</p>");
+        }
+        String body = "[{\"notes\":\"" + notes + "\"}]";
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        gzip.write(body.getBytes("UTF-8"));
+        gzip.close();
+        byte[] wire = compressed.toByteArray();
+
+        ResponseMetrics.getInstance().reset();
+        Assert.assertEquals(body, ResponseBodyReader.readString(createConnection("gzip", wire), Endpoint.UPDATE_CHECK));
+
+        ResponseMetrics.Stats stats = ResponseMetrics.getInstance().getStats(Endpoint.UPDATE_CHECK);
+        Assert.assertEquals(1, stats.getResponseCount());
+        Assert.assertEquals(wire.length, stats.getWireBytes());
+        Assert.assertEquals(body.length(), stats.getDecodedBytes());
+        Assert.assertTrue(stats.getCompressionRatio() > 10);
+        Assert.assertEquals(0, ResponseMetrics.getInstance().getStats(Endpoint.LOGIN).getResponseCount());
+    }
+
+    @Test
+    public void decompressesDeflateWithAndWithoutZlibWrapper() throws Exception {
+        for (boolean nowrap : new boolean[]{false, true}) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap);
+            DeflaterOutputStream output = new DeflaterOutputStream(compressed, deflater);
+            output.write(BODY.getBytes("UTF-8"));
+            output.close();
+            deflater.end();
+
+            Assert.assertEquals(BODY, ResponseBodyReader.readString(createConnection("deflate", compressed.toByteArray()), (Endpoint) null));
+        }
+    }
+
+    @Test
+    public void discardsEmptyGzipBodyOfNotModified() throws Exception {
+        Assert.assertEquals(0, ResponseBodyReader.discard(createConnection("gzip", new byte[0]), null));
+        Assert.assertEquals(3, ResponseBodyReader.discard(createConnection("gzip", new byte[]{1, 2, 3}), null));
+    }
+
+    private static URLConnection createConnection(final String encoding, final byte[] wire) throws IOException {
+        return new URLConnection(new URL("https://sdk.hockeyapp.net/api/2/apps/123")) {
+            @Override
+            public void connect() {
+            }
+
+            @Override
+            public String getHeaderField(String name) {
+                if ("content-encoding".equalsIgnoreCase(name)) {
+                    return encoding;
+                }
+                if ("content-length".equalsIgnoreCase(name)) {
+                    return String.valueOf(wire.length);
+                }
+                return null;
+            }
+
+            @Override
+            public InputStream getInputStream() {
+                return new ByteArrayInputStream(wire);
+            }
+        };
+    }
+}
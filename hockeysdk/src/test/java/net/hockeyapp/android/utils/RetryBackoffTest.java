@@ -0,0 +1,30 @@
+package net.hockeyapp.android.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class RetryBackoffTest {
+
+    @Test
+    public void doublesDelayWithJitter() {
+        Random random = new Random(42);
+        for (int retryCount = 0; retryCount < 5; retryCount++) {
+            long delay = RetryBackoff.getDelay(retryCount, random);
+            long max = RetryBackoff.BASE_DELAY << retryCount;
+            Assert.assertTrue(delay >= max / 2);
+            Assert.assertTrue(delay <= max);
+        }
+    }
+
+    @Test
+    public void capsDelay() {
+        Random random = new Random(42);
+        for (int retryCount : new int[]{20, 64, Integer.MAX_VALUE}) {
+            long delay = RetryBackoff.getDelay(retryCount, random);
+            Assert.assertTrue(delay >= RetryBackoff.MAX_DELAY / 2);
+            Assert.assertTrue(delay <= RetryBackoff.MAX_DELAY);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package net.hockeyapp.android.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+public class StackTraceSerializerTest {
+
+    @Test
+    public void formatsStackTraceLikePrintStackTrace() {
+        RuntimeException cause = new RuntimeException("inner");
+        cause.setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("com.example.Worker", "run", "Worker.java", 12),
+                new StackTraceElement("android.os.Looper", "loop", "Looper.java", 148)
+        });
+        Throwable throwable = new IllegalStateException("outer", cause);
+        throwable.setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("com.example.Main", "onClick", "Main.java", 40),
+                new StackTraceElement("android.os.Looper", "loop", "Looper.java", 148)
+        });
+        StringWriter expected = new StringWriter();
+        throwable.printStackTrace(new PrintWriter(expected));
+
+        Assert.assertEquals(expected.toString().replace(System.getProperty("line.separator"), "\n"),
+                new StackTraceSerializer().serialize(throwable));
+    }
+
+    @Test
+    public void collapsesRepeatedFrameCycles() {
+        StackTraceElement[] trace = new StackTraceElement[1002];
+        for (int index = 0; index < 1000; index++) {
+            trace[index] = new StackTraceElement("com.example.Tree", index % 2 == 0 ? "visit" : "visitChildren", "Tree.java", 10 + index % 2);
+        }
+        trace[1000] = new StackTraceElement("com.example.Main", "onCreate", "Main.java", 5);
+        trace[1001] = new StackTraceElement("android.os.Looper", "loop", "Looper.java", 148);
+        StackOverflowError error = new StackOverflowError();
+        error.setStackTrace(trace);
+
+        Assert.assertEquals("java.lang.StackOverflowError\n" +
+                "\tat com.example.Tree.visit(Tree.java:10)\n" +
+                "\tat com.example.Tree.visitChildren(Tree.java:11)\n" +
+                "\t... last 2 frames repeated 499 more times\n" +
+                "\tat com.example.Main.onCreate(Main.java:5)\n" +
+                "\tat android.os.Looper.loop(Looper.java:148)\n", new StackTraceSerializer().serialize(error));
+    }
+
+    @Test
+    public void limitsCauseDepth() {
+        Throwable throwable = new RuntimeException("0");
+        for (int index = 1; index < 100; index++) {
+            throwable = new RuntimeException(String.valueOf(index), throwable);
+            throwable.setStackTrace(new StackTraceElement[0]);
+        }
+
+        String result = new StackTraceSerializer(StackTraceSerializer.DEFAULT_MAX_BYTES, 3).serialize(throwable);
+        Assert.assertEquals("java.lang.RuntimeException: 99\n" +
+                "Caused by: java.lang.RuntimeException: 98\n" +
+                "Caused by: java.lang.RuntimeException: 97\n" +
+                "Caused by: java.lang.RuntimeException: 96\n" +
+                "\t... further causes omitted\n", result);
+    }
+
+    @Test
+    public void limitsTotalSize() throws Exception {
+        StackTraceElement[] trace = new StackTraceElement[5000];
+        for (int index = 0; index < trace.length; index++) {
+            trace[index] = new StackTraceElement("com.example.Generated", "method" + index, "Generated.java", index);
+        }
+        RuntimeException exception = new RuntimeException("too big");
+        exception.setStackTrace(trace);
+
+        String result = new StackTraceSerializer(4096, 10).serialize(exception);
+        Assert.assertTrue(result.getBytes("UTF-8").length <= 4096);
+        Assert.assertTrue(result.endsWith("\t... stack trace truncated\n"));
+    }
+}
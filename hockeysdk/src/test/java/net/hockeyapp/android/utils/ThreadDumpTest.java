@@ -0,0 +1,51 @@
+package net.hockeyapp.android.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ThreadDumpTest {
+
+    private static final StackTraceElement[] IDLE = {
+            new StackTraceElement("java.lang.Object", "wait", null, -2),
+            new StackTraceElement("java.util.concurrent.ThreadPoolExecutor", "getTask", "ThreadPoolExecutor.java", 1067)
+    };
+
+    @Test
+    public void groupsThreadsWithIdenticalStacks() {
+        Thread first = new Thread("worker-1");
+        Thread second = new Thread("worker-2");
+        Thread excluded = new Thread("crashed");
+        Map<Thread, StackTraceElement[]> stacks = new LinkedHashMap<Thread, StackTraceElement[]>();
+        stacks.put(first, IDLE);
+        stacks.put(second, IDLE.clone());
+        stacks.put(excluded, IDLE);
+
+        String dump = ThreadDump.format(stacks, Long.MAX_VALUE, 4096, excluded);
+
+        Assert.assertEquals("\n" +
+                "\"worker-1\" id=" + first.getId() + " NEW\n" +
+                "\"worker-2\" id=" + second.getId() + " NEW\n" +
+                "\tat java.lang.Object.wait(Native Method)\n" +
+                "\tat java.util.concurrent.ThreadPoolExecutor.getTask(ThreadPoolExecutor.java:1067)\n", dump);
+    }
+
+    @Test
+    public void omitsThreadsOverBudget() {
+        Map<Thread, StackTraceElement[]> stacks = new LinkedHashMap<Thread, StackTraceElement[]>();
+        for (int index = 0; index < 50; index++) {
+            stacks.put(new Thread("thread-" + index), new StackTraceElement[]{
+                    new StackTraceElement("com.example.Task" + index, "run", "Task.java", index)
+            });
+        }
+
+        String dump = ThreadDump.format(stacks, Long.MAX_VALUE, 500);
+        Assert.assertTrue(dump.length() <= 500 + 40);
+        Assert.assertTrue(dump.endsWith(" more threads omitted\n"));
+
+        String late = ThreadDump.format(stacks, System.nanoTime() - 1, 4096);
+        Assert.assertEquals("\n... 50 more threads omitted\n", late);
+    }
+}
@@ -0,0 +1,275 @@
+package net.hockeyapp.android.utils;
+
+import android.content.SharedPreferences;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class VersionCacheTest {
+
+    @Test
+    public void setsValidatorsOfCachedResponse() throws Exception {
+        RecordingConnection connection = new RecordingConnection();
+        VersionCache.setValidators(connection, new VersionCache.CachedResponse("https://sdk.hockeyapp.net/api/2/apps/123",
+                "\"v1\"", "Mon, 03 Oct 2016 10:00:00 GMT", "[]", 2, null));
+        Assert.assertEquals("\"v1\"", connection.getRequestProperty("If-None-Match"));
+        Assert.assertEquals("Mon, 03 Oct 2016 10:00:00 GMT", connection.getRequestProperty("If-Modified-Since"));
+
+        connection = new RecordingConnection();
+        VersionCache.setValidators(connection, new VersionCache.CachedResponse("https://sdk.hockeyapp.net/api/2/apps/123",
+                "\"v1\"", null, "[]", 2, null));
+        Assert.assertEquals("\"v1\"", connection.getRequestProperty("If-None-Match"));
+        Assert.assertNull(connection.getRequestProperty("If-Modified-Since"));
+
+        // Without a cached response, the request is unconditional
+        connection = new RecordingConnection();
+        VersionCache.setValidators(connection, null);
+        Assert.assertNull(connection.getRequestProperty("If-None-Match"));
+        Assert.assertNull(connection.getRequestProperty("If-Modified-Since"));
+    }
+
+    @Test
+    public void usesCachedResponseOnlyForNotModified() {
+        VersionCache.CachedResponse cached = new VersionCache.CachedResponse("https://sdk.hockeyapp.net/api/2/apps/123",
+                "\"v1\"", null, "[]", 2, null);
+        Assert.assertTrue(VersionCache.isNotModified(cached, HttpURLConnection.HTTP_NOT_MODIFIED));
+        Assert.assertFalse(VersionCache.isNotModified(cached, HttpURLConnection.HTTP_OK));
+        Assert.assertFalse(VersionCache.isNotModified(null, HttpURLConnection.HTTP_NOT_MODIFIED));
+    }
+
+    @Test
+    public void countsBodyLengthInUTF8Bytes() {
+        Assert.assertEquals(0, VersionCache.getUTF8Length(""));
+        Assert.assertEquals(5, VersionCache.getUTF8Length("[{}] "));
+        Assert.assertEquals(2, VersionCache.getUTF8Length("\u00e4"));
+        Assert.assertEquals(3, VersionCache.getUTF8Length("\u20ac"));
+        Assert.assertEquals(4, VersionCache.getUTF8Length("\ud83d\ude00"));
+    }
+
+    @Test
+    public void countsHitsAndMisses() {
+        MemoryPreferences preferences = new MemoryPreferences();
+        VersionCache.recordMiss(preferences);
+        VersionCache.recordHit(preferences, 100);
+        VersionCache.recordHit(preferences, 50);
+
+        Assert.assertEquals(2, VersionCache.getHitCount(preferences));
+        Assert.assertEquals(1, VersionCache.getMissCount(preferences));
+        Assert.assertEquals(150, VersionCache.getBytesSaved(preferences));
+    }
+
+    @Test
+    public void doesNotLoseConcurrentHits() throws Exception {
+        final MemoryPreferences preferences = new MemoryPreferences();
+        Thread[] threads = new Thread[4];
+        for (int index = 0; index < threads.length; index++) {
+            threads[index] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int count = 0; count < 500; count++) {
+                        VersionCache.recordHit(preferences, 10);
+                        VersionCache.recordMiss(preferences);
+                    }
+                }
+            });
+            threads[index].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(2000, VersionCache.getHitCount(preferences));
+        Assert.assertEquals(2000, VersionCache.getMissCount(preferences));
+        Assert.assertEquals(20000, VersionCache.getBytesSaved(preferences));
+    }
+
+    private static class RecordingConnection extends HttpURLConnection {
+        private final Map<String, String> mProperties = new HashMap<String, String>();
+
+        RecordingConnection() throws Exception {
+            super(new URL("https://sdk.hockeyapp.net/api/2/apps/123/app_versions"));
+        }
+
+        @Override
+        public void setRequestProperty(String key, String value) {
+            mProperties.put(key, value);
+        }
+
+        @Override
+        public String getRequestProperty(String key) {
+            return mProperties.get(key);
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+    }
+
+    /**
+     * Shared preferences in memory. Every read and every commit is
+     * atomic, like the platform implementation.
+     */
+    private static class MemoryPreferences implements SharedPreferences {
+        private final Map<String, Object> mValues = new HashMap<String, Object>();
+
+        @Override
+        public synchronized Map<String, ?> getAll() {
+            return new HashMap<String, Object>(mValues);
+        }
+
+        @Override
+        public synchronized String getString(String key, String defValue) {
+            return mValues.containsKey(key) ? (String) mValues.get(key) : defValue;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized Set<String> getStringSet(String key, Set<String> defValues) {
+            return mValues.containsKey(key) ? (Set<String>) mValues.get(key) : defValues;
+        }
+
+        @Override
+        public synchronized int getInt(String key, int defValue) {
+            return mValues.containsKey(key) ? (Integer) mValues.get(key) : defValue;
+        }
+
+        @Override
+        public synchronized long getLong(String key, long defValue) {
+            return mValues.containsKey(key) ? (Long) mValues.get(key) : defValue;
+        }
+
+        @Override
+        public synchronized float getFloat(String key, float defValue) {
+            return mValues.containsKey(key) ? (Float) mValues.get(key) : defValue;
+        }
+
+        @Override
+        public synchronized boolean getBoolean(String key, boolean defValue) {
+            return mValues.containsKey(key) ? (Boolean) mValues.get(key) : defValue;
+        }
+
+        @Override
+        public synchronized boolean contains(String key) {
+            return mValues.containsKey(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return new MemoryEditor();
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+
+        private class MemoryEditor implements Editor {
+            private final Map<String, Object> mChanges = new HashMap<String, Object>();
+
+            @Override
+            public Editor putString(String key, String value) {
+                mChanges.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putStringSet(String key, Set<String> values) {
+                mChanges.put(key, values);
+                return this;
+            }
+
+            @Override
+            public Editor putInt(String key, int value) {
+                mChanges.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putLong(String key, long value) {
+                mChanges.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putFloat(String key, float value) {
+                mChanges.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putBoolean(String key, boolean value) {
+                mChanges.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor remove(String key) {
+                mChanges.put(key, null);
+                return this;
+            }
+
+            @Override
+            public Editor clear() {
+                synchronized (MemoryPreferences.this) {
+                    mValues.clear();
+                }
+                return this;
+            }
+
+            @Override
+            public boolean commit() {
+                synchronized (MemoryPreferences.this) {
+                    for (Map.Entry<String, Object> change : mChanges.entrySet()) {
+                        if (change.getValue() == null) {
+                            mValues.remove(change.getKey());
+                        } else {
+                            mValues.put(change.getKey(), change.getValue());
+                        }
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public void apply() {
+                commit();
+            }
+        }
+    }
+
+    @Test
+    public void storesBodyInFile() throws Exception {
+        File dir = File.createTempFile("cache", "");
+        dir.delete();
+        File file = new File(new File(dir, "HockeyApp"), "versions.json");
+        try {
+            Assert.assertNull(VersionCache.readBody(file));
+            Assert.assertTrue(VersionCache.writeBody(file, "[{\"version\":\"\u00e4\"}]"));
+            Assert.assertEquals("[{\"version\":\"\u00e4\"}]", VersionCache.readBody(file));
+            Assert.assertFalse(new File(file.getParentFile(), "versions.json.tmp").exists());
+        } finally {
+            file.delete();
+            file.getParentFile().delete();
+            dir.delete();
+        }
+    }
+}